@@ -0,0 +1,311 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import android.view.Choreographer;
+import android.view.View;
+
+/**
+ * Moves the easiest loose pieces of a puzzle home, one for a hint or a
+ * batch at a time to solve the puzzle.
+ *
+ * The pieces are chosen by a task on a loader thread, since scoring
+ * every piece after a shuffle takes a while. The task only holds the
+ * lock to copy the pieces and later to pick up the ones it chose, so
+ * drawing and touches go on while it scores. The pieces are then
+ * moved home on choreographer frames and dropped into place by
+ * Puzzle.drop() when they get there.
+ *
+ * This is only used while holding the lock of the puzzle. The task
+ * and the frame callback take the lock themselves.
+ */
+class AutoSolver implements Choreographer.FrameCallback {
+    /**
+     * Number of pieces moved home at once when solving
+     */
+    final static int BATCH = 8;
+
+    /**
+     * Time it takes to move pieces home in nanoseconds
+     */
+    final static long TIME = 400000000L;
+
+    /**
+     * The puzzle being solved
+     */
+    private final Puzzle puzzle;
+
+    /**
+     * The view the puzzle is displayed in
+     */
+    private final View view;
+
+    /**
+     * Choreographer of the UI thread
+     */
+    private final Choreographer choreographer;
+
+    /**
+     * The board, or null if there is no board yet
+     */
+    private PuzzleBoard<PuzzlePiece> board = null;
+
+    /**
+     * Ranks the loose pieces, or null if there is no board yet
+     */
+    private HintEngine<PuzzlePiece> hints = null;
+
+    /**
+     * Have the hints been scored, or are they being scored, since
+     * every piece last moved at once? While this is set moves are
+     * marked in the hints.
+     */
+    private boolean hintsValid = false;
+
+    /**
+     * The pieces being moved home
+     */
+    private final int [] ids = new int[BATCH];
+
+    /**
+     * Where each piece being moved home started
+     */
+    private final float [] fromX = new float[BATCH];
+    private final float [] fromY = new float[BATCH];
+
+    /**
+     * Number of pieces being moved home
+     */
+    private int count = 0;
+
+    /**
+     * Time of the first frame moving the pieces home
+     * in nanoseconds, or -1 before that frame
+     */
+    private long start = -1;
+
+    /**
+     * Is a task choosing the pieces to move home?
+     */
+    private boolean requested = false;
+
+    /**
+     * Should we keep moving pieces home until the puzzle is solved?
+     */
+    private boolean solving = false;
+
+    /**
+     * Constructor
+     * @param puzzle The puzzle being solved
+     * @param view The view the puzzle is displayed in
+     * @param choreographer Choreographer of the UI thread
+     */
+    AutoSolver(Puzzle puzzle, View view, Choreographer choreographer) {
+        this.puzzle = puzzle;
+        this.view = view;
+        this.choreographer = choreographer;
+    }
+
+    /**
+     * Set the board once the puzzle image is loaded
+     * @param board The new board
+     */
+    void setBoard(PuzzleBoard<PuzzlePiece> board) {
+        this.board = board;
+        hints = new HintEngine<>(board);
+        reset();
+    }
+
+    /**
+     * Stop moving pieces home and score every piece again. Used
+     * when all of the pieces are moved at once.
+     */
+    void reset() {
+        count = 0;
+        solving = false;
+        hintsValid = false;
+        choreographer.removeFrameCallback(this);
+    }
+
+    /**
+     * Stop solving once the pieces on their way home get there
+     */
+    void stop() {
+        solving = false;
+    }
+
+    /**
+     * Tell the solver a cluster was picked up or dropped
+     * @param id Id of a piece in the cluster
+     */
+    void moved(int id) {
+        if(hintsValid) {
+            hints.moved(id);
+        }
+    }
+
+    /**
+     * Tell the solver one piece moved, without the rest of its cluster
+     * @param id The piece id
+     */
+    void movedPiece(int id) {
+        if(hintsValid) {
+            hints.movedPiece(id);
+        }
+    }
+
+    /**
+     * Are pieces on their way home?
+     * @return true if pieces are being moved
+     */
+    boolean isMoving() {
+        return count > 0;
+    }
+
+    /**
+     * Move the easiest loose piece home
+     */
+    void hint() {
+        request(1);
+    }
+
+    /**
+     * Move pieces home a batch at a time until the puzzle is
+     * solved or the puzzle is touched
+     */
+    void solve() {
+        solving = true;
+        request(BATCH);
+    }
+
+    /**
+     * Choose pieces to move home on a loader thread
+     * @param max Largest number of pieces to move
+     */
+    private void request(int max) {
+        if(board == null || !puzzle.isLoaded() || count > 0 || requested) {
+            return;
+        }
+
+        requested = true;
+        PuzzleLoader.executor().execute(new SolveTask(max));
+    }
+
+    /**
+     * Task that picks up the easiest pieces and starts
+     * moving them home
+     */
+    private class SolveTask implements Runnable {
+        private final int max;
+
+        SolveTask(int max) {
+            this.max = max;
+        }
+
+        @Override
+        public void run() {
+            HintEngine<PuzzlePiece> building = null;
+            synchronized(puzzle) {
+                if(puzzle.isReleased() || count > 0) {
+                    requested = false;
+                    return;
+                }
+
+                if(!hintsValid) {
+                    building = hints;
+                    building.snapshot();
+                    hintsValid = true;
+                }
+            }
+
+            // Score every piece without the lock. Pieces moved
+            // meanwhile are marked and scored again by poll().
+            if(building != null) {
+                building.build();
+            }
+
+            synchronized(puzzle) {
+                requested = false;
+
+                // Every piece may have moved at once while we scored
+                if(puzzle.isReleased() || count > 0 || !hintsValid ||
+                        (building != null && building != hints)) {
+                    return;
+                }
+
+                int polled = hints.poll(ids, max);
+                for(int i=0; i<polled; i++) {
+                    // A finger may have the piece
+                    PuzzlePiece piece = board.getPiece(ids[i]);
+                    if(board.isHeld(piece)) {
+                        continue;
+                    }
+
+                    ids[count] = piece.getId();
+                    fromX[count] = piece.getX();
+                    fromY[count] = piece.getY();
+                    count++;
+                    board.pickUp(piece);
+                    hints.moved(piece.getId());
+                }
+
+                if(count == 0) {
+                    solving = false;
+                    return;
+                }
+                start = -1;
+            }
+
+            // The choreographer belongs to the UI thread
+            view.post(new Runnable() {
+                @Override
+                public void run() {
+                    choreographer.postFrameCallback(AutoSolver.this);
+                }
+            });
+        }
+    }
+
+    /**
+     * Move the pieces going home to where they are at the time of a
+     * frame. When they get there they are dropped into place.
+     * @param frameTimeNanos Time of the frame in nanoseconds
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        synchronized(puzzle) {
+            if(puzzle.isReleased() || count == 0) {
+                return;
+            }
+
+            if(start < 0) {
+                start = frameTimeNanos;
+            }
+
+            // Ease in and out
+            float t = Math.min(1, (float)(frameTimeNanos - start) / TIME);
+            float eased = t * t * (3 - 2 * t);
+            for(int i=0; i<count; i++) {
+                PuzzlePiece piece = board.getPiece(ids[i]);
+                float x = fromX[i] + (piece.getFinalX() - fromX[i]) * eased;
+                float y = fromY[i] + (piece.getFinalY() - fromY[i]) * eased;
+                board.move(piece, x - piece.getX(), y - piece.getY());
+            }
+            view.invalidate();
+
+            if(t < 1) {
+                choreographer.postFrameCallback(this);
+                return;
+            }
+
+            for(int i=0; i<count; i++) {
+                puzzle.drop(board.getPiece(ids[i]), fromX[i], fromY[i], false);
+            }
+            count = 0;
+
+            if(puzzle.snapped(view)) {
+                solving = false;
+            } else if(solving) {
+                request(BATCH);
+            }
+        }
+    }
+}
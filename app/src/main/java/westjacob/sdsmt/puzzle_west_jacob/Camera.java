@@ -0,0 +1,272 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+/**
+ * Where the puzzle is on the screen and how big it is drawn.
+ *
+ * With no zoom the puzzle is SCALE_IN_VIEW of the smaller view
+ * dimension and centered, just like it always was. Pinching with two
+ * fingers zooms in around the point between them, and once zoomed in
+ * dragging with one or two fingers pans. The camera only gets the
+ * fingers that are not dragging a piece.
+ */
+public class Camera {
+    /**
+     * Percentage of the display width or height that
+     * is occupied by the puzzle with no zoom.
+     */
+    final static float SCALE_IN_VIEW = 0.9f;
+
+    /**
+     * Smallest zoom, which shows the whole puzzle
+     */
+    final static float MIN_ZOOM = 1;
+
+    /**
+     * Largest zoom
+     */
+    final static float MAX_ZOOM = 8;
+
+    /**
+     * How much of the puzzle must stay on the screen when
+     * panning, as a fraction of the view size
+     */
+    final static float KEEP_IN_VIEW = 0.25f;
+
+    /**
+     * Size of the view in pixels
+     */
+    private int viewWid = 0;
+    private int viewHit = 0;
+
+    /**
+     * Size of the puzzle in pixels with no zoom
+     */
+    private int baseSize = 0;
+
+    /**
+     * Current zoom
+     */
+    private float zoom = MIN_ZOOM;
+
+    /**
+     * How far the puzzle has been panned from the center of
+     * the view in pixels
+     */
+    private float panX = 0;
+    private float panY = 0;
+
+    /**
+     * Pointer ids of the fingers moving the camera
+     */
+    private final int [] pointerIds = new int[2];
+
+    /**
+     * Last location of each finger moving the camera
+     */
+    private final float [] lastX = new float[2];
+    private final float [] lastY = new float[2];
+
+    /**
+     * Number of fingers moving the camera
+     */
+    private int fingers = 0;
+
+    /**
+     * Set the size of the view. Called before each draw.
+     * @param wid Width of the view in pixels
+     * @param hit Height of the view in pixels
+     */
+    public void layout(int wid, int hit) {
+        viewWid = wid;
+        viewHit = hit;
+        baseSize = (int)(Math.min(wid, hit) * SCALE_IN_VIEW);
+        clampPan();
+    }
+
+    /**
+     * The size of the puzzle in pixels
+     * @return size in pixels
+     */
+    public int getSize() {
+        return (int)(baseSize * zoom);
+    }
+
+    /**
+     * The size of the puzzle in pixels with no zoom
+     * @return size in pixels
+     */
+    public int getBaseSize() {
+        return baseSize;
+    }
+
+    /**
+     * Left margin in pixels
+     * @return Screen x of the left edge of the puzzle
+     */
+    public int getMarginX() {
+        return (int)((viewWid - getSize()) / 2f + panX);
+    }
+
+    /**
+     * Top margin in pixels
+     * @return Screen y of the top edge of the puzzle
+     */
+    public int getMarginY() {
+        return (int)((viewHit - getSize()) / 2f + panY);
+    }
+
+    public float getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Is the puzzle zoomed in, so only part of it may be on the screen?
+     * @return true if zoomed in
+     */
+    public boolean isZoomed() {
+        return zoom > MIN_ZOOM;
+    }
+
+    /**
+     * Go back to showing the whole puzzle
+     */
+    public void reset() {
+        zoom = MIN_ZOOM;
+        panX = 0;
+        panY = 0;
+    }
+
+    /**
+     * A finger that is not on a piece touched the screen
+     * @param pointerId The pointer id of the finger
+     * @param x X location in view pixels
+     * @param y Y location in view pixels
+     * @return true if the camera is using the finger
+     */
+    public boolean down(int pointerId, float x, float y) {
+        if(fingers == 2) {
+            return false;
+        }
+
+        pointerIds[fingers] = pointerId;
+        lastX[fingers] = x;
+        lastY[fingers] = y;
+        fingers++;
+        return true;
+    }
+
+    /**
+     * A finger moved
+     * @param pointerId The pointer id of the finger
+     * @param x X location in view pixels
+     * @param y Y location in view pixels
+     * @return true if the camera moved
+     */
+    public boolean move(int pointerId, float x, float y) {
+        int f = fingerOf(pointerId);
+        if(f < 0) {
+            return false;
+        }
+
+        if(fingers == 1) {
+            panX += x - lastX[0];
+            panY += y - lastY[0];
+            lastX[0] = x;
+            lastY[0] = y;
+            clampPan();
+            return true;
+        }
+
+        // Keep the point of the puzzle that was between the
+        // fingers between them, at the new spacing of the fingers
+        float oldMidX = (lastX[0] + lastX[1]) / 2;
+        float oldMidY = (lastY[0] + lastY[1]) / 2;
+        float oldSpan = span();
+        float relX = (oldMidX - getMarginX()) / getSize();
+        float relY = (oldMidY - getMarginY()) / getSize();
+
+        lastX[f] = x;
+        lastY[f] = y;
+        float midX = (lastX[0] + lastX[1]) / 2;
+        float midY = (lastY[0] + lastY[1]) / 2;
+        if(oldSpan > 0) {
+            zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * span() / oldSpan));
+        }
+
+        int size = getSize();
+        panX = midX - relX * size - (viewWid - size) / 2f;
+        panY = midY - relY * size - (viewHit - size) / 2f;
+        clampPan();
+        return true;
+    }
+
+    /**
+     * A finger was lifted
+     * @param pointerId The pointer id of the finger
+     * @return true if the camera was using the finger
+     */
+    public boolean up(int pointerId) {
+        int f = fingerOf(pointerId);
+        if(f < 0) {
+            return false;
+        }
+
+        if(f == 0 && fingers == 2) {
+            pointerIds[0] = pointerIds[1];
+            lastX[0] = lastX[1];
+            lastY[0] = lastY[1];
+        }
+        fingers--;
+        return true;
+    }
+
+    /**
+     * Every finger is gone
+     */
+    public void cancel() {
+        fingers = 0;
+    }
+
+    /**
+     * Find a finger the camera is using
+     * @param pointerId The pointer id of the finger
+     * @return Index of the finger, or -1 if not used
+     */
+    private int fingerOf(int pointerId) {
+        for(int f=0; f<fingers; f++) {
+            if(pointerIds[f] == pointerId) {
+                return f;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Distance between the two fingers
+     * @return distance in pixels
+     */
+    private float span() {
+        float dx = lastX[1] - lastX[0];
+        float dy = lastY[1] - lastY[0];
+        return (float)Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Keep part of the puzzle on the screen. With no zoom
+     * the puzzle always stays in the center.
+     */
+    private void clampPan() {
+        if(!isZoomed()) {
+            panX = 0;
+            panY = 0;
+            return;
+        }
+
+        int size = getSize();
+        float maxX = (viewWid + size) / 2f - KEEP_IN_VIEW * Math.min(viewWid, size);
+        float maxY = (viewHit + size) / 2f - KEEP_IN_VIEW * Math.min(viewHit, size);
+        panX = Math.max(-maxX, Math.min(maxX, panX));
+        panY = Math.max(-maxY, Math.min(maxY, panY));
+    }
+}
@@ -0,0 +1,133 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import android.view.Choreographer;
+import android.view.View;
+
+/**
+ * Asks for the frames the dragged pieces of a puzzle are moved at.
+ * Touch samples are kept as they come in, and the pieces are moved to
+ * where the fingers are at the time of the next frame by
+ * Puzzle.applyDrags().
+ *
+ * PuzzleView gets its frames from the choreographer of the UI thread.
+ * PuzzleSurfaceView draws on its own render thread, which calls
+ * applyDrags() itself just before it draws, so a busy UI thread does
+ * not hold up the drags.
+ *
+ * This is only used while holding the lock of the puzzle.
+ */
+class DragFrame implements Choreographer.FrameCallback {
+    /**
+     * The puzzle the drags are applied to
+     */
+    private final Puzzle puzzle;
+
+    /**
+     * The view the puzzle is displayed in
+     */
+    private final View view;
+
+    /**
+     * Choreographer of the UI thread
+     */
+    private final Choreographer choreographer;
+
+    /**
+     * Are there drag samples waiting to be applied at the next frame?
+     */
+    private boolean pending = false;
+
+    /**
+     * Does the view apply the drags on its own render thread, just
+     * before it draws? If not they are applied by the choreographer
+     * of the UI thread.
+     */
+    private boolean renderThread = false;
+
+    /**
+     * Constructor
+     * @param puzzle The puzzle the drags are applied to
+     * @param view The view the puzzle is displayed in
+     * @param choreographer Choreographer of the UI thread
+     */
+    DragFrame(Puzzle puzzle, View view, Choreographer choreographer) {
+        this.puzzle = puzzle;
+        this.view = view;
+        this.choreographer = choreographer;
+    }
+
+    /**
+     * Ask for a frame to apply new drag samples at, if
+     * one has not been asked for already
+     */
+    void request() {
+        if(!pending) {
+            pending = true;
+            post();
+        }
+    }
+
+    /**
+     * Take the pending drags to apply them. Called at the frame.
+     * @return true if there were drags waiting for this frame
+     */
+    boolean take() {
+        boolean was = pending;
+        pending = false;
+        return was;
+    }
+
+    /**
+     * Choose where the drags are applied
+     * @param renderThread true if the render thread of the view applies
+     *                     the drags, false to use the UI thread
+     */
+    void setRenderThread(boolean renderThread) {
+        if(renderThread == this.renderThread) {
+            return;
+        }
+
+        this.renderThread = renderThread;
+        if(renderThread) {
+            choreographer.removeFrameCallback(this);
+        }
+
+        // Pass on any drags waiting for the old thread
+        if(pending) {
+            post();
+        }
+    }
+
+    /**
+     * Are the drags applied on the render thread of the view?
+     * @return true if the render thread applies them
+     */
+    boolean isRenderThread() {
+        return renderThread;
+    }
+
+    /**
+     * Forget any pending drags and stop asking for frames
+     */
+    void cancel() {
+        choreographer.removeFrameCallback(this);
+        pending = false;
+    }
+
+    /**
+     * Get a frame from the thread that applies the drags
+     */
+    private void post() {
+        if(renderThread) {
+            // The render thread applies them before it draws
+            view.invalidate();
+        } else {
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        puzzle.applyDrags(frameTimeNanos);
+    }
+}
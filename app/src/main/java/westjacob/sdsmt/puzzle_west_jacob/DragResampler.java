@@ -0,0 +1,187 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+/**
+ * Keeps the recent touch samples of each finger and works out where
+ * the finger is at the time a frame is drawn.
+ *
+ * Touch panels report samples at their own rate, which is often much
+ * faster than the display. Instead of moving a piece for every sample,
+ * the puzzle moves it once per frame to the location this returns.
+ * The location is taken a little before the frame time, so it can
+ * nearly always be interpolated between two real samples. If the
+ * samples stop short of that time the last motion is carried forward
+ * a short way, which keeps the piece under a fast moving finger.
+ *
+ * Samples are kept in fixed size rings of primitive arrays, so adding
+ * and reading them does not allocate anything.
+ */
+public class DragResampler {
+    /**
+     * Number of samples kept for each finger
+     */
+    final static int HISTORY = 8;
+
+    /**
+     * How far before the frame time we sample the finger. A little
+     * older than the frame means we usually have samples on both
+     * sides of the time we want.
+     */
+    final static long RESAMPLE_LATENCY = 5000000L;
+
+    /**
+     * Furthest we will predict past the last real sample
+     */
+    final static long MAX_PREDICTION = 8000000L;
+
+    /**
+     * Samples closer together than this are too noisy to predict from
+     */
+    final static long MIN_DELTA = 2000000L;
+
+    /**
+     * Samples further apart than this are too old to predict from
+     */
+    final static long MAX_DELTA = 20000000L;
+
+    /**
+     * Sample times in nanoseconds, HISTORY for each finger
+     */
+    private final long [] times;
+
+    /**
+     * Sample locations, HISTORY for each finger
+     */
+    private final float [] xs;
+    private final float [] ys;
+
+    /**
+     * Number of samples kept for each finger
+     */
+    private final int [] counts;
+
+    /**
+     * Index in the ring of the newest sample for each finger
+     */
+    private final int [] newest;
+
+    /**
+     * Resampled location of the last call to sample()
+     */
+    private float x;
+    private float y;
+
+    /**
+     * Constructor
+     * @param fingers Number of fingers to keep samples for
+     */
+    public DragResampler(int fingers) {
+        times = new long[fingers * HISTORY];
+        xs = new float[fingers * HISTORY];
+        ys = new float[fingers * HISTORY];
+        counts = new int[fingers];
+        newest = new int[fingers];
+    }
+
+    /**
+     * Forget the samples of a finger
+     * @param finger The finger
+     */
+    public void reset(int finger) {
+        counts[finger] = 0;
+    }
+
+    /**
+     * Add a sample. Samples must be added oldest first.
+     * @param finger The finger
+     * @param time Time of the sample in nanoseconds
+     * @param sx X location
+     * @param sy Y location
+     */
+    public void add(int finger, long time, float sx, float sy) {
+        int i = (newest[finger] + 1) % HISTORY;
+        newest[finger] = i;
+        if(counts[finger] < HISTORY) {
+            counts[finger]++;
+        }
+
+        int at = finger * HISTORY + i;
+        times[at] = time;
+        xs[at] = sx;
+        ys[at] = sy;
+    }
+
+    /**
+     * Does a finger have any samples?
+     * @param finger The finger
+     * @return true if sample() can be used
+     */
+    public boolean hasSamples(int finger) {
+        return counts[finger] > 0;
+    }
+
+    /**
+     * Work out where a finger is for a frame. The result is
+     * read with getX() and getY().
+     * @param finger The finger, which must have samples
+     * @param frameTime Time of the frame in nanoseconds
+     */
+    public void sample(int finger, long frameTime) {
+        long target = frameTime - RESAMPLE_LATENCY;
+        int base = finger * HISTORY;
+        int b = base + newest[finger];
+
+        if(target >= times[b] || counts[finger] == 1) {
+            x = xs[b];
+            y = ys[b];
+            if(counts[finger] == 1) {
+                return;
+            }
+
+            // Past the last sample. Carry the last motion forward
+            // if the last two samples are a sensible distance apart.
+            int a = base + (newest[finger] + HISTORY - 1) % HISTORY;
+            long delta = times[b] - times[a];
+            if(delta < MIN_DELTA || delta > MAX_DELTA) {
+                return;
+            }
+
+            long ahead = Math.min(target - times[b], Math.min(MAX_PREDICTION, delta / 2));
+            float t = (float)ahead / delta;
+            x += (xs[b] - xs[a]) * t;
+            y += (ys[b] - ys[a]) * t;
+            return;
+        }
+
+        // Find the two samples on either side of the target time
+        for(int n=1; n<counts[finger]; n++) {
+            int a = base + (newest[finger] + HISTORY - n) % HISTORY;
+            if(times[a] <= target) {
+                float t = (float)(target - times[a]) / (times[b] - times[a]);
+                x = xs[a] + (xs[b] - xs[a]) * t;
+                y = ys[a] + (ys[b] - ys[a]) * t;
+                return;
+            }
+            b = a;
+        }
+
+        // Older than anything we have
+        x = xs[b];
+        y = ys[b];
+    }
+
+    /**
+     * X location from the last call to sample()
+     * @return x location
+     */
+    public float getX() {
+        return x;
+    }
+
+    /**
+     * Y location from the last call to sample()
+     * @return y location
+     */
+    public float getY() {
+        return y;
+    }
+}
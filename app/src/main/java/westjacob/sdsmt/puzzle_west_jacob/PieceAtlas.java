@@ -0,0 +1,320 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.os.Build;
+
+import java.util.ArrayList;
+
+/**
+ * Texture atlas holding the images of all of the puzzle pieces.
+ *
+ * Each piece is drawn once, already cut to shape, into a slot on one of
+ * a few atlas pages at the size it appears on screen. A frame is then
+ * drawn as one textured triangle list per page, in z order, with no
+ * per-piece canvas transforms or clipping.
+ *
+ * An atlas is made for one level of detail, like a mipmap level. The
+ * puzzle keeps atlases at halving scales and draws from the smallest
+ * one that still has at least one atlas pixel per screen pixel.
+ *
+ * Pieces are found in the atlas by their id, so the ids must run
+ * from 0 to the number of pieces - 1, as made by PuzzleGenerator.
+ */
+public class PieceAtlas {
+    /**
+     * Largest width or height of an atlas page in pixels
+     */
+    final static int MAX_PAGE_SIZE = 2048;
+
+    /**
+     * Most atlas pages we will create. If the pieces do not fit,
+     * the atlas is made at a lower resolution.
+     */
+    final static int MAX_PAGES = 4;
+
+    /**
+     * Most slots on one page. Each slot uses four vertices and the
+     * vertex indices are 16 bit.
+     */
+    final static int MAX_SLOTS_PER_PAGE = 16384;
+
+    /**
+     * Transparent pixels around each piece so filtering does
+     * not pick up the neighboring slot.
+     */
+    final static int PADDING = 1;
+
+    /**
+     * The scale the pieces are actually stored at. This is less than
+     * the scale asked for if the atlas had to be made at a lower
+     * resolution.
+     */
+    private final float atlasScale;
+
+    /**
+     * Size of a slot in atlas pixels
+     */
+    private final int slotWid;
+    private final int slotHit;
+
+    /**
+     * Number of slot columns on a page
+     */
+    private final int slotColumns;
+
+    /**
+     * The atlas page images
+     */
+    private final Bitmap [] pages;
+
+    /**
+     * Paints that draw from each page
+     */
+    private final Paint [] paints;
+
+    /**
+     * Page and slot for each piece, by piece id
+     */
+    private final int [] pageOf;
+    private final int [] slotOf;
+
+    /**
+     * Screen vertices for each page, four x, y pairs per slot.
+     * Rewritten for every piece drawn each frame.
+     */
+    private final float [][] verts;
+
+    /**
+     * Texture coordinates for each page, matching verts. These
+     * never change once the atlas is built.
+     */
+    private final float [][] texs;
+
+    /**
+     * Triangle indices for the current run of pieces
+     */
+    private final short [] indices;
+
+    /**
+     * Number of indices in the current run
+     */
+    private int indexCount;
+
+    /**
+     * Rectangles used when we have to draw one piece at a time
+     */
+    private final Rect srcRect = new Rect();
+    private final RectF dstRect = new RectF();
+
+    /**
+     * Build the atlas
+     * @param pieces The puzzle pieces
+     * @param scale How much the piece images are scaled in the atlas
+     */
+    public PieceAtlas(ArrayList<PuzzlePiece> pieces, float scale) {
+        int maxWid = 1;
+        int maxHit = 1;
+        for(PuzzlePiece piece : pieces) {
+            maxWid = Math.max(maxWid, piece.getWidth());
+            maxHit = Math.max(maxHit, piece.getHeight());
+        }
+
+        atlasScale = fitScale(maxWid, maxHit, pieces.size(), scale);
+        slotWid = slotSize(maxWid, atlasScale);
+        slotHit = slotSize(maxHit, atlasScale);
+        slotColumns = MAX_PAGE_SIZE / slotWid;
+        int perPage = slotsPerPage(slotWid, slotHit);
+
+        int pageCount = Math.max(1, (pieces.size() + perPage - 1) / perPage);
+        pages = new Bitmap[pageCount];
+        paints = new Paint[pageCount];
+        verts = new float[pageCount][];
+        texs = new float[pageCount][];
+        indices = new short[Math.min(pieces.size(), perPage) * 6];
+
+        for(int p=0; p<pageCount; p++) {
+            int slots = Math.min(perPage, pieces.size() - p * perPage);
+            int columns = Math.min(slotColumns, slots);
+            int rows = (slots + slotColumns - 1) / slotColumns;
+
+            pages[p] = Bitmap.createBitmap(columns * slotWid, rows * slotHit, Bitmap.Config.ARGB_8888);
+            paints[p] = new Paint(Paint.FILTER_BITMAP_FLAG);
+            paints[p].setShader(new BitmapShader(pages[p], Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
+
+            verts[p] = new float[slots * 8];
+            texs[p] = new float[slots * 8];
+            for(int s=0; s<slots; s++) {
+                float left = slotLeft(s);
+                float top = slotTop(s);
+                setQuad(texs[p], s, left, top, left + slotWid, top + slotHit);
+            }
+        }
+
+        // Draw each piece into its slot, centered
+        pageOf = new int[pieces.size()];
+        slotOf = new int[pieces.size()];
+        Canvas canvas = new Canvas();
+        for(int i=0; i<pieces.size(); i++) {
+            PuzzlePiece piece = pieces.get(i);
+            int page = i / perPage;
+            int slot = i % perPage;
+            pageOf[piece.getId()] = page;
+            slotOf[piece.getId()] = slot;
+
+            canvas.setBitmap(pages[page]);
+            canvas.save();
+            canvas.clipRect(slotLeft(slot), slotTop(slot), slotLeft(slot) + slotWid, slotTop(slot) + slotHit);
+            canvas.translate(slotLeft(slot) + slotWid / 2f, slotTop(slot) + slotHit / 2f);
+            canvas.scale(atlasScale, atlasScale);
+            canvas.translate(-piece.getWidth() / 2f, -piece.getHeight() / 2f);
+            piece.drawImage(canvas, atlasScale);
+            canvas.restore();
+        }
+        canvas.setBitmap(null);
+
+        for(Bitmap page : pages) {
+            page.prepareToDraw();
+        }
+    }
+
+    /**
+     * Find the largest scale up to the one asked for that the
+     * pieces can be stored at on MAX_PAGES pages
+     * @param maxWid Largest width of a piece
+     * @param maxHit Largest height of a piece
+     * @param count Number of pieces
+     * @param scale The scale asked for
+     * @return The scale the atlas is made at
+     */
+    public static float fitScale(int maxWid, int maxHit, int count, float scale) {
+        while(true) {
+            int perPage = slotsPerPage(slotSize(maxWid, scale), slotSize(maxHit, scale));
+            if((count + perPage - 1) / perPage <= MAX_PAGES) {
+                return scale;
+            }
+            scale *= 0.9f;
+        }
+    }
+
+    private static int slotSize(int size, float scale) {
+        return Math.min(MAX_PAGE_SIZE, (int)Math.ceil(size * scale) + 2 * PADDING);
+    }
+
+    private static int slotsPerPage(int wid, int hit) {
+        return Math.min(MAX_SLOTS_PER_PAGE, (MAX_PAGE_SIZE / wid) * (MAX_PAGE_SIZE / hit));
+    }
+
+    /**
+     * Draw the pieces from the atlas
+     * @param canvas Canvas we are drawing on
+     * @param store The state of the pieces
+     * @param ids Ids of the pieces to draw, bottom to top
+     * @param count Number of ids to draw
+     * @param marginX Margin x value in pixels
+     * @param marginY Margin y value in pixels
+     * @param puzzleSize Size we draw the puzzle in pixels
+     * @param scaleFactor Amount we scale the puzzle pieces when we draw them
+     */
+    public void draw(Canvas canvas, PieceStore store, int [] ids, int count, int marginX, int marginY,
+                     int puzzleSize, float scaleFactor) {
+        // Hardware canvases only support drawVertices from API 29. Before
+        // that we draw from the atlas one piece at a time, which the
+        // renderer can still batch since every draw uses the same bitmap.
+        boolean batched = !canvas.isHardwareAccelerated() ||
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+
+        // Size of a slot on the screen
+        float halfWid = slotWid * scaleFactor / atlasScale / 2;
+        float halfHit = slotHit * scaleFactor / atlasScale / 2;
+
+        int runPage = -1;
+        indexCount = 0;
+        for(int i=0; i<count; i++) {
+            int id = ids[i];
+            int page = pageOf[id];
+            int slot = slotOf[id];
+
+            float cx = marginX + store.getX(id) * puzzleSize;
+            float cy = marginY + store.getY(id) * puzzleSize;
+
+            if(!batched) {
+                srcRect.set(slotLeft(slot), slotTop(slot), slotLeft(slot) + slotWid, slotTop(slot) + slotHit);
+                dstRect.set(cx - halfWid, cy - halfHit, cx + halfWid, cy + halfHit);
+                canvas.drawBitmap(pages[page], srcRect, dstRect, paints[page]);
+                continue;
+            }
+
+            // Pages are drawn one at a time, so a change of
+            // page means we have to draw what we have so far.
+            if(page != runPage) {
+                flush(canvas, runPage);
+                runPage = page;
+            }
+
+            setQuad(verts[page], slot, cx - halfWid, cy - halfHit, cx + halfWid, cy + halfHit);
+
+            int v = slot * 4;
+            indices[indexCount++] = (short)v;
+            indices[indexCount++] = (short)(v + 1);
+            indices[indexCount++] = (short)(v + 2);
+            indices[indexCount++] = (short)v;
+            indices[indexCount++] = (short)(v + 2);
+            indices[indexCount++] = (short)(v + 3);
+        }
+
+        flush(canvas, runPage);
+    }
+
+    /**
+     * Draw the current run of pieces
+     * @param canvas Canvas we are drawing on
+     * @param page Page the run is on, or -1 if there is no run
+     */
+    private void flush(Canvas canvas, int page) {
+        if(page >= 0 && indexCount > 0) {
+            canvas.drawVertices(Canvas.VertexMode.TRIANGLES, verts[page].length, verts[page], 0,
+                    texs[page], 0, null, 0, indices, 0, indexCount, paints[page]);
+        }
+
+        indexCount = 0;
+    }
+
+    /**
+     * Free the atlas pages
+     */
+    public void recycle() {
+        for(Bitmap page : pages) {
+            page.recycle();
+        }
+    }
+
+    private int slotLeft(int slot) {
+        return (slot % slotColumns) * slotWid;
+    }
+
+    private int slotTop(int slot) {
+        return (slot / slotColumns) * slotHit;
+    }
+
+    /**
+     * Set the four corners of a slot in a vertex array, going
+     * clockwise from the top left.
+     */
+    private static void setQuad(float [] array, int slot, float left, float top, float right, float bottom) {
+        int i = slot * 8;
+        array[i] = left;
+        array[i+1] = top;
+        array[i+2] = right;
+        array[i+3] = top;
+        array[i+4] = right;
+        array[i+5] = bottom;
+        array[i+6] = left;
+        array[i+7] = bottom;
+    }
+}
@@ -0,0 +1,182 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import android.annotation.TargetApi;
+import android.graphics.Canvas;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
+import android.os.Build;
+
+import java.util.Arrays;
+
+/**
+ * Draws the loose pieces from a RenderNode for each piece. A piece is
+ * recorded into its node once, and after that moving it only changes
+ * the translation of the node. The loose pieces are drawn by one more
+ * node that lists the piece nodes in z order, and that is only recorded
+ * again when the list changes, so dragging a piece records almost
+ * nothing on the UI thread.
+ *
+ * RenderNode needs API 29, so this must only be used when
+ * Build.VERSION.SDK_INT is at least Q and the canvas is hardware
+ * accelerated. Other devices draw from the atlas instead.
+ *
+ * The pieces are recorded at one level of detail, the one for the
+ * puzzle with no zoom. A recorded node keeps the image tiles it uses,
+ * so recording at more detail than that would keep the whole image at
+ * full size. The puzzle draws another way when it is zoomed in.
+ */
+@TargetApi(Build.VERSION_CODES.Q)
+public class PieceNodes {
+    /**
+     * Node for each piece by id, or null if not recorded yet
+     */
+    private final RenderNode [] nodes;
+
+    /**
+     * Translation each node was last given, NaN if none
+     */
+    private final float [] shownX;
+    private final float [] shownY;
+
+    /**
+     * Scale the nodes were last given
+     */
+    private float shownScale = Float.NaN;
+
+    /**
+     * Scale the pieces are recorded at
+     */
+    private float detail = Float.NaN;
+
+    /**
+     * Node that draws the piece nodes in z order
+     */
+    private final RenderNode loose = new RenderNode("loose pieces");
+
+    /**
+     * The pieces the loose node draws, bottom to top
+     */
+    private final int [] looseIds;
+
+    /**
+     * Number of pieces the loose node draws, or -1 if
+     * it has not been recorded
+     */
+    private int looseCount = -1;
+
+    /**
+     * Constructor
+     * @param count Number of piece ids
+     */
+    public PieceNodes(int count) {
+        nodes = new RenderNode[count];
+        shownX = new float[count];
+        shownY = new float[count];
+        looseIds = new int[count];
+        loose.setClipToBounds(false);
+    }
+
+    /**
+     * Draw loose pieces
+     * @param canvas Hardware accelerated canvas we are drawing on
+     * @param board The puzzle board
+     * @param ids Ids of the pieces to draw, bottom to top
+     * @param count Number of ids to draw
+     * @param marginX Margin x value in pixels
+     * @param marginY Margin y value in pixels
+     * @param puzzleSize Size we draw the puzzle in pixels
+     * @param scaleFactor Amount we scale the puzzle pieces when we draw them
+     */
+    public void draw(Canvas canvas, PuzzleBoard<PuzzlePiece> board, int [] ids, int count,
+                     int marginX, int marginY, int puzzleSize, float scaleFactor) {
+        if(scaleFactor != detail) {
+            // The view changed size, so record everything again
+            release();
+            detail = scaleFactor;
+        }
+
+        if(scaleFactor != shownScale) {
+            Arrays.fill(shownX, Float.NaN);
+            shownScale = scaleFactor;
+        }
+
+        if(loose.getWidth() != canvas.getWidth() || loose.getHeight() != canvas.getHeight()) {
+            loose.setPosition(0, 0, canvas.getWidth(), canvas.getHeight());
+            looseCount = -1;
+        }
+
+        PieceStore store = board.getStore();
+        boolean changed = count != looseCount;
+        for(int i=0; i<count; i++) {
+            int id = ids[i];
+            PuzzlePiece piece = board.getPiece(id);
+            RenderNode node = nodes[id];
+            if(node == null) {
+                node = record(piece);
+                nodes[id] = node;
+                changed = true;
+            }
+
+            // Only tell the node about a move
+            float left = marginX + store.getX(id) * puzzleSize - piece.getWidth() * scaleFactor / 2;
+            float top = marginY + store.getY(id) * puzzleSize - piece.getHeight() * scaleFactor / 2;
+            if(left != shownX[id] || top != shownY[id]) {
+                node.setScaleX(scaleFactor);
+                node.setScaleY(scaleFactor);
+                node.setTranslationX(left);
+                node.setTranslationY(top);
+                shownX[id] = left;
+                shownY[id] = top;
+            }
+
+            if(looseIds[i] != id) {
+                looseIds[i] = id;
+                changed = true;
+            }
+        }
+
+        if(changed) {
+            RecordingCanvas recording = loose.beginRecording();
+            for(int i=0; i<count; i++) {
+                recording.drawRenderNode(nodes[looseIds[i]]);
+            }
+            loose.endRecording();
+            looseCount = count;
+        }
+
+        canvas.drawRenderNode(loose);
+    }
+
+    /**
+     * Record the image of a piece into a new node
+     * @param piece The piece
+     * @return The node, with its top left corner at 0, 0
+     */
+    private RenderNode record(PuzzlePiece piece) {
+        RenderNode node = new RenderNode("piece " + piece.getId());
+        node.setPosition(0, 0, piece.getWidth(), piece.getHeight());
+        node.setPivotX(0);
+        node.setPivotY(0);
+
+        RecordingCanvas recording = node.beginRecording();
+        piece.drawImage(recording, detail);
+        node.endRecording();
+        return node;
+    }
+
+    /**
+     * Free every node. They are recorded again if they are drawn.
+     */
+    public void release() {
+        for(int i=0; i<nodes.length; i++) {
+            if(nodes[i] != null) {
+                nodes[i].discardDisplayList();
+                nodes[i] = null;
+            }
+        }
+
+        loose.discardDisplayList();
+        looseCount = -1;
+        Arrays.fill(shownX, Float.NaN);
+    }
+}
@@ -3,15 +3,25 @@ package westjacob.sdsmt.puzzle_west_jacob;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.View;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 
@@ -21,166 +31,1108 @@ public class Puzzle {
      */
     private Paint fillPaint;
 
+    /**
+     * Paint for the loading progress bar
+     */
+    private Paint progressPaint;
+
+    /**
+     * Height of the loading progress bar in pixels
+     */
+    final static float PROGRESS_HEIGHT = 8;
+
     /**
      * Paint for outlining the area the puzzle is in
      */
     private Paint outlinePaint;
 
-    /**
-     * Completed puzzle bitmap
-     */
-    private Bitmap puzzleComplete;
+    /**
+     * Completed puzzle image
+     */
+    private TiledImage puzzleComplete;
+
+    /**
+     * Number of pieces the puzzle will have once it is loaded
+     */
+    private int expected = 0;
+
+    /**
+     * Saved state to restore once the puzzle is loaded, or null
+     */
+    private Bundle pendingState = null;
+
+    /**
+     * Set once the puzzle has been released
+     */
+    private boolean released = false;
+
+    /**
+     * Told when the number of snapped pieces changes, or null
+     */
+    private ProgressListener progressListener = null;
+
+    /**
+     * Interface for anything that wants to know how far
+     * along the puzzle is
+     */
+    public interface ProgressListener {
+        /**
+         * Called on the UI thread when pieces snap into place
+         * or are taken out of place.
+         * @param puzzle The puzzle
+         * @param percent Percent of the pieces snapped into place, 0 to 100
+         */
+        void onProgress(Puzzle puzzle, int percent);
+    }
+
+    /**
+     * The pieces and the rules for moving them. Made once the
+     * image is loaded and we know how big the pieces are.
+     */
+    private PuzzleBoard<PuzzlePiece> board;
+
+    /**
+     * Number of levels of detail below the size the pieces are in
+     * the puzzle image. Each level is half the scale of the one
+     * before it.
+     */
+    final static int LOWER_LEVELS = 3;
+
+    /**
+     * Atlases of the piece images used to draw all of the pieces
+     * at once, by level of detail. Level 0 has as much of the detail
+     * in the original image as fits on the atlas pages. A level is
+     * null if not built yet. Only the level in use and one next to
+     * it are kept.
+     */
+    private PieceAtlas [] mipmaps = new PieceAtlas[0];
+
+    /**
+     * Scale of the pieces in level 0 of the atlas. When zoomed in
+     * past this the pieces are drawn from the image tiles instead,
+     * so the whole original image is never decoded into the atlas.
+     */
+    private float atlasScale = 1;
+
+    /**
+     * Task making a level of the atlas, or null if none is
+     */
+    private MipmapTask mipmapTask = null;
+
+    /**
+     * Should we draw the pieces from the atlas?
+     */
+    private boolean atlasMode = true;
+
+    /**
+     * Should we draw the loose pieces from a render node for each
+     * piece when we can? That needs API 29 and a hardware canvas.
+     */
+    private boolean nodeMode = true;
+
+    /**
+     * Render nodes of the pieces, or null if not made
+     */
+    private PieceNodes nodes = null;
+
+    /**
+     * Should a shuffle spread the pieces out so they do not sit
+     * on each other, instead of dropping them anywhere?
+     */
+    private boolean spread = true;
+
+    /**
+     * Places the pieces when they are shuffled, using the
+     * loader threads to help with big puzzles
+     */
+    private final PieceShuffler shuffler = new PieceShuffler(PuzzleLoader.executor());
+
+    /**
+     * Seed for where the pieces are put as they are loaded
+     */
+    private long loadSeed = 0;
+
+    /**
+     * Image of the board and the pieces that have snapped into place
+     */
+    private final SettledLayer settled = new SettledLayer();
+
+    /**
+     * Most the settled layer is made bigger than the puzzle is drawn
+     * with no zoom. Past this the layer is scaled up.
+     */
+    final static int LAYER_MAX_ZOOM = 2;
+
+    /**
+     * Where the puzzle is on the screen and how big
+     */
+    private final Camera camera = new Camera();
+
+    /**
+     * The size of the puzzle in pixels
+     */
+    private int puzzleSize;
+    /**
+     * How much we scale the puzzle pieces
+     */
+    private float scaleFactor;
+
+    /**
+     * Left margin in pixels
+     */
+    private int marginX;
+
+    /**
+     * Top margin in pixels
+     */
+    private int marginY;
+
+    /**
+     * Size of the settled layer in pixels
+     */
+    private int layerSize;
+
+    /**
+     * How much we scale the puzzle pieces in the settled layer
+     */
+    private float layerScale;
+
+    /**
+     * Most fingers that can drag pieces at the same time
+     */
+    final static int MAX_POINTERS = 10;
+
+    /**
+     * Number of moves that can be undone
+     */
+    final static int JOURNAL_SIZE = 1024;
+
+    /**
+     * The piece each finger is dragging. A slot is
+     * free if its entry is null.
+     */
+    private final PuzzlePiece [] dragging = new PuzzlePiece[MAX_POINTERS];
+
+    /**
+     * Pointer id of the finger using each slot
+     */
+    private final int [] pointerIds = new int[MAX_POINTERS];
+
+    /**
+     * Where the piece each finger is dragging was picked up
+     */
+    private final float [] startX = new float[MAX_POINTERS];
+    private final float [] startY = new float[MAX_POINTERS];
+
+    /**
+     * Was the piece each finger is dragging snapped into place?
+     */
+    private final boolean [] startSnapped = new boolean[MAX_POINTERS];
+
+    /**
+     * The moves made, so they can be undone
+     */
+    private final MoveJournal journal = new MoveJournal(JOURNAL_SIZE);
+
+    /**
+     * Most recent relative X touch of each finger
+     */
+    private final float [] lastRelX = new float[MAX_POINTERS];
+
+    /**
+     * Most recent relative Y touch of each finger
+     */
+    private final float [] lastRelY = new float[MAX_POINTERS];
+
+    /**
+     * Recent touch samples of each finger. Pieces are moved to
+     * the resampled location once per frame.
+     */
+    private final DragResampler resampler = new DragResampler(MAX_POINTERS);
+
+    /**
+     * Asks for the frames the dragged pieces are moved at
+     */
+    private final DragFrame dragFrame;
+
+    /**
+     * Moves pieces home for hints and solving
+     */
+    private final AutoSolver solver;
+
+    /**
+     * Bounding box of a cluster, relative to the puzzle
+     */
+    private final float [] groupBox = new float[4];
+
+    /**
+     * The pieces of a cluster that was just dropped
+     */
+    private final ArrayList<PuzzlePiece> group = new ArrayList<>();
+
+    /**
+     * Area of the view that has to be redrawn after a drag
+     */
+    private final Rect dirty = new Rect();
+
+    /**
+     * Screen bounds of a piece, reused to avoid allocation
+     */
+    private final Rect bounds = new Rect();
+
+    /**
+     * Area of the view being drawn
+     */
+    private final Rect clip = new Rect();
+
+    /**
+     * Pieces the grid finds in the area being drawn
+     */
+    private final ArrayList<PuzzlePiece> visible = new ArrayList<>();
+
+    /**
+     * Ids of the loose pieces to draw this frame, bottom to top
+     */
+    private int [] drawIds = new int[0];
+
+    /**
+     * Z values and ids of the pieces the grid finds, used
+     * to put them in z order
+     */
+    private long [] visibleKeys = new long[0];
+
+    /**
+     * Draw times, touch latency, culling and tile cache measurements
+     */
+    private final FrameStats stats = new FrameStats();
+
+    /**
+     * Tile cache hits and misses of the image at the last frame
+     */
+    private int lastTileHits = 0;
+    private int lastTileMisses = 0;
+
+    /**
+     * Debug overlay showing the stats, or null if not shown
+     */
+    private StatsOverlay overlay = null;
+
+    /**
+     * Time of the oldest touch that has not been drawn yet in
+     * nanoseconds, or 0 if every touch has been drawn
+     */
+    private long touchTime = 0;
+
+    /**
+     * Random number generator
+     */
+    private static Random random = new Random();
+
+    /**
+     * The name of the bundle keys to save the puzzle
+     */
+    private final static String STATE = "Puzzle.state";
+
+    /**
+     * Name of the file the puzzle in progress is kept in
+     */
+    private final static String SESSION_FILE = "puzzle_session.bin";
+
+    /**
+     * Session the puzzle in progress is kept in, or null if
+     * not loaded yet or the file could not be opened
+     */
+    private SessionStore session = null;
+
+    /**
+     * Name of the file the moves since the session was last
+     * written in full are kept in
+     */
+    private final static String JOURNAL_FILE = "puzzle_journal.bin";
+
+    /**
+     * Store the journal is kept in next to the session, or null if
+     * not loaded yet or the file could not be opened. While there is
+     * one the session is only written in full at journal checkpoints.
+     */
+    private JournalStore journalStore = null;
+
+    /**
+     * The view the puzzle is displayed in. This is either a
+     * PuzzleView or a PuzzleSurfaceView.
+     */
+    View puzzleView;
+
+    /**
+     * Number of columns and rows of pieces if none are given
+     */
+    final static int DEFAULT_SIZE = 5;
+
+    public Puzzle(Context context, View view) {
+        this(context, view, DEFAULT_SIZE, DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param context Context used to load the puzzle image
+     * @param view The view the puzzle is displayed in
+     * @param columns Number of columns of pieces
+     * @param rows Number of rows of pieces
+     */
+    public Puzzle(Context context, View view, int columns, int rows) {
+
+        // Create paint for filling the area the puzzle will
+        // be solved in.
+        fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        fillPaint.setColor(0xffcccccc);
+
+        progressPaint = new Paint();
+        progressPaint.setColor(0xff008000);
+
+        puzzleView = view;
+
+        // We are created on the UI thread, so this
+        // is the UI thread choreographer
+        Choreographer choreographer = Choreographer.getInstance();
+        dragFrame = new DragFrame(this, view, choreographer);
+        solver = new AutoSolver(this, view, choreographer);
+
+        // Load the solved puzzle image. With no zoom the puzzle is
+        // SCALE_IN_VIEW of the smaller screen dimension, so the pieces
+        // are cut at about that size. More detail is decoded from the
+        // image as we zoom in.
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int maxSize = (int)(Math.min(metrics.widthPixels, metrics.heightPixels) * Camera.SCALE_IN_VIEW);
+        // Decoding the image and cutting the pieces is slow, so
+        // it is done in the background. The pieces show up as
+        // they are cut.
+        PuzzleLoader.load(this, context.getResources(), R.drawable.grubby_done, maxSize,
+                columns, rows, new File(context.getFilesDir(), SESSION_FILE),
+                new File(context.getFilesDir(), JOURNAL_FILE), random);
+    }
+
+    /**
+     * Set the puzzle image once it has been opened. Called by
+     * the loader before any pieces are added.
+     * @param image The solved puzzle image
+     * @param maxPieceSize Largest width or height of a piece in pixels
+     * @param columns Number of columns of pieces that will be added
+     * @param rows Number of rows of pieces that will be added
+     * @param session Session the puzzle in progress is kept in, or null
+     * @param journalStore Store the moves are kept in next to the session, or null
+     * @return false if the puzzle has already been released
+     */
+    synchronized boolean setImage(TiledImage image, int maxPieceSize, int columns, int rows, SessionStore session,
+                                  JournalStore journalStore) {
+        if(released) {
+            return false;
+        }
+
+        this.session = session;
+        this.journalStore = journalStore;
+        puzzleComplete = image;
+        board = new PuzzleBoard<>(maxPieceSize, image.getWidth(), columns, rows);
+        loadSeed = random.nextLong();
+        expected = columns * rows;
+        drawIds = new int[expected];
+        journal.clear();
+        solver.setBoard(board);
+        releaseNodes();
+
+        // One level for each power of two of detail the atlas
+        // has past the puzzle image, and then the lower ones
+        atlasScale = PieceAtlas.fitScale(maxPieceSize, maxPieceSize, expected, image.getMaxScale());
+        int levels = LOWER_LEVELS + 1;
+        for(float s=atlasScale; s>=2; s/=2) {
+            levels++;
+        }
+        mipmaps = new PieceAtlas[levels];
+        mipmapTask = null;
+        puzzleView.postInvalidate();
+        return true;
+    }
+
+    /**
+     * Add pieces made by the loader. Each new piece is put in a random
+     * location on top of the pieces already there.
+     * @param loaded The new pieces
+     */
+    synchronized void addPieces(ArrayList<PuzzlePiece> loaded) {
+        for(PuzzlePiece piece : loaded) {
+            board.add(piece, loadSeed);
+        }
+
+        if(isLoaded()) {
+            // Pick up where the last session left off
+            boolean restored = false;
+            if(session != null && session.isRestorable()) {
+                // Pieces dragged while loading may have been joined.
+                // Clusters are made again from where the pieces end up.
+                clearDragging();
+                board.ungroup();
+                restored = session.restore(board.getPieces());
+                board.restored();
+            }
+
+            // The moves made while loading no longer apply to a
+            // restored session. Those of the session itself do.
+            if(restored) {
+                journal.clear();
+            }
+            if(journalStore != null) {
+                journal.attach(journalStore);
+                if(!restored && journalStore.isRestorable()) {
+                    journal.clear();
+                }
+            }
+
+            if(restored) {
+                // The session was last written in full at a checkpoint
+                // of the journal. Make the moves since then again.
+                if(!journal.replay(board)) {
+                    journal.clear();
+                }
+                settled.invalidate();
+                notifyProgress();
+            }
+
+            // We were asked to restore a saved puzzle while loading
+            if(pendingState != null) {
+                loadInstanceState(pendingState);
+                pendingState = null;
+            }
+
+            if(session != null) {
+                session.writeAll(board.getPieces());
+                journal.checkpoint();
+            }
+        }
+
+        puzzleView.postInvalidate();
+    }
+
+    /**
+     * Have all of the pieces been loaded?
+     * @return true if the puzzle is completely loaded
+     */
+    public synchronized boolean isLoaded() {
+        return board != null && board.getCount() == expected;
+    }
+
+    /**
+     * Has release() been called?
+     * @return true if the puzzle has been released
+     */
+    public synchronized boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Create a puzzle using the attributes set on a view in its layout
+     * @param view The view the puzzle is displayed in
+     * @param attrs The attributes of the view, or null
+     * @param defStyle Default style of the view
+     * @return The new puzzle
+     */
+    public static Puzzle fromAttributes(View view, AttributeSet attrs, int defStyle) {
+        // The number of pieces can be set in the layout
+        TypedArray a = view.getContext().obtainStyledAttributes(attrs, R.styleable.PuzzleView, defStyle, 0);
+        int columns = a.getInt(R.styleable.PuzzleView_columns, DEFAULT_SIZE);
+        int rows = a.getInt(R.styleable.PuzzleView_rows, columns);
+        boolean atlas = a.getBoolean(R.styleable.PuzzleView_atlas, true);
+        boolean nodes = a.getBoolean(R.styleable.PuzzleView_nodes, true);
+        boolean spread = a.getBoolean(R.styleable.PuzzleView_spread, true);
+        boolean stats = a.getBoolean(R.styleable.PuzzleView_stats, false);
+        a.recycle();
+
+        Puzzle puzzle = new Puzzle(view.getContext(), view, columns, rows);
+        puzzle.setAtlasMode(atlas);
+        puzzle.setNodeMode(nodes);
+        puzzle.setSpread(spread);
+        puzzle.setStatsOverlay(stats);
+        return puzzle;
+    }
+
+    /**
+     * Draw the puzzle. The puzzle may be drawn on a render thread
+     * while it is changed on the UI thread, so this holds the lock.
+     * @param canvas Canvas we are drawing on
+     */
+    public synchronized void draw(Canvas canvas) {
+        long start = System.nanoTime();
+        drawPuzzle(canvas);
+        stats.record(FrameStats.DRAW_TIME, System.nanoTime() - start);
+
+        // Touch times are on the uptime clock, which
+        // only has millisecond precision
+        if(touchTime != 0) {
+            stats.record(FrameStats.TOUCH_LATENCY, SystemClock.uptimeMillis() * 1000000L - touchTime);
+            touchTime = 0;
+        }
+
+        // The tiles decoded on loader threads count as well
+        if(puzzleComplete != null) {
+            int hits = puzzleComplete.getHitCount();
+            int misses = puzzleComplete.getMissCount();
+            stats.record(FrameStats.TILE_HITS, hits - lastTileHits);
+            stats.record(FrameStats.TILE_MISSES, misses - lastTileMisses);
+            lastTileHits = hits;
+            lastTileMisses = misses;
+        }
+
+        if(overlay != null) {
+            overlay.draw(canvas, stats, puzzleComplete);
+        }
+    }
+
+    /**
+     * Draw the puzzle itself
+     * @param canvas Canvas we are drawing on
+     */
+    private void drawPuzzle(Canvas canvas) {
+        int wid = canvas.getWidth();
+        int hit = canvas.getHeight();
+
+        // The camera works out the size and margins from the view size
+        camera.layout(wid, hit);
+        applyCamera();
+
+        if(puzzleComplete == null) {
+            // Still loading the image, so all we can show is the board
+            canvas.drawRect(marginX, marginY, marginX + puzzleSize, marginY + puzzleSize, fillPaint);
+            drawProgress(canvas);
+            return;
+        }
+
+        //
+        // Draw the puzzle area and the pieces already snapped
+        // into place. These come from a cached image. The image
+        // size goes up in powers of two as we zoom, so pinching
+        // does not make it again on every frame.
+        //
+
+        int layerZoom = 1;
+        while(layerZoom < LAYER_MAX_ZOOM && layerZoom < camera.getZoom()) {
+            layerZoom *= 2;
+        }
+        layerSize = camera.getBaseSize() * layerZoom;
+        layerScale = (float)layerSize / (float)puzzleComplete.getWidth();
+
+        settled.update(board, fillPaint, layerSize, layerScale);
+        settled.draw(canvas, marginX, marginY, puzzleSize);
+
+        // When only part of the puzzle can be seen, only draw the
+        // pieces that overlap that part. That is when only part of the
+        // view is being redrawn, which only happens in software, or
+        // when we are zoomed in.
+        PieceStore store = board.getStore();
+        int drawn = 0;
+        canvas.getClipBounds(clip);
+        if(clip.width() < wid || clip.height() < hit || camera.isZoomed()) {
+            drawn = board.isGroupHeld() ? scanVisible() : visiblePieces();
+        } else {
+            for(int id=settled.firstAbove(store); id!=PieceStore.NONE; id=store.above(id)) {
+                drawIds[drawn++] = id;
+            }
+        }
+
+        stats.record(FrameStats.PIECES_DRAWN, drawn);
+        stats.record(FrameStats.PIECES_CULLED, board.getCount() - settled.getCount() - drawn);
+
+        if(!isLoaded()) {
+            // Show the pieces we have so far. The atlas is
+            // not made until we have all of them.
+            for(int i=0; i<drawn; i++) {
+                board.getPiece(drawIds[i]).draw(canvas, marginX, marginY, puzzleSize, scaleFactor);
+            }
+
+            drawProgress(canvas);
+            return;
+        }
+
+        if(nodeMode && !camera.isZoomed() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q &&
+                canvas.isHardwareAccelerated()) {
+            // Each piece is recorded once and then only moved. When
+            // zoomed in we use the atlas, so the nodes never hold on
+            // to image tiles with more detail than this.
+            if(nodes == null) {
+                nodes = new PieceNodes(expected);
+            }
+
+            nodes.draw(canvas, board, drawIds, drawn, marginX, marginY, puzzleSize, scaleFactor);
+            return;
+        }
+
+        // Zoomed in past the detail the atlas has, each piece is
+        // drawn from the image tiles that can be seen
+        if(atlasMode && (scaleFactor <= atlasScale || !camera.isZoomed())) {
+            // Draw from the smallest level of detail that still has
+            // at least one pixel for each pixel on the screen
+            int level = 0;
+            float levelScale = atlasScale;
+            while(level < mipmaps.length - 1 && levelScale / 2 >= scaleFactor) {
+                levelScale /= 2;
+                level++;
+            }
+
+            PieceAtlas atlas = mipmap(level);
+            if(atlas != null) {
+                atlas.draw(canvas, store, drawIds, drawn, marginX, marginY, puzzleSize, scaleFactor);
+                return;
+            }
+        }
+
+        // Draw each piece on its own
+        for(int i=0; i<drawn; i++) {
+            board.getPiece(drawIds[i]).draw(canvas, marginX, marginY, puzzleSize, scaleFactor);
+        }
+    }
+
+    /**
+     * Take the size and location of the puzzle from the camera
+     */
+    private void applyCamera() {
+        puzzleSize = camera.getSize();
+        marginX = camera.getMarginX();
+        marginY = camera.getMarginY();
+        if(puzzleComplete != null) {
+            scaleFactor = (float)puzzleSize / (float)puzzleComplete.getWidth();
+        }
+    }
+
+    /**
+     * Get the atlas for a level of detail. A level we do not have yet
+     * is made on a loader thread, since drawing every piece into it
+     * takes far longer than a frame. Until it is ready we use the
+     * nearest level we have.
+     * @param level The level of detail
+     * @return The atlas, or null if we have no level at all yet
+     */
+    private PieceAtlas mipmap(int level) {
+        if(mipmaps[level] != null) {
+            keepMipmaps(level);
+            return mipmaps[level];
+        }
+
+        // One level is made at a time. The next frame asks
+        // for the level it wants once this one is done.
+        if(mipmapTask == null) {
+            mipmapTask = new MipmapTask(level);
+            PuzzleLoader.executor().execute(mipmapTask);
+        }
+
+        for(int d=1; d<mipmaps.length; d++) {
+            if(level - d >= 0 && mipmaps[level - d] != null) {
+                keepMipmaps(level - d);
+                return mipmaps[level - d];
+            }
+
+            if(level + d < mipmaps.length && mipmaps[level + d] != null) {
+                keepMipmaps(level + d);
+                return mipmaps[level + d];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Free every level of the atlas except one and a level next to
+     * it, so zooming back and forth past a level does not make
+     * atlases again
+     * @param level The level to keep
+     */
+    private void keepMipmaps(int level) {
+        boolean neighbour = false;
+        for(int i=0; i<mipmaps.length; i++) {
+            if(i == level || mipmaps[i] == null) {
+                continue;
+            }
+
+            if(!neighbour && Math.abs(i - level) == 1) {
+                neighbour = true;
+                continue;
+            }
+
+            mipmaps[i].recycle();
+            mipmaps[i] = null;
+        }
+    }
+
+    /**
+     * Task that makes a level of the atlas
+     */
+    private class MipmapTask implements Runnable {
+        private final int level;
+        private final float scale;
+        private final ArrayList<PuzzlePiece> pieces;
+
+        MipmapTask(int level) {
+            this.level = level;
+            scale = atlasScale / (1 << level);
+            pieces = new ArrayList<>(board.getPieces());
+        }
+
+        @Override
+        public void run() {
+            PieceAtlas atlas = new PieceAtlas(pieces, scale);
+
+            synchronized(Puzzle.this) {
+                // The atlas may have been thrown away while we made it
+                if(mipmapTask != this) {
+                    atlas.recycle();
+                    return;
+                }
+
+                mipmapTask = null;
+                mipmaps[level] = atlas;
+                keepMipmaps(level);
+            }
+
+            puzzleView.postInvalidate();
+        }
+    }
 
     /**
-     * Collection of puzzle pieces
+     * Free every atlas
      */
-    public ArrayList<PuzzlePiece> pieces = new ArrayList<>();
+    private void recycleMipmaps() {
+        mipmapTask = null;
+        for(int i=0; i<mipmaps.length; i++) {
+            if(mipmaps[i] != null) {
+                mipmaps[i].recycle();
+                mipmaps[i] = null;
+            }
+        }
+    }
 
     /**
-     * Percentage of the display width or height that
-     * is occupied by the puzzle.
+     * Draw a bar along the bottom of the puzzle showing
+     * how much of it has been loaded
+     * @param canvas Canvas we are drawing on
      */
-    final static float SCALE_IN_VIEW = 0.9f;
+    private void drawProgress(Canvas canvas) {
+        float done = expected > 0 ? (float)board.getCount() / expected : 0;
+        float top = marginY + puzzleSize - PROGRESS_HEIGHT;
+        canvas.drawRect(marginX, top, marginX + done * puzzleSize, marginY + puzzleSize, progressPaint);
+    }
 
     /**
-     * The size of the puzzle in pixels
+     * Find the loose pieces that overlap the clip rectangle
+     * and put their ids in drawIds
+     * @return Number of pieces, bottom to top
      */
-    private int puzzleSize;
+    private int visiblePieces() {
+        visible.clear();
+        board.getGrid().query((float)(clip.left - marginX) / puzzleSize, (float)(clip.top - marginY) / puzzleSize,
+                (float)(clip.right - marginX) / puzzleSize, (float)(clip.bottom - marginY) / puzzleSize,
+                visible);
+
+        if(visibleKeys.length < visible.size()) {
+            visibleKeys = new long[visible.size() * 2];
+        }
+
+        // Sort into z order with the id in the low bits, then drop
+        // the pieces that were in more than one cell. Every piece
+        // has a different z.
+        PieceStore store = board.getStore();
+        for(int i=0; i<visible.size(); i++) {
+            int id = visible.get(i).getId();
+            visibleKeys[i] = ((long)store.getZ(id) << 32) | id;
+        }
+        Arrays.sort(visibleKeys, 0, visible.size());
+
+        int count = 0;
+        for(int i=0; i<visible.size(); i++) {
+            PuzzlePiece piece = board.getPiece((int)visibleKeys[i]);
+            if((i > 0 && visibleKeys[i] == visibleKeys[i - 1]) || settled.contains(piece)) {
+                continue;
+            }
+
+            piece.getBounds(bounds, marginX, marginY, puzzleSize, scaleFactor);
+            if(Rect.intersects(bounds, clip)) {
+                drawIds[count++] = piece.getId();
+            }
+        }
+
+        return count;
+    }
+
     /**
-     * How much we scale the puzzle pieces
+     * Find the loose pieces that overlap the clip rectangle by
+     * checking every one of them. This is used while a cluster is
+     * dragged, since the grid does not know where its pieces are
+     * until it is dropped.
+     * @return Number of pieces put in drawIds, bottom to top
      */
-    private float scaleFactor;
+    private int scanVisible() {
+        PieceStore store = board.getStore();
+        int count = 0;
+        for(int id=settled.firstAbove(store); id!=PieceStore.NONE; id=store.above(id)) {
+            board.getPiece(id).getBounds(bounds, marginX, marginY, puzzleSize, scaleFactor);
+            if(Rect.intersects(bounds, clip)) {
+                drawIds[count++] = id;
+            }
+        }
+
+        return count;
+    }
 
     /**
-     * Left margin in pixels
+     * Choose how the pieces are drawn
+     * @param atlasMode true to draw all of the pieces from a texture
+     *                  atlas, false to draw each piece on its own
      */
-    private int marginX;
+    public synchronized void setAtlasMode(boolean atlasMode) {
+        this.atlasMode = atlasMode;
+        if(!atlasMode) {
+            recycleMipmaps();
+        }
+    }
 
     /**
-     * Top margin in pixels
+     * Choose whether the loose pieces are drawn from render nodes
+     * when the device can. When it can not, or when the puzzle is
+     * zoomed in, they are drawn the way setAtlasMode() chooses.
+     * @param nodeMode true to draw from a render node for each piece
      */
-    private int marginY;
+    public synchronized void setNodeMode(boolean nodeMode) {
+        this.nodeMode = nodeMode;
+        if(!nodeMode) {
+            releaseNodes();
+        }
+    }
 
     /**
-     * This variable is set to a piece we are dragging. If
-     * we are not dragging, the variable is null.
+     * Free the render nodes of the pieces
      */
-    private PuzzlePiece dragging = null;
+    private void releaseNodes() {
+        if(nodes != null) {
+            nodes.release();
+            nodes = null;
+        }
+    }
 
     /**
-     * Most recent relative X touch when dragging
+     * Choose how the pieces are placed when they are shuffled
+     * @param spread true to spread the pieces out so they do not sit
+     *               on each other, false to drop them anywhere
      */
-    private float lastRelX;
+    public synchronized void setSpread(boolean spread) {
+        this.spread = spread;
+    }
 
     /**
-     * Most recent relative Y touch when dragging
+     * Show or hide the debug overlay with the frame stats
+     * @param show true to show the overlay
      */
-    private float lastRelY;
+    public synchronized void setStatsOverlay(boolean show) {
+        overlay = show ? new StatsOverlay() : null;
+    }
 
     /**
-     * Random number generator
+     * Is the debug overlay shown?
+     * @return true if the overlay is shown
      */
-    private static Random random = new Random();
+    public synchronized boolean isStatsOverlay() {
+        return overlay != null;
+    }
 
     /**
-     * The name of the bundle keys to save the puzzle
+     * Write the frame stats to a file, replacing anything in it
+     * @param file The file
+     * @throws IOException If the file could not be written
      */
-    private final static String LOCATIONS = "Puzzle.locations";
-    private final static String IDS = "Puzzle.ids";
+    public void dumpStats(File file) throws IOException {
+        TiledImage image;
+        synchronized(this) {
+            image = puzzleComplete;
+        }
 
-    PuzzleView puzzleView;
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            stats.write(out);
+            if(image != null) {
+                out.println("tile cache hits, " + image.getHitCount());
+                out.println("tile cache misses, " + image.getMissCount());
+            }
+        } finally {
+            out.close();
+        }
 
-    public Puzzle(Context context, PuzzleView view) {
+        if(out.checkError()) {
+            throw new IOException("Unable to write " + file);
+        }
+    }
 
-        // Create paint for filling the area the puzzle will
-        // be solved in.
-        fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        fillPaint.setColor(0xffcccccc);
+    /**
+     * Free the bitmaps used by the puzzle. The puzzle must
+     * not be drawn after this.
+     */
+    public synchronized void release() {
+        recycleMipmaps();
+        releaseNodes();
 
-        puzzleView = view;
+        settled.recycle();
+        if(puzzleComplete != null) {
+            puzzleComplete.release();
+        }
 
-        // Load the solved puzzle image
-        puzzleComplete = BitmapFactory.decodeResource(context.getResources(), R.drawable.grubby_done);
+        if(session != null) {
+            session.close();
+            session = null;
+        }
 
-        // Load the puzzle pieces
-        pieces.add(new PuzzlePiece(context, R.drawable.grubby1, 0.264f, 0.175f));
-        pieces.add(new PuzzlePiece(context, R.drawable.grubby2, 0.701f, 0.239f));
-        pieces.add(new PuzzlePiece(context, R.drawable.grubby3, 0.751f, 0.522f));
-        pieces.add(new PuzzlePiece(context, R.drawable.grubby4, 0.335f, 0.477f));
-        pieces.add(new PuzzlePiece(context, R.drawable.grubby5, 0.662f, 0.792f));
-        pieces.add(new PuzzlePiece(context, R.drawable.grubby6, 0.254f, 0.818f));
+        if(journalStore != null) {
+            journalStore.close();
+            journalStore = null;
+        }
 
-        shuffle();
+        dragFrame.cancel();
+        solver.reset();
+        released = true;
     }
 
-    public void draw(Canvas canvas) {
-
-        int wid = canvas.getWidth();
-        int hit = canvas.getHeight();
-
-        // Determine the minimum of the two dimensions
-        int minDim = Math.min(wid, hit);
-
-        puzzleSize = (int)(minDim * SCALE_IN_VIEW);
-
-        // Compute the margins so we center the puzzle
-        marginX = (wid - puzzleSize) / 2;
-        marginY = (hit - puzzleSize) / 2;
+    /**
+     * Handle a touch event from the view. Every finger in the
+     * event is passed on to onTouch() on its own. A move passes on
+     * the samples batched into the event as well, oldest first.
+     * @param view The view that is the source of the touch
+     * @param event The motion event describing the touch
+     * @return true if the touch is handled.
+     */
+    public boolean onTouchEvent(View view, MotionEvent event) {
+        int action = event.getActionMasked();
+        long time = event.getEventTime() * 1000000L;
+        switch(action) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP:
+                int index = event.getActionIndex();
+                onTouch(view, action, event.getPointerId(index), event.getX(index), event.getY(index), time);
+                break;
 
-        //
-        // Draw the outline of the puzzle
-        //
+            case MotionEvent.ACTION_MOVE:
+                for(int i=0; i<event.getPointerCount(); i++) {
+                    int pointerId = event.getPointerId(i);
+                    for(int h=0; h<event.getHistorySize(); h++) {
+                        onTouch(view, action, pointerId, event.getHistoricalX(i, h),
+                                event.getHistoricalY(i, h), event.getHistoricalEventTime(h) * 1000000L);
+                    }
+                    onTouch(view, action, pointerId, event.getX(i), event.getY(i), time);
+                }
+                break;
 
-        canvas.drawRect(marginX, marginY, marginX + puzzleSize, marginY + puzzleSize, fillPaint);
+            case MotionEvent.ACTION_CANCEL:
+                onTouch(view, action, 0, 0, 0, time);
+                break;
+        }
 
-        scaleFactor = (float)puzzleSize / (float)puzzleComplete.getWidth();
+        // Keep getting the gesture even if the first finger missed,
+        // since a later finger may land on a piece.
+        return isTouchable();
+    }
 
-        canvas.save();
-        canvas.translate(marginX, marginY);
-        canvas.scale(scaleFactor, scaleFactor);
-        //canvas.drawBitmap(puzzleComplete, 0, 0, null);
-        canvas.restore();
+    /**
+     * Can the puzzle be touched yet?
+     * @return true once the puzzle image is loaded
+     */
+    public synchronized boolean isTouchable() {
+        return puzzleComplete != null;
+    }
 
-        for(PuzzlePiece piece : pieces) {
-            piece.draw(canvas, marginX, marginY, puzzleSize, scaleFactor);
+    /**
+     * Handle one finger of a touch that has been taken out of its
+     * MotionEvent. Moves are only recorded here; the pieces are
+     * moved once per frame by applyDrags().
+     * @param view The view that is the source of the touch
+     * @param action The action from MotionEvent.getActionMasked()
+     * @param pointerId The pointer id of the finger
+     * @param x X location of the touch in view pixels
+     * @param y Y location of the touch in view pixels
+     * @param time Time of the touch in nanoseconds, on the
+     *             uptime clock like MotionEvent.getEventTime()
+     * @return true if the touch is handled.
+     */
+    public synchronized boolean onTouch(View view, int action, int pointerId, float x, float y, long time) {
+        boolean handled = handleTouch(view, action, pointerId, x, y, time);
+        if(handled && touchTime == 0) {
+            touchTime = time;
         }
+
+        return handled;
     }
 
     /**
-     * Handle a touch event from the view.
+     * Handle one finger of a touch for onTouch()
      * @param view The view that is the source of the touch
-     * @param event The motion event describing the touch
+     * @param action The action from MotionEvent.getActionMasked()
+     * @param pointerId The pointer id of the finger
+     * @param x X location of the touch in view pixels
+     * @param y Y location of the touch in view pixels
+     * @param time Time of the touch in nanoseconds
      * @return true if the touch is handled.
      */
-    public boolean onTouchEvent(View view, MotionEvent event) {
+    private boolean handleTouch(View view, int action, int pointerId, float x, float y, long time) {
         //
         // Convert an x,y location to a relative location in the
         // puzzle.
         //
-        float relX = (event.getX() - marginX) / puzzleSize;
-        float relY = (event.getY() - marginY) / puzzleSize;
+        if(puzzleComplete == null) {
+            // Nothing to touch until the image is loaded
+            return false;
+        }
+
+        float relX = (x - marginX) / puzzleSize;
+        float relY = (y - marginY) / puzzleSize;
 
-        switch(event.getActionMasked()) {
+        switch(action) {
 
             case MotionEvent.ACTION_DOWN:
-                return onTouched(relX, relY);
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if(onTouched(pointerId, relX, relY, time)) {
+                    return true;
+                }
+
+                // A finger that misses the pieces moves the camera
+                return camera.down(pointerId, x, y);
 
             case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP:
+                int upSlot = slotOf(pointerId);
+                if(upSlot < 0) {
+                    return camera.up(pointerId);
+                }
+
+                // Drop the piece where the finger actually left
+                dirty.setEmpty();
+                moveTo(upSlot, relX, relY);
+                view.invalidate(dirty);
+                return onReleased(view, upSlot);
+
             case MotionEvent.ACTION_CANCEL:
-                return onReleased(view, relX, relY);
+                // Every finger is gone, so drop everything
+                camera.cancel();
+                boolean handled = false;
+                for(int slot=0; slot<MAX_POINTERS; slot++) {
+                    handled |= onReleased(view, slot);
+                }
+                return handled;
 
             case MotionEvent.ACTION_MOVE:
-                // If we are dragging, move the piece
-                if(dragging != null) {
+                // If this finger is dragging, keep the sample
+                // for the next frame
+                int slot = slotOf(pointerId);
+                if(slot >= 0) {
+                    resampler.add(slot, time, relX, relY);
+                    dragFrame.request();
+                    return true;
+                }
 
-                    //TODO move to the new location and force a redraw
-                    float deltaX = relX - lastRelX;
-                    float deltaY = relY - lastRelY;
-                    dragging.move(deltaX, deltaY);
+                if(camera.move(pointerId, x, y)) {
+                    applyCamera();
                     view.invalidate();
-
-                    lastRelX = relX;
-                    lastRelY = relY;
                     return true;
                 }
                 break;
@@ -190,70 +1142,260 @@ public class Puzzle {
     }
 
     /**
-     * Handle a touch message. This is when we get an initial touch
+     * Choose where the drags are applied. A view with its own render
+     * thread has it apply them with applyDrags() just before it draws,
+     * so a busy UI thread does not hold them up.
+     * @param renderThread true if the render thread of the view applies
+     *                     the drags, false to use the UI thread
+     */
+    public synchronized void setRenderThreadDrags(boolean renderThread) {
+        dragFrame.setRenderThread(renderThread);
+    }
+
+    /**
+     * Move every dragged piece to where its finger is at the
+     * time of a frame, and redraw the area they cover. Does
+     * nothing if no drags have come in since the last frame.
+     * @param frameTime Time of the frame in nanoseconds
+     */
+    synchronized void applyDrags(long frameTime) {
+        if(released || !dragFrame.take()) {
+            return;
+        }
+
+        dirty.setEmpty();
+        boolean moved = false;
+        for(int slot=0; slot<MAX_POINTERS; slot++) {
+            if(dragging[slot] != null && resampler.hasSamples(slot)) {
+                resampler.sample(slot, frameTime);
+                moveTo(slot, resampler.getX(), resampler.getY());
+                moved = true;
+            }
+        }
+
+        // The render thread is about to draw anyway
+        if(moved && !dragFrame.isRenderThread()) {
+            puzzleView.invalidate(dirty);
+        }
+    }
+
+    /**
+     * Move the piece a finger is dragging so it follows the finger
+     * to a new location. The areas the piece moved from and to are
+     * added to the dirty rectangle.
+     * @param slot The slot of the finger
+     * @param relX New x location of the finger, relative to the puzzle
+     * @param relY New y location of the finger, relative to the puzzle
+     */
+    private void moveTo(int slot, float relX, float relY) {
+        PuzzlePiece piece = dragging[slot];
+
+        groupBounds(piece, bounds);
+        dirty.union(bounds);
+
+        board.move(piece, relX - lastRelX[slot], relY - lastRelY[slot]);
+
+        groupBounds(piece, bounds);
+        dirty.union(bounds);
+
+        lastRelX[slot] = relX;
+        lastRelY[slot] = relY;
+    }
+
+    /**
+     * Get the rectangle on the screen the cluster of a piece covers
+     * @param piece The piece
+     * @param rect Rectangle to set, rounded out to whole pixels
+     */
+    private void groupBounds(PuzzlePiece piece, Rect rect) {
+        board.getGroupBounds(piece, groupBox);
+        rect.set((int)Math.floor(marginX + groupBox[0] * puzzleSize),
+                (int)Math.floor(marginY + groupBox[1] * puzzleSize),
+                (int)Math.ceil(marginX + groupBox[2] * puzzleSize),
+                (int)Math.ceil(marginY + groupBox[3] * puzzleSize));
+    }
+
+    /**
+     * Find the slot of a finger that is dragging a piece
+     * @param pointerId The pointer id of the finger
+     * @return The slot, or -1 if the finger is not dragging anything
+     */
+    private int slotOf(int pointerId) {
+        for(int slot=0; slot<MAX_POINTERS; slot++) {
+            if(dragging[slot] != null && pointerIds[slot] == pointerId) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Let go of every piece without dropping it. Used when all of
+     * the pieces are moved at once.
+     */
+    private void clearDragging() {
+        for(int slot=0; slot<MAX_POINTERS; slot++) {
+            dragging[slot] = null;
+        }
+
+        // Stop moving pieces home and score every piece again
+        solver.reset();
+    }
+
+    /**
+     * Handle a touch message. This is when a finger first touches
+     * @param pointerId The pointer id of the finger
      * @param x x location for the touch, relative to the puzzle - 0 to 1 over the puzzle
      * @param y y location for the touch, relative to the puzzle - 0 to 1 over the puzzle
+     * @param time Time of the touch in nanoseconds
      * @return true if the touch is handled
      */
-    private boolean onTouched(float x, float y) {
+    private boolean onTouched(int pointerId, float x, float y, long time) {
+        // Find a free slot for this finger
+        int slot = slotOf(pointerId);
+        for(int i=0; i<MAX_POINTERS && slot < 0; i++) {
+            if(dragging[i] == null) {
+                slot = i;
+            }
+        }
 
-        // Check each piece to see if it has been hit
-        // We do this in reverse order so we find the pieces in front
-        for(int p=pieces.size()-1; p>=0;  p--) {
-            if(pieces.get(p).hit(x, y, puzzleSize, scaleFactor)) {
-                // We hit a piece!
-                dragging = pieces.get(p);
-                lastRelX = x;
-                lastRelY = y;
+        if(slot < 0) {
+            // More fingers than we keep track of
+            return false;
+        }
 
-                pieces.remove(p);
-                pieces.add(dragging);
-                return true;
-            }
+        PuzzlePiece front = board.pieceAt(x, y, puzzleSize, scaleFactor);
+        if(front == null || board.isHeld(front)) {
+            return false;
         }
 
-        return false;
+        // We hit a piece!
+        dragging[slot] = front;
+        pointerIds[slot] = pointerId;
+        lastRelX[slot] = x;
+        lastRelY[slot] = y;
+        resampler.reset(slot);
+        resampler.add(slot, time, x, y);
+
+        startX[slot] = front.getX();
+        startY[slot] = front.getY();
+        startSnapped[slot] = board.pickUp(front);
+        solver.moved(front.getId());
+
+        // Touching the puzzle stops solving after the pieces
+        // already on their way home get there
+        solver.stop();
+
+        // Picking up snapped pieces takes them out of the settled layer
+        if(startSnapped[slot]) {
+            settled.invalidate();
+            notifyProgress();
+        }
+        return true;
     }
 
     /**
-     * Handle a release of a touch message.
-     * @param x x location for the touch release, relative to the puzzle - 0 to 1 over the puzzle
-     * @param y y location for the touch release, relative to the puzzle - 0 to 1 over the puzzle
+     * Handle a finger being lifted
+     * @param view The view that is the source of the touch
+     * @param slot The slot of the finger, or -1 if it was not dragging
      * @return true if the touch is handled
      */
-    private boolean onReleased(View view, float x, float y) {
+    private boolean onReleased(View view, int slot) {
 
-        if(dragging != null) {
-            if(dragging.maybeSnap()) {
-                pieces.remove(dragging);
-                pieces.add(0, dragging);
-                view.invalidate();
+        if(slot >= 0 && dragging[slot] != null) {
+            PuzzlePiece piece = dragging[slot];
+            dragging[slot] = null;
 
-                if(isDone()) {
-                    // The puzzle is done
-                    // Instantiate a dialog box builder
-                    AlertDialog.Builder builder = new AlertDialog.Builder(view.getContext());
+            boolean snapped = drop(piece, startX[slot], startY[slot], startSnapped[slot]);
+            view.invalidate();
 
-                    ShuffleListener listener = new ShuffleListener();
+            if(snapped) {
+                snapped(view);
+            }
+            return true;
+        }
 
-                    // Parameterize the builder
-                    builder.setTitle(R.string.hurrah);
-                    builder.setMessage(R.string.completed_puzzle);
-                    builder.setPositiveButton(android.R.string.ok, null);
-                    builder.setNegativeButton(R.string.shuffle, listener);
+        return false;
+    }
 
-                    // Create the dialog box and show it
-                    AlertDialog alertDialog = builder.create();
-                    alertDialog.show();
-                }
+    /**
+     * Drop a piece that was picked up and record the move. The
+     * piece may snap into place or join others, which moves
+     * every piece in its cluster.
+     * @param piece The piece
+     * @param fromX X location the piece was picked up at
+     * @param fromY Y location the piece was picked up at
+     * @param wasSnapped Was the piece snapped into place when picked up?
+     * @return true if the piece snapped into place
+     */
+    boolean drop(PuzzlePiece piece, float fromX, float fromY, boolean wasSnapped) {
+        boolean snapped = board.drop(piece);
+        if(snapped != wasSnapped || piece.getX() != fromX || piece.getY() != fromY ||
+                board.getJoinsLength() > 0) {
+            journal.record(board, piece, fromX, fromY, wasSnapped);
+        }
+        solver.moved(piece.getId());
+
+        board.getGroup(piece, group);
+        if(snapped) {
+            for(int i=0; i<group.size(); i++) {
+                settled.add(group.get(i), layerSize, layerScale);
             }
-            dragging = null;
+        }
+        saveGroup();
+
+        return snapped;
+    }
+
+    /**
+     * Tell the progress listener after pieces snapped into place,
+     * and tell the user if that finished the puzzle
+     * @param view The view the puzzle is displayed in
+     * @return true if the puzzle is done
+     */
+    boolean snapped(View view) {
+        notifyProgress();
+
+        if(isDone()) {
+            // The puzzle is done. We may be on a render
+            // thread, so show the dialog on the UI thread.
+            view.post(new CompletedDialog(view));
             return true;
         }
 
         return false;
     }
 
+    /**
+     * Shows the dialog box telling the user the puzzle is complete
+     */
+    private class CompletedDialog implements Runnable {
+        private final View view;
+
+        CompletedDialog(View view) {
+            this.view = view;
+        }
+
+        @Override
+        public void run() {
+            // Instantiate a dialog box builder
+            AlertDialog.Builder builder = new AlertDialog.Builder(view.getContext());
+
+            ShuffleListener listener = new ShuffleListener();
+
+            // Parameterize the builder
+            builder.setTitle(R.string.hurrah);
+            builder.setMessage(R.string.completed_puzzle);
+            builder.setPositiveButton(android.R.string.ok, null);
+            builder.setNegativeButton(R.string.shuffle, listener);
+
+            // Create the dialog box and show it
+            AlertDialog alertDialog = builder.create();
+            alertDialog.show();
+        }
+    }
+
     private class ShuffleListener implements DialogInterface.OnClickListener {
 
         @Override
@@ -267,73 +1409,236 @@ public class Puzzle {
      * Determine if the puzzle is done!
      * @return true if puzzle is done
      */
-    public boolean isDone() {
-        for(PuzzlePiece piece : pieces) {
-            if(!piece.isSnapped()) {
-                return false;
+    public synchronized boolean isDone() {
+        return isLoaded() && board.isSolved();
+    }
+
+    /**
+     * How far along is the puzzle?
+     * @return Percent of the pieces snapped into place, 0 to 100
+     */
+    public synchronized int getProgress() {
+        return board != null && expected > 0 ? board.getSnappedCount() * 100 / expected : 0;
+    }
+
+    /**
+     * Set the listener told when pieces snap into place
+     * @param listener The listener, or null for none
+     */
+    public synchronized void setProgressListener(ProgressListener listener) {
+        progressListener = listener;
+    }
+
+    /**
+     * Tell the progress listener the current progress. We may
+     * be on the render thread, so the listener is called on
+     * the UI thread.
+     */
+    private void notifyProgress() {
+        final ProgressListener listener = progressListener;
+        if(listener == null) {
+            return;
+        }
+
+        final int percent = getProgress();
+        puzzleView.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onProgress(Puzzle.this, percent);
             }
+        });
+    }
+
+    /**
+     * Shuffle the puzzle pieces into a new random layout
+     */
+    public synchronized void shuffle() {
+        shuffle(random.nextLong());
+    }
+
+    /**
+     * Shuffle the puzzle pieces. The same seed always gives the
+     * same layout for a puzzle of the same size.
+     * @param seed Seed for the layout
+     */
+    public synchronized void shuffle(long seed) {
+        if(board == null) {
+            // Nothing to shuffle yet
+            return;
+        }
+
+        clearDragging();
+        journal.clear();
+        board.shuffle(shuffler, seed, spread);
+        settled.invalidate();
+        notifyProgress();
+        if(session != null) {
+            session.writeAll(board.getPieces());
+            journal.checkpoint();
+        }
+    }
+
+    /**
+     * Undo the last move
+     * @return true if a move was undone, false if there is
+     *         nothing to undo or a piece is being dragged
+     */
+    public synchronized boolean undo() {
+        if(board == null || isDragging() || !journal.canUndo()) {
+            return false;
+        }
+
+        // The cluster may be split back into the clusters the move
+        // joined, so every piece in it may move
+        board.getGroup(board.getPiece(journal.getUndoId()), group);
+        for(int i=0; i<group.size(); i++) {
+            solver.movedPiece(group.get(i).getId());
+        }
+
+        int snapped = board.getSnappedCount();
+        journal.undo(board);
+        moved(snapped);
+        return true;
+    }
+
+    /**
+     * Make the last undone move again
+     * @return true if a move was made, false if there is
+     *         nothing to redo or a piece is being dragged
+     */
+    public synchronized boolean redo() {
+        if(board == null || isDragging() || !journal.canRedo()) {
+            return false;
         }
 
+        int id = journal.getRedoId();
+        solver.moved(id);
+
+        int snapped = board.getSnappedCount();
+        journal.redo(board);
+
+        // The move may have joined other clusters to this one
+        board.getGroup(board.getPiece(id), group);
+        moved(snapped);
         return true;
     }
 
     /**
-     * Shuffle the puzzle pieces
+     * Bring everything up to date after an undo or redo moved the
+     * pieces in the group list
+     * @param snapped Number of pieces snapped into place before the move
+     */
+    private void moved(int snapped) {
+        for(int i=0; i<group.size(); i++) {
+            solver.movedPiece(group.get(i).getId());
+        }
+        saveGroup();
+
+        // The settled layer only changes if pieces snapped or came loose
+        if(board.getSnappedCount() != snapped) {
+            settled.invalidate();
+            notifyProgress();
+        }
+
+        puzzleView.postInvalidate();
+    }
+
+    /**
+     * Keep the session up to date after the pieces in the group list
+     * moved. With a journal store the move is already kept there, so
+     * the session is only written in full when the journal can no
+     * longer bring it up to date. Without one only the slots of the
+     * pieces that moved are written.
+     */
+    private void saveGroup() {
+        // The session is written in full once every piece is loaded
+        if(session == null || !isLoaded()) {
+            return;
+        }
+
+        if(journalStore == null) {
+            for(int i=0; i<group.size(); i++) {
+                session.write(group.get(i));
+            }
+        } else if(journal.needsCheckpoint()) {
+            session.writeAll(board.getPieces());
+            journal.checkpoint();
+        }
+    }
+
+    /**
+     * Is any finger dragging a piece, or are pieces being moved home?
+     * @return true if a piece is being dragged
      */
-    public void shuffle() {
-        for(PuzzlePiece piece : pieces) {
-            piece.shuffle(random);
+    private boolean isDragging() {
+        for(int slot=0; slot<MAX_POINTERS; slot++) {
+            if(dragging[slot] != null) {
+                return true;
+            }
         }
+
+        return solver.isMoving();
+    }
+
+    /**
+     * Move the easiest loose piece home
+     */
+    public synchronized void hint() {
+        solver.hint();
+    }
+
+    /**
+     * Move pieces home a batch at a time until the puzzle is
+     * solved or the puzzle is touched
+     */
+    public synchronized void autoSolve() {
+        solver.solve();
     }
 
     /**
      * Save the puzzle to a bundle
      * @param bundle The bundle we save to
      */
-    public void saveInstanceState(Bundle bundle) {
-        float [] locations = new float[pieces.size() * 2];
-        int [] ids = new int[pieces.size()];
-
-        for(int i=0;  i<pieces.size(); i++) {
-            PuzzlePiece piece = pieces.get(i);
-            locations[i*2] = piece.getX();
-            locations[i*2+1] = piece.getY();
-            ids[i] = piece.getId();
+    public synchronized void saveInstanceState(Bundle bundle) {
+        if(!isLoaded()) {
+            // Keep any state we have not been able to restore yet
+            if(pendingState != null) {
+                bundle.putByteArray(STATE, pendingState.getByteArray(STATE));
+            }
+            return;
         }
 
-        bundle.putFloatArray(LOCATIONS, locations);
-        bundle.putIntArray(IDS,  ids);
+        ArrayList<PuzzlePiece> ordered = new ArrayList<>(board.getCount());
+        board.getOrdered(ordered);
+        bundle.putByteArray(STATE, PuzzleSnapshot.save(ordered));
     }
 
     /**
      * Read the puzzle from a bundle
      * @param bundle The bundle we save to
      */
-    public void loadInstanceState(Bundle bundle) {
-        float [] locations = bundle.getFloatArray(LOCATIONS);
-        int [] ids = bundle.getIntArray(IDS);
-
-        for(int i=0; i<ids.length-1; i++) {
-
-            // Find the corresponding piece
-            // We don't have to test if the piece is at i already,
-            // since the loop below will fall out without it moving anything
-            for(int j=i+1;  j<ids.length;  j++) {
-                if(ids[i] == pieces.get(j).getId()) {
-                    // We found it
-                    // Yay...
-                    // Swap the pieces
-                    PuzzlePiece t = pieces.get(i);
-                    pieces.set(i, pieces.get(j));
-                    pieces.set(j, t);
-                }
-            }
+    public synchronized void loadInstanceState(Bundle bundle) {
+        if(!isLoaded()) {
+            // Restore it once all of the pieces are here
+            pendingState = bundle;
+            return;
+        }
+
+        // Clusters are made again from where the pieces end up
+        clearDragging();
+        board.ungroup();
+        if(!PuzzleSnapshot.restore(bundle.getByteArray(STATE), board.getPieces())) {
+            board.restored();
+            return;
         }
 
-        for(int i=0;  i<pieces.size(); i++) {
-            PuzzlePiece piece = pieces.get(i);
-            piece.setX(locations[i*2]);
-            piece.setY(locations[i*2+1]);
+        board.restored();
+        journal.clear();
+        settled.invalidate();
+        notifyProgress();
+        if(session != null) {
+            session.writeAll(board.getPieces());
+            journal.checkpoint();
         }
     }
 }
@@ -5,23 +5,36 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import android.annotation.SuppressLint;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
 
 public class PuzzleActivity extends AppCompatActivity {
 
+    private final static String TAG = "PuzzleActivity";
+
     /**
-     * The puzzle view in this activity's view
+     * Name of the file the frame stats are saved in
      */
-    private PuzzleView puzzleView;
+    private final static String STATS_FILE = "puzzle_stats.csv";
+
+    /**
+     * The puzzle view in this activity's view. This can be
+     * a PuzzleView or a PuzzleSurfaceView.
+     */
+    private PuzzleHost puzzleView;
 
     @Override
     protected void onCreate(Bundle bundle) {
         super.onCreate(bundle);
         setContentView(R.layout.activity_puzzle);
 
-        puzzleView = (PuzzleView)this.findViewById(R.id.puzzleView);
+        puzzleView = (PuzzleHost)this.findViewById(R.id.puzzleView);
 
         if(bundle != null) {
             // We have saved state
@@ -36,23 +49,73 @@ public class PuzzleActivity extends AppCompatActivity {
         puzzleView.saveInstanceState(bundle);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        puzzleView.getPuzzle().release();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater = getMenuInflater();
         inflater.inflate(R.menu.menu_puzzle, menu);
+        menu.findItem(R.id.menu_stats).setChecked(puzzleView.getPuzzle().isStatsOverlay());
         return true;
 
     }
 
+    /**
+     * Save the frame stats to a file the developer can pull off of
+     * the device, in the app's external files directory if there is one
+     */
+    private void saveStats() {
+        File dir = getExternalFilesDir(null);
+        File file = new File(dir != null ? dir : getFilesDir(), STATS_FILE);
+        try {
+            puzzleView.getPuzzle().dumpStats(file);
+            Toast.makeText(this, getString(R.string.stats_saved, file.getPath()), Toast.LENGTH_LONG).show();
+        } catch(IOException e) {
+            Log.e(TAG, "Unable to save the stats", e);
+            Toast.makeText(this, R.string.stats_not_saved, Toast.LENGTH_LONG).show();
+        }
+    }
+
     @SuppressLint("NonConstantResourceId")
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
+            case R.id.menu_undo:
+                puzzleView.getPuzzle().undo();
+                return true;
+
+            case R.id.menu_redo:
+                puzzleView.getPuzzle().redo();
+                return true;
+
+            case R.id.menu_hint:
+                puzzleView.getPuzzle().hint();
+                return true;
+
+            case R.id.menu_solve:
+                puzzleView.getPuzzle().autoSolve();
+                return true;
+
             case R.id.menu_shuffle:
                 puzzleView.getPuzzle().shuffle();
                 puzzleView.invalidate();
                 return true;
 
+            case R.id.menu_stats:
+                item.setChecked(!item.isChecked());
+                puzzleView.getPuzzle().setStatsOverlay(item.isChecked());
+                puzzleView.invalidate();
+                return true;
+
+            case R.id.menu_save_stats:
+                saveStats();
+                return true;
+
             default:
                 return super.onOptionsItemSelected(item);
         }
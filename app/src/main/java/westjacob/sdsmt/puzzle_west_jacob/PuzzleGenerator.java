@@ -0,0 +1,244 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import android.graphics.Path;
+import android.graphics.Rect;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Cuts a source image into a grid of jigsaw shaped pieces.
+ *
+ * Every piece shares the one source image. A piece is described by
+ * the rectangle of the source it covers, including room for the tabs,
+ * and an outline path that is used to clip it when drawn.
+ */
+public class PuzzleGenerator {
+    /**
+     * How far a tab sticks out, as a fraction of the edge it is on
+     */
+    final static float TAB_SIZE = 0.2f;
+
+    /**
+     * How close a piece must be to its final location to snap into
+     * place, as a fraction of the size of a grid cell.
+     */
+    final static float SNAP_FRACTION = 0.4f;
+
+    /**
+     * The tab shape for an edge running from (0, 0) to (1, 0),
+     * sticking out toward positive y. Each row is a cubic segment:
+     * two control points and an end point.
+     */
+    private final static float [][] TAB_SHAPE = {
+            {0.35f, 0.00f, 0.35f, 0.00f, 0.35f, 0.00f},
+            {0.45f, 0.02f, 0.32f, 0.20f, 0.50f, 0.20f},
+            {0.68f, 0.20f, 0.55f, 0.02f, 0.65f, 0.00f},
+            {0.65f, 0.00f, 1.00f, 0.00f, 1.00f, 0.00f}
+    };
+
+    /**
+     * The image the pieces are cut from
+     */
+    private final TiledImage source;
+
+    /**
+     * Number of columns of pieces
+     */
+    private final int columns;
+
+    /**
+     * Number of rows of pieces
+     */
+    private final int rows;
+
+    /**
+     * Pixel location of each vertical grid line
+     */
+    private final int [] xs;
+
+    /**
+     * Pixel location of each horizontal grid line
+     */
+    private final int [] ys;
+
+    /**
+     * Tab directions for the inside edges. A value of 1 means the
+     * tab sticks out to the right or down, -1 means left or up.
+     */
+    private final int [][] vertical;
+    private final int [][] horizontal;
+
+    /**
+     * Room left around each cell for the tabs, in pixels
+     */
+    private final int margin;
+
+    /**
+     * How close a piece must be to snap into place
+     */
+    private final float snapDistance;
+
+    /**
+     * Constructor. This lays out the grid and picks the tab
+     * directions, so every row cut afterwards fits together.
+     * @param source The image the pieces are cut from
+     * @param columns Number of columns of pieces
+     * @param rows Number of rows of pieces
+     * @param random Random number generator used to pick the tab directions
+     */
+    public PuzzleGenerator(TiledImage source, int columns, int rows, Random random) {
+        if(columns < 1 || rows < 1) {
+            throw new IllegalArgumentException("A puzzle needs at least one row and column");
+        }
+
+        this.source = source;
+        this.columns = columns;
+        this.rows = rows;
+
+        int wid = source.getWidth();
+        int hit = source.getHeight();
+
+        xs = new int[columns + 1];
+        for(int c=0; c<=columns; c++) {
+            xs[c] = Math.round((float)c * wid / columns);
+        }
+
+        ys = new int[rows + 1];
+        for(int r=0; r<=rows; r++) {
+            ys[r] = Math.round((float)r * hit / rows);
+        }
+
+        vertical = new int[rows][columns];
+        horizontal = new int[rows][columns];
+        for(int r=0; r<rows; r++) {
+            for(int c=0; c<columns; c++) {
+                vertical[r][c] = random.nextBoolean() ? 1 : -1;
+                horizontal[r][c] = random.nextBoolean() ? 1 : -1;
+            }
+        }
+
+        // Leave enough room around each cell for a tab
+        float cellWid = (float)wid / columns;
+        float cellHit = (float)hit / rows;
+        margin = (int)Math.ceil(TAB_SIZE * Math.max(cellWid, cellHit)) + 1;
+
+        // Everything is relative to the width of the image,
+        // just like the locations of the pieces.
+        snapDistance = Math.min(PieceModel.SNAP_DISTANCE,
+                SNAP_FRACTION * Math.min(cellWid, cellHit) / wid);
+    }
+
+    /**
+     * Cut the source image into pieces
+     * @return The pieces, in row major order. The id of each
+     * piece is its index in the list.
+     */
+    public ArrayList<PuzzlePiece> generate() {
+        ArrayList<PuzzlePiece> pieces = new ArrayList<>(rows * columns);
+        for(int r=0; r<rows; r++) {
+            pieces.addAll(generateRow(r));
+        }
+
+        return pieces;
+    }
+
+    /**
+     * Cut one row of pieces out of the source image. Rows do not
+     * depend on each other, so they can be cut on different threads.
+     * @param r The row to cut
+     * @return The pieces in the row, left to right. The id of
+     * each piece is r * columns + its column.
+     */
+    public ArrayList<PuzzlePiece> generateRow(int r) {
+        int wid = source.getWidth();
+
+        ArrayList<PuzzlePiece> pieces = new ArrayList<>(columns);
+        for(int c=0; c<columns; c++) {
+            int top = r > 0 ? -vertical[r-1][c] : 0;
+            int right = c < columns - 1 ? horizontal[r][c] : 0;
+            int bottom = r < rows - 1 ? vertical[r][c] : 0;
+            int left = c > 0 ? -horizontal[r][c-1] : 0;
+
+            Rect box = new Rect(xs[c] - margin, ys[r] - margin,
+                    xs[c+1] + margin, ys[r+1] + margin);
+
+            Path outline = new Path();
+            float x0 = margin;
+            float y0 = margin;
+            float x1 = margin + xs[c+1] - xs[c];
+            float y1 = margin + ys[r+1] - ys[r];
+            outline.moveTo(x0, y0);
+            edge(outline, x0, y0, x1, y0, top);
+            edge(outline, x1, y0, x1, y1, right);
+            edge(outline, x1, y1, x0, y1, bottom);
+            edge(outline, x0, y1, x0, y0, left);
+            outline.close();
+
+            float finalX = (xs[c] + xs[c+1]) / 2f / wid;
+            float finalY = (ys[r] + ys[r+1]) / 2f / wid;
+
+            pieces.add(new PuzzlePiece(source, box, outline, r * columns + c,
+                    finalX, finalY, snapDistance));
+        }
+
+        return pieces;
+    }
+
+    /**
+     * The largest width or height of any piece, including its tabs
+     * @return Size in pixels
+     */
+    public int getMaxPieceSize() {
+        int size = 0;
+        for(int c=0; c<columns; c++) {
+            size = Math.max(size, xs[c+1] - xs[c]);
+        }
+        for(int r=0; r<rows; r++) {
+            size = Math.max(size, ys[r+1] - ys[r]);
+        }
+
+        return size + 2 * margin;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Add one edge of a piece to its outline. The outline goes
+     * clockwise, so the outside of the piece is to the left of
+     * the direction of travel.
+     * @param path Path to add to, currently at ax, ay
+     * @param ax Start x
+     * @param ay Start y
+     * @param bx End x
+     * @param by End y
+     * @param tab 1 for a tab sticking out, -1 for a tab sticking in, 0 for a flat edge
+     */
+    private static void edge(Path path, float ax, float ay, float bx, float by, int tab) {
+        if(tab == 0) {
+            path.lineTo(bx, by);
+            return;
+        }
+
+        // Along the edge
+        float dx = bx - ax;
+        float dy = by - ay;
+
+        // Out of the piece, the same length as the edge
+        float nx = dy * tab;
+        float ny = -dx * tab;
+
+        for(float [] seg : TAB_SHAPE) {
+            path.cubicTo(
+                    ax + seg[0] * dx + seg[1] * nx, ay + seg[0] * dy + seg[1] * ny,
+                    ax + seg[2] * dx + seg[3] * nx, ay + seg[2] * dy + seg[3] * ny,
+                    ax + seg[4] * dx + seg[5] * nx, ay + seg[4] * dy + seg[5] * ny);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import android.os.Bundle;
+
+/**
+ * A view that displays a puzzle. Lets the activity work with
+ * either PuzzleView or PuzzleSurfaceView.
+ */
+public interface PuzzleHost {
+    /**
+     * Save the puzzle to a bundle
+     * @param bundle The bundle we save to
+     */
+    void saveInstanceState(Bundle bundle);
+
+    /**
+     * Load the puzzle from a bundle
+     * @param bundle The bundle we save to
+     */
+    void loadInstanceState(Bundle bundle);
+
+    /**
+     * Get the puzzle in this view
+     * @return The puzzle
+     */
+    Puzzle getPuzzle();
+
+    /**
+     * Redraw the puzzle after it has changed
+     */
+    void invalidate();
+}
@@ -0,0 +1,160 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import android.content.res.Resources;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads a puzzle off of the UI thread.
+ *
+ * The puzzle image is opened first. Then each row of pieces is cut
+ * as a separate task, so the rows are made in parallel, and every row
+ * is handed to the puzzle as soon as it is ready.
+ */
+public class PuzzleLoader {
+    private final static String TAG = "PuzzleLoader";
+
+    /**
+     * Number of threads used to load puzzles. We leave one core
+     * for the UI thread.
+     */
+    final static int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    /**
+     * The executor shared by all puzzle loads
+     */
+    private static ExecutorService executor = null;
+
+    /**
+     * Start loading a puzzle
+     * @param puzzle The puzzle to load the pieces into
+     * @param res Resources to load the image from
+     * @param imageId Resource id of the puzzle image
+     * @param maxSize Largest size the puzzle is drawn at in pixels
+     * @param columns Number of columns of pieces
+     * @param rows Number of rows of pieces
+     * @param sessionFile File the puzzle in progress is kept in
+     * @param journalFile File the moves since the session was last written are kept in
+     * @param random Random number generator used to cut the pieces
+     */
+    public static void load(final Puzzle puzzle, final Resources res, final int imageId, final int maxSize,
+                            final int columns, final int rows, final File sessionFile, final File journalFile,
+                            final Random random) {
+        executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                // If we are continuing a session, the pieces have
+                // to be cut with the same seed as before.
+                long seed = random.nextLong();
+                SessionStore session = null;
+                try {
+                    session = new SessionStore(sessionFile, columns, rows, seed);
+                    seed = session.getSeed();
+                } catch(IOException e) {
+                    Log.w(TAG, "Unable to open the puzzle session", e);
+                }
+
+                // The moves only belong to the session with the same seed
+                JournalStore journal = null;
+                if(session != null) {
+                    try {
+                        journal = new JournalStore(journalFile, Puzzle.JOURNAL_SIZE, seed);
+                    } catch(IOException e) {
+                        Log.w(TAG, "Unable to open the puzzle journal", e);
+                    }
+                }
+
+                // Only the size of the image is read here. Its pixels
+                // are decoded a tile at a time when they are drawn.
+                TiledImage image;
+                try {
+                    image = TiledImage.open(res, imageId, maxSize);
+                } catch(IOException e) {
+                    Log.e(TAG, "Unable to open the puzzle image", e);
+                    if(session != null) {
+                        session.close();
+                    }
+                    if(journal != null) {
+                        journal.close();
+                    }
+                    return;
+                }
+
+                PuzzleGenerator generator = new PuzzleGenerator(image, columns, rows, new Random(seed));
+
+                if(!puzzle.setImage(image, generator.getMaxPieceSize(), columns, rows, session, journal)) {
+                    // The puzzle went away while we were opening it
+                    image.release();
+                    if(session != null) {
+                        session.close();
+                    }
+                    if(journal != null) {
+                        journal.close();
+                    }
+                    return;
+                }
+
+                for(int r=0; r<rows; r++) {
+                    executor().execute(new RowLoader(puzzle, generator, r));
+                }
+            }
+        });
+    }
+
+    /**
+     * Task that cuts one row of pieces and adds them to the puzzle
+     */
+    private static class RowLoader implements Runnable {
+        private final Puzzle puzzle;
+        private final PuzzleGenerator generator;
+        private final int row;
+
+        RowLoader(Puzzle puzzle, PuzzleGenerator generator, int row) {
+            this.puzzle = puzzle;
+            this.generator = generator;
+            this.row = row;
+        }
+
+        @Override
+        public void run() {
+            if(!puzzle.isReleased()) {
+                puzzle.addPieces(generator.generateRow(row));
+            }
+        }
+    }
+
+    /**
+     * Get the executor, creating it the first time. Its threads
+     * are also used to help shuffle big puzzles.
+     * @return The executor
+     */
+    static synchronized ExecutorService executor() {
+        if(executor == null) {
+            executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public synchronized Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "PuzzleLoader-" + count++);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return executor;
+    }
+}
@@ -1,77 +1,91 @@
 package westjacob.sdsmt.puzzle_west_jacob;
 
-import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-
-import java.util.Random;
-
-public class PuzzlePiece {
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+
+/**
+ * A puzzle piece that can be drawn. The location, shape and snapping
+ * of the piece are in PieceModel; this adds the part of the puzzle
+ * image the piece shows.
+ */
+public class PuzzlePiece extends PieceModel {
     /**
-     * The image for the actual piece.
+     * The image the piece is cut from. This is shared by
+     * all of the pieces in the puzzle.
      */
-    private Bitmap piece;
-
-    public float getX() {
-        return x;
-    }
-
-    public void setX(float x) {
-        this.x = x;
-    }
-
-    public float getY() {
-        return y;
-    }
-
-    public void setY(float y) {
-        this.y = y;
-    }
+    private TiledImage source;
 
     /**
-     * x location.
-     * We use relative x locations in the range 0-1 for the center
-     * of the puzzle piece.
+     * The part of the source image this piece covers, in source pixels.
+     * This includes room for the tabs, so it can run past the edges
+     * of the source image.
      */
-    private float x = 0;
+    private Rect box;
 
     /**
-     * y location
+     * Part of box that is actually inside the source image
      */
-    private float y = 0;
+    private Rect srcRect;
 
     /**
-     * x location when the puzzle is solved
+     * Where srcRect is drawn, relative to the top left of box
      */
-    private float finalX;
+    private Rect dstRect;
 
     /**
-     * y location when the puzzle is solved
+     * Outline of the piece, relative to the top left of box
      */
-    private float finalY;
+    private Path outline;
 
     /**
-     * We consider a piece to be in the right location if within
-     * this distance.
+     * Constructor
+     * @param source The image the piece is cut from
+     * @param box The part of the source image this piece covers, including its tabs
+     * @param outline Outline of the piece, relative to the top left of box
+     * @param id The puzzle piece ID
+     * @param finalX x location when the puzzle is solved
+     * @param finalY y location when the puzzle is solved
+     * @param snapDistance How close the piece must be to snap into place
      */
-    final static float SNAP_DISTANCE = 0.05f;
-
-    public int getId() {
-        return id;
+    public PuzzlePiece(TiledImage source, Rect box, Path outline, int id,
+                       float finalX, float finalY, float snapDistance) {
+        super(createMask(box.width(), box.height(), outline), id, finalX, finalY, snapDistance);
+        this.source = source;
+        this.box = box;
+        this.outline = outline;
+
+        srcRect = new Rect(Math.max(box.left, 0), Math.max(box.top, 0),
+                Math.min(box.right, source.getWidth()), Math.min(box.bottom, source.getHeight()));
+        dstRect = new Rect(srcRect.left - box.left, srcRect.top - box.top,
+                srcRect.right - box.left, srcRect.bottom - box.top);
     }
 
     /**
-     * The puzzle piece ID
+     * Build the hit mask for a piece by filling its outline into
+     * a temporary alpha only bitmap. This reads the pixels one row
+     * at a time so we only need a single row buffer.
+     * @param wid Width of the piece in pixels
+     * @param hit Height of the piece in pixels
+     * @param outline Outline of the piece
+     * @return Mask of the pixels inside the outline
      */
-    private int id;
-
-    public PuzzlePiece(Context context, int id, float finalX, float finalY) {
-        this.finalX = finalX;
-        this.finalY = finalY;
-        this.id = id;
+    private static HitMask createMask(int wid, int hit, Path outline) {
+        Bitmap bitmap = Bitmap.createBitmap(wid, hit, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawPath(outline, new Paint());
+
+        HitMask mask = new HitMask(wid, hit);
+        int [] row = new int[wid];
+        for(int y=0; y<hit; y++) {
+            bitmap.getPixels(row, 0, wid, 0, y, wid, 1);
+            mask.setRow(y, row);
+        }
 
-        piece = BitmapFactory.decodeResource(context.getResources(), id);
+        bitmap.recycle();
+        return mask;
     }
 
     /**
@@ -86,86 +100,46 @@ public class PuzzlePiece {
         canvas.save();
 
         // Convert x,y to pixels and add the margin, then draw
-        canvas.translate(marginX + x * puzzleSize, marginY + y * puzzleSize);
+        canvas.translate(marginX + getX() * puzzleSize, marginY + getY() * puzzleSize);
 
         // Scale it to the right size
         canvas.scale(scaleFactor, scaleFactor);
 
         // This magic code makes the center of the piece at 0, 0
-        canvas.translate(-piece.getWidth() / 2, -piece.getHeight() / 2);
+        canvas.translate(-box.width() / 2f, -box.height() / 2f);
 
-        // Draw the bitmap
-        canvas.drawBitmap(piece, 0, 0, null);
+        drawImage(canvas, scaleFactor);
         canvas.restore();
     }
 
     /**
-     * Test to see if we have touched a puzzle piece
-     * @param testX X location as a normalized coordinate (0 to 1)
-     * @param testY Y location as a normalized coordinate (0 to 1)
-     * @param puzzleSize the size of the puzzle in pixels
-     * @param scaleFactor the amount to scale a piece by
-     * @return true if we hit the piece
-     */
-    public boolean hit(float testX, float testY, int puzzleSize, float scaleFactor) {
-        // Make relative to the location and size to the piece size
-        int pX = (int)((testX - x) * puzzleSize / scaleFactor) + piece.getWidth() / 2;
-        int pY = (int)((testY - y) * puzzleSize / scaleFactor) + piece.getHeight() / 2;
-
-        if(pX < 0 || pX >= piece.getWidth() ||
-                pY < 0 || pY >= piece.getHeight()) {
-            return false;
-        }
-
-        // We are within the rectangle of the piece.
-        // Are we touching actual picture?
-        return (piece.getPixel(pX, pY) & 0xff000000) != 0;
-    }
-
-    /**
-     * Move the puzzle piece by dx, dy
-     * @param dx x amount to move
-     * @param dy y amount to move
-     */
-    public void move(float dx, float dy) {
-        x += dx;
-        y += dy;
-    }
-
-    /**
-     * If we are within SNAP_DISTANCE of the correct
-     * answer, snap to the correct answer exactly.
-     * @return
-     */
-    public boolean maybeSnap() {
-        if(Math.abs(x - finalX) < SNAP_DISTANCE &&
-                Math.abs(y - finalY) < SNAP_DISTANCE) {
-
-            x = finalX;
-            y = finalY;
-            return true;
-        }
-
-        return false;
-    }
-
-    /**
-     * Determine if this piece is snapped in place
-     * @return true if snapped into place
+     * Draw the image of the piece with its top left corner at 0, 0
+     * and one source pixel per canvas unit. The caller is expected
+     * to save and restore the canvas.
+     * @param canvas Canvas we are drawing on
+     * @param scale Number of pixels drawn for each source pixel
      */
-    public boolean isSnapped() {
-        if(x == finalX && y == finalY)
-            return true;
-        else
-            return false;
+    public void drawImage(Canvas canvas, float scale) {
+        // Draw our part of the source image, cut to the piece shape
+        canvas.clipPath(outline);
+        source.draw(canvas, srcRect, dstRect, scale);
     }
 
     /**
-     * Shuffle the location of this piece
-     * @param rand A random number generator
+     * Get the rectangle on the screen the piece is drawn in
+     * @param rect Rectangle to set, rounded out to whole pixels
+     * @param marginX Margin x value in pixels
+     * @param marginY Margin y value in pixels
+     * @param puzzleSize Size we draw the puzzle in pixels
+     * @param scaleFactor Amount we scale the puzzle pieces when we draw them
      */
-    public void shuffle(Random rand) {
-        x = rand.nextFloat();
-        y = rand.nextFloat();
+    public void getBounds(Rect rect, int marginX, int marginY, int puzzleSize, float scaleFactor) {
+        float cx = marginX + getX() * puzzleSize;
+        float cy = marginY + getY() * puzzleSize;
+        float halfWid = box.width() * scaleFactor / 2;
+        float halfHit = box.height() * scaleFactor / 2;
+
+        rect.set((int)Math.floor(cx - halfWid), (int)Math.floor(cy - halfHit),
+                (int)Math.ceil(cx + halfWid), (int)Math.ceil(cy + halfHit));
     }
 }
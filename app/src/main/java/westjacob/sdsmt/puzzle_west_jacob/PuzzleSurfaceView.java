@@ -0,0 +1,354 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A view for our Puzzle that draws on its own render thread.
+ *
+ * This can be used in a layout in place of PuzzleView. Touches are
+ * copied into a lock free queue on the UI thread and applied to the
+ * puzzle by the render thread just before it draws, so a slow frame
+ * never holds up the UI thread. The render thread also moves the
+ * dragged pieces for each frame, so a busy UI thread never holds up
+ * a drag.
+ */
+public class PuzzleSurfaceView extends SurfaceView implements SurfaceHolder.Callback, PuzzleHost {
+    /**
+     * Color the surface is cleared to before the puzzle is drawn
+     */
+    final static int BACKGROUND = 0xffffffff;
+
+    private Puzzle puzzle;
+
+    /**
+     * Touches waiting for the render thread
+     */
+    private final TouchQueue touches = new TouchQueue();
+
+    /**
+     * Touches that did not fit in the queue, in order. Only used
+     * on the UI thread. They go in the queue as it makes room.
+     */
+    private final TouchQueue overflow = new TouchQueue();
+
+    /**
+     * Is moveOverflow posted for the next frame?
+     */
+    private boolean overflowPosted = false;
+
+    /**
+     * Moves the touches that did not fit into the queue
+     */
+    private final Runnable moveOverflow = new Runnable() {
+        @Override
+        public void run() {
+            overflowPosted = false;
+            moveOverflow();
+        }
+    };
+
+    /**
+     * Set when the puzzle has changed and needs to be drawn
+     */
+    private volatile boolean frameRequested = true;
+
+    /**
+     * The thread that draws the puzzle, or null if
+     * we do not have a surface to draw on.
+     */
+    private volatile RenderThread renderThread = null;
+
+    public PuzzleSurfaceView(Context context) {
+        super(context);
+        init(null, 0);
+    }
+
+    public PuzzleSurfaceView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(attrs, 0);
+    }
+
+    public PuzzleSurfaceView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        init(attrs, defStyle);
+    }
+
+    private void init(AttributeSet attrs, int defStyle) {
+        puzzle = Puzzle.fromAttributes(this, attrs, defStyle);
+        getHolder().addCallback(this);
+    }
+
+    @SuppressLint("ClickableViewAccessibility")
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        RenderThread thread = renderThread;
+        if(thread == null) {
+            // Nothing is drawing, so just handle it here
+            return puzzle.onTouchEvent(this, event);
+        }
+
+        // Queue each finger and each batched sample on its
+        // own, just like Puzzle.onTouchEvent()
+        int action = event.getActionMasked();
+        long time = event.getEventTime() * 1000000L;
+        switch(action) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP:
+                int index = event.getActionIndex();
+                queue(thread, action, event.getPointerId(index), event.getX(index), event.getY(index), time);
+                break;
+
+            case MotionEvent.ACTION_MOVE:
+                for(int i=0; i<event.getPointerCount(); i++) {
+                    int pointerId = event.getPointerId(i);
+                    for(int h=0; h<event.getHistorySize(); h++) {
+                        queue(thread, action, pointerId, event.getHistoricalX(i, h),
+                                event.getHistoricalY(i, h), event.getHistoricalEventTime(h) * 1000000L);
+                    }
+                    queue(thread, action, pointerId, event.getX(i), event.getY(i), time);
+                }
+                break;
+
+            case MotionEvent.ACTION_CANCEL:
+                queue(thread, action, 0, 0, 0, time);
+                break;
+        }
+
+        LockSupport.unpark(thread);
+        return true;
+    }
+
+    /**
+     * Add a touch to the queue for the render thread
+     * @param thread The render thread
+     * @param action The action from MotionEvent.getActionMasked()
+     * @param pointerId The pointer id of the finger
+     * @param x X location in view pixels
+     * @param y Y location in view pixels
+     * @param time Time of the touch in nanoseconds
+     */
+    private void queue(RenderThread thread, int action, int pointerId, float x, float y, long time) {
+        // Touches that did not fit before go first
+        moveOverflow();
+        if(overflow.isEmpty() && touches.offer(action, pointerId, x, y, time)) {
+            return;
+        }
+
+        // If the queue is full a move can be dropped, since the next
+        // one has a newer location. Anything else is kept in order
+        // until there is room, rather than holding up the UI thread.
+        if(action == MotionEvent.ACTION_MOVE) {
+            return;
+        }
+
+        overflow.offer(action, pointerId, x, y, time);
+        if(!overflowPosted) {
+            overflowPosted = true;
+            postOnAnimation(moveOverflow);
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Move the touches that did not fit into the queue, as far as
+     * there is room. With no render thread they are applied here.
+     * Called on the UI thread.
+     */
+    private void moveOverflow() {
+        RenderThread thread = renderThread;
+        while(!overflow.isEmpty()) {
+            if(thread == null) {
+                puzzle.onTouch(this, overflow.peekAction(), overflow.peekPointerId(),
+                        overflow.peekX(), overflow.peekY(), overflow.peekTime());
+            } else if(!touches.offer(overflow.peekAction(), overflow.peekPointerId(),
+                    overflow.peekX(), overflow.peekY(), overflow.peekTime())) {
+                break;
+            }
+            overflow.remove();
+        }
+
+        if(thread != null && !overflow.isEmpty() && !overflowPosted) {
+            // Try again at the next frame
+            overflowPosted = true;
+            postOnAnimation(moveOverflow);
+        }
+    }
+
+    /**
+     * Apply every touch in the queue to the puzzle. Only called by
+     * the thread taking touches from the queue: the render thread,
+     * or the UI thread once the render thread has stopped.
+     */
+    private void applyTouches() {
+        while(!touches.isEmpty()) {
+            puzzle.onTouch(this, touches.peekAction(), touches.peekPointerId(),
+                    touches.peekX(), touches.peekY(), touches.peekTime());
+            touches.remove();
+        }
+    }
+
+    /**
+     * Ask the render thread to draw a new frame. This is safe to
+     * call from any thread.
+     */
+    @Override
+    public void invalidate() {
+        frameRequested = true;
+
+        RenderThread thread = renderThread;
+        if(thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public void invalidate(Rect dirty) {
+        // The whole surface is drawn for every frame
+        invalidate();
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        frameRequested = true;
+        renderThread = new RenderThread(holder);
+        puzzle.setRenderThreadDrags(true);
+        renderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        invalidate();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // We must stop drawing before the surface goes away
+        RenderThread thread = renderThread;
+        renderThread = null;
+        if(thread != null) {
+            thread.quit();
+        }
+
+        // Touches go back to the UI thread. Apply the ones the render
+        // thread did not get to now, before any newer ones come in.
+        applyTouches();
+        moveOverflow();
+        puzzle.setRenderThreadDrags(false);
+    }
+
+    /**
+     * Save the puzzle to a bundle
+     * @param bundle The bundle we save to
+     */
+    @Override
+    public void saveInstanceState(Bundle bundle) {
+        puzzle.saveInstanceState(bundle);
+    }
+
+    /**
+     * Load the puzzle from a bundle
+     * @param bundle The bundle we save to
+     */
+    @Override
+    public void loadInstanceState(Bundle bundle) {
+        puzzle.loadInstanceState(bundle);
+        invalidate();
+    }
+
+    @Override
+    public Puzzle getPuzzle() {
+        return puzzle;
+    }
+
+    /**
+     * Thread that applies queued touches and draws the puzzle. It
+     * sleeps whenever there is nothing new to draw. Posting a frame
+     * blocks until the display can take it, which paces the loop to
+     * the display refresh rate.
+     */
+    private class RenderThread extends Thread {
+        private final SurfaceHolder holder;
+
+        private volatile boolean running = true;
+
+        RenderThread(SurfaceHolder holder) {
+            super("PuzzleRender");
+            this.holder = holder;
+        }
+
+        @Override
+        public void run() {
+            while(running) {
+                // Apply every touch that has come in since the last frame
+                applyTouches();
+
+                if(!frameRequested) {
+                    LockSupport.park(this);
+                    continue;
+                }
+
+                frameRequested = false;
+
+                // Move the dragged pieces to where the fingers are now
+                puzzle.applyDrags(System.nanoTime());
+                drawFrame();
+            }
+        }
+
+        private void drawFrame() {
+            Canvas canvas;
+            if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                canvas = holder.lockHardwareCanvas();
+            } else {
+                canvas = holder.lockCanvas();
+            }
+
+            if(canvas == null) {
+                return;
+            }
+
+            try {
+                canvas.drawColor(BACKGROUND);
+                puzzle.draw(canvas);
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+        }
+
+        /**
+         * Stop the thread and wait for it to finish its frame
+         */
+        void quit() {
+            running = false;
+            LockSupport.unpark(this);
+
+            boolean interrupted = false;
+            while(true) {
+                try {
+                    join();
+                    break;
+                } catch(InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -13,7 +13,7 @@ import android.view.View;
 /**
  * Custom view class for our Puzzle.
  */
-public class PuzzleView extends View {
+public class PuzzleView extends View implements PuzzleHost {
 
     private Paint linePaint;
     private Puzzle puzzle;
@@ -34,7 +34,7 @@ public class PuzzleView extends View {
     }
 
     private void init(AttributeSet attrs, int defStyle) {
-        puzzle = new Puzzle(getContext(), this);
+        puzzle = Puzzle.fromAttributes(this, attrs, defStyle);
 
         linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         linePaint.setColor(0xff008000);
@@ -59,6 +59,7 @@ public class PuzzleView extends View {
      * Save the puzzle to a bundle
      * @param bundle The bundle we save to
      */
+    @Override
     public void saveInstanceState(Bundle bundle) {
         puzzle.saveInstanceState(bundle);
     }
@@ -67,10 +68,12 @@ public class PuzzleView extends View {
      * Load the puzzle from a bundle
      * @param bundle The bundle we save to
      */
+    @Override
     public void loadInstanceState(Bundle bundle) {
         puzzle.loadInstanceState(bundle);
     }
 
+    @Override
     public Puzzle getPuzzle() {
         return puzzle;
     }
@@ -0,0 +1,184 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+/**
+ * Offscreen image of the puzzle board and every piece that has
+ * snapped into place. Snapped pieces are drawn into it once, so each
+ * frame only has to copy this one bitmap and then draw the loose
+ * pieces on top.
+ *
+ * Snapped pieces are always moved to the bottom of the z order,
+ * so the layer holds the bottom getCount() pieces.
+ *
+ * When the puzzle is zoomed in the layer is not made as big as the
+ * puzzle on the screen. It is made at a size the puzzle can give it
+ * and scaled up when it is drawn.
+ */
+public class SettledLayer {
+    /**
+     * The layer image
+     */
+    private Bitmap layer = null;
+
+    /**
+     * Paint that filters the layer when it is scaled
+     */
+    private final Paint scaledPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * Where the layer is drawn when it is scaled
+     */
+    private final RectF dstRect = new RectF();
+
+    /**
+     * Canvas that draws into the layer
+     */
+    private final Canvas layerCanvas = new Canvas();
+
+    /**
+     * Number of pieces from the bottom of the z order in the layer
+     */
+    private int count = 0;
+
+    /**
+     * Id of the top piece in the layer, or PieceStore.NONE
+     */
+    private int topId = PieceStore.NONE;
+
+    /**
+     * Largest z of any piece in the layer
+     */
+    private int topZ = Integer.MIN_VALUE;
+
+    /**
+     * Is the layer up to date?
+     */
+    private boolean valid = false;
+
+    /**
+     * Make sure the layer is up to date, rebuilding it if needed
+     * @param board The puzzle board
+     * @param fillPaint Paint used to fill the board
+     * @param puzzleSize Size of the layer in pixels
+     * @param scaleFactor Amount we scale the puzzle pieces when we draw them into the layer
+     */
+    public void update(PuzzleBoard<PuzzlePiece> board, Paint fillPaint, int puzzleSize, float scaleFactor) {
+        if(layer != null && layer.getWidth() != puzzleSize) {
+            layer.recycle();
+            layer = null;
+        }
+
+        if(layer == null) {
+            layer = Bitmap.createBitmap(puzzleSize, puzzleSize, Bitmap.Config.ARGB_8888);
+            layerCanvas.setBitmap(layer);
+            valid = false;
+        }
+
+        if(valid) {
+            return;
+        }
+
+        layer.eraseColor(0);
+        layerCanvas.drawRect(0, 0, puzzleSize, puzzleSize, fillPaint);
+
+        // Start empty and add the snapped pieces from the bottom up
+        invalidate();
+        valid = true;
+        PieceStore store = board.getStore();
+        for(int id=store.getBottom(); id!=PieceStore.NONE && store.isSnapped(id); id=store.above(id)) {
+            add(board.getPiece(id), puzzleSize, scaleFactor);
+        }
+    }
+
+    /**
+     * Add a piece that just snapped into place and was moved
+     * to the bottom of the z order.
+     * @param piece The piece
+     * @param puzzleSize Size of the layer in pixels
+     * @param scaleFactor Amount we scale the puzzle pieces when we draw them into the layer
+     */
+    public void add(PuzzlePiece piece, int puzzleSize, float scaleFactor) {
+        if(!valid) {
+            return;
+        }
+
+        // Snapped pieces fit together without overlapping, so
+        // it does not matter that this one is drawn last.
+        piece.draw(layerCanvas, 0, 0, puzzleSize, scaleFactor);
+        if(piece.getZ() > topZ) {
+            topZ = piece.getZ();
+            topId = piece.getId();
+        }
+        count++;
+    }
+
+    /**
+     * Mark the layer as out of date, so it is rebuilt before
+     * it is next drawn.
+     */
+    public void invalidate() {
+        valid = false;
+        count = 0;
+        topZ = Integer.MIN_VALUE;
+        topId = PieceStore.NONE;
+    }
+
+    /**
+     * Draw the layer
+     * @param canvas Canvas we are drawing on
+     * @param marginX Margin x value in pixels
+     * @param marginY Margin y value in pixels
+     * @param puzzleSize Size we draw the puzzle in pixels
+     */
+    public void draw(Canvas canvas, int marginX, int marginY, int puzzleSize) {
+        if(layer.getWidth() == puzzleSize) {
+            canvas.drawBitmap(layer, marginX, marginY, null);
+            return;
+        }
+
+        dstRect.set(marginX, marginY, marginX + puzzleSize, marginY + puzzleSize);
+        canvas.drawBitmap(layer, null, dstRect, scaledPaint);
+    }
+
+    /**
+     * Free the layer image. It is made again if the layer is drawn.
+     */
+    public void recycle() {
+        invalidate();
+        if(layer != null) {
+            layerCanvas.setBitmap(null);
+            layer.recycle();
+            layer = null;
+        }
+    }
+
+    /**
+     * Is a piece drawn by the layer?
+     * @param piece The piece
+     * @return true if the piece is in the layer
+     */
+    public boolean contains(PuzzlePiece piece) {
+        return piece.getZ() <= topZ;
+    }
+
+    /**
+     * The lowest piece in the z order that is not in the layer
+     * @param store The store of the puzzle board
+     * @return Piece id, or PieceStore.NONE if every piece is in the layer
+     */
+    public int firstAbove(PieceStore store) {
+        return topId == PieceStore.NONE ? store.getBottom() : store.above(topId);
+    }
+
+    /**
+     * Number of pieces from the bottom of the z order in the layer
+     * @return number of pieces
+     */
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,72 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Debug overlay that shows the frame stats in the corner of the view
+ */
+public class StatsOverlay {
+    /**
+     * Size of the text in pixels
+     */
+    final static float TEXT_SIZE = 28;
+
+    /**
+     * Space around the text in pixels
+     */
+    final static float PADDING = 8;
+
+    /**
+     * Paint for the text
+     */
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    /**
+     * Paint for the box behind the text
+     */
+    private final Paint boxPaint = new Paint();
+
+    /**
+     * The lines of text shown
+     */
+    private final String [] lines = new String[4];
+
+    public StatsOverlay() {
+        textPaint.setColor(0xffffffff);
+        textPaint.setTextSize(TEXT_SIZE);
+        boxPaint.setColor(0xa0000000);
+    }
+
+    /**
+     * Draw the overlay
+     * @param canvas Canvas we are drawing on
+     * @param stats The stats to show
+     * @param image The puzzle image, or null if not loaded yet
+     */
+    public void draw(Canvas canvas, FrameStats stats, TiledImage image) {
+        stats.update();
+
+        lines[0] = String.format("draw ms  p50 %.1f  p99 %.1f",
+                stats.getValueAt(FrameStats.DRAW_TIME, 50) / 1e6,
+                stats.getValueAt(FrameStats.DRAW_TIME, 99) / 1e6);
+        lines[1] = String.format("touch ms  p50 %.1f  p99 %.1f",
+                stats.getValueAt(FrameStats.TOUCH_LATENCY, 50) / 1e6,
+                stats.getValueAt(FrameStats.TOUCH_LATENCY, 99) / 1e6);
+        lines[2] = "pieces drawn " + stats.getLast(FrameStats.PIECES_DRAWN) +
+                "  culled " + stats.getLast(FrameStats.PIECES_CULLED);
+        lines[3] = image != null ? "tile cache hits " + image.getHitPercent() + "%" +
+                "  misses " + stats.getLast(FrameStats.TILE_MISSES) + "/frame" : "tile cache -";
+
+        float lineHit = TEXT_SIZE + PADDING / 2;
+        float wid = 0;
+        for(String line : lines) {
+            wid = Math.max(wid, textPaint.measureText(line));
+        }
+
+        canvas.drawRect(0, 0, wid + 2 * PADDING, lines.length * lineHit + PADDING, boxPaint);
+        for(int i=0; i<lines.length; i++) {
+            canvas.drawText(lines[i], PADDING, (i + 1) * lineHit, textPaint);
+        }
+    }
+}
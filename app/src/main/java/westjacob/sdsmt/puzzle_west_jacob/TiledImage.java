@@ -0,0 +1,335 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A puzzle image that is never decoded all at once. It is cut into
+ * square tiles, and each tile is decoded with a BitmapRegionDecoder
+ * only when part of it is drawn. Decoded tiles are kept in a bounded
+ * least recently used cache.
+ *
+ * The image is measured in puzzle pixels, which is the image made
+ * small enough to fit on the screen, just like a decoded bitmap used
+ * to be. The pieces are laid out in puzzle pixels. A tile is decoded
+ * with the largest power of two sample size that still has one image
+ * pixel for each pixel it is drawn to, so zooming in decodes more
+ * detail from the original image.
+ *
+ * Tiles that fall out of the cache are kept in a small pool, and a
+ * decode of a tile the same size reuses one through inBitmap instead
+ * of allocating a new bitmap. A tile that has been drawn on a hardware
+ * canvas is never pooled, since a display list or RenderNode may still
+ * draw it after it leaves the cache.
+ */
+public class TiledImage {
+    /**
+     * Width and height of a decoded tile in pixels
+     */
+    final static int TILE_SIZE = 512;
+
+    /**
+     * Fraction of the maximum heap the tile cache may use
+     */
+    final static int HEAP_FRACTION = 8;
+
+    /**
+     * Most tiles that fell out of the cache we keep for reuse
+     */
+    final static int MAX_REUSABLE = 4;
+
+    /**
+     * Decoder for the original image
+     */
+    private final BitmapRegionDecoder decoder;
+
+    /**
+     * Size of the original image in pixels
+     */
+    private final int fullWid;
+    private final int fullHit;
+
+    /**
+     * Number of original image pixels for each puzzle pixel.
+     * This is a power of two.
+     */
+    private final int sample;
+
+    /**
+     * Decoded tiles keyed by sample size and tile column and row,
+     * sized in kilobytes. Tiles that fall out of the cache are never
+     * recycled, only reused for a later decode.
+     */
+    private final LruCache<Long, Bitmap> tiles;
+
+    /**
+     * Tiles in the cache that have been drawn on a hardware canvas
+     */
+    private final Set<Bitmap> shown = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+
+    /**
+     * Tiles that fell out of the cache that a decode can reuse
+     */
+    private final ArrayList<Bitmap> reusable = new ArrayList<>();
+
+    /**
+     * Paint that filters the tiles when they are scaled
+     */
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * Has release() been called? A loader thread may still be
+     * drawing the image into an atlas after that.
+     */
+    private boolean released = false;
+
+    /**
+     * Rectangles used while drawing, to avoid allocation
+     */
+    private final Rect tileRect = new Rect();
+    private final Rect fullRect = new Rect();
+    private final Rect part = new Rect();
+    private final Rect tileSrc = new Rect();
+    private final RectF tileDst = new RectF();
+
+    /**
+     * Open an image resource
+     * @param res Resources to load from
+     * @param id Resource id of the image
+     * @param reqSize Smallest width and height in puzzle pixels
+     * @return The image
+     * @throws IOException If the image could not be read
+     */
+    public static TiledImage open(Resources res, int id, int reqSize) throws IOException {
+        InputStream stream = res.openRawResource(id);
+        try {
+            return new TiledImage(BitmapRegionDecoder.newInstance(stream, false), reqSize);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Constructor
+     * @param decoder Decoder for the original image
+     * @param reqSize Smallest width and height in puzzle pixels
+     */
+    public TiledImage(BitmapRegionDecoder decoder, int reqSize) {
+        this.decoder = decoder;
+        fullWid = decoder.getWidth();
+        fullHit = decoder.getHeight();
+
+        int s = 1;
+        while(fullWid / (s * 2) >= reqSize && fullHit / (s * 2) >= reqSize) {
+            s *= 2;
+        }
+        sample = s;
+
+        int maxKb = (int)(Runtime.getRuntime().maxMemory() / 1024 / HEAP_FRACTION);
+        tiles = new LruCache<Long, Bitmap>(maxKb) {
+            @Override
+            protected int sizeOf(Long key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount() / 1024;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long key, Bitmap oldValue, Bitmap newValue) {
+                // A tile a hardware canvas has drawn may still be
+                // drawn from a display list, so leave it to the GC
+                if(!shown.remove(oldValue) && reusable.size() < MAX_REUSABLE) {
+                    reusable.add(oldValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * Width of the image in puzzle pixels
+     * @return width in pixels
+     */
+    public int getWidth() {
+        return fullWid / sample;
+    }
+
+    /**
+     * Height of the image in puzzle pixels
+     * @return height in pixels
+     */
+    public int getHeight() {
+        return fullHit / sample;
+    }
+
+    /**
+     * Most original image pixels there are for each puzzle pixel.
+     * Drawing at a larger scale than this does not show any more detail.
+     * @return Scale, a power of two
+     */
+    public int getMaxScale() {
+        return sample;
+    }
+
+    /**
+     * How often a tile that was needed was already in the cache
+     * @return Percent of tiles found in the cache, 0 to 100
+     */
+    public int getHitPercent() {
+        int hits = tiles.hitCount();
+        int total = hits + tiles.missCount();
+        return total > 0 ? (int)(100L * hits / total) : 0;
+    }
+
+    /**
+     * Number of times a tile was found in the cache
+     * @return Number of hits
+     */
+    public int getHitCount() {
+        return tiles.hitCount();
+    }
+
+    /**
+     * Number of times a tile had to be decoded
+     * @return Number of misses
+     */
+    public int getMissCount() {
+        return tiles.missCount();
+    }
+
+    /**
+     * Draw part of the image, like Canvas.drawBitmap()
+     * @param canvas Canvas we are drawing on
+     * @param src Part of the image to draw in puzzle pixels. This must
+     *            be inside the image.
+     * @param dst Where to draw it on the canvas
+     * @param scale Number of pixels drawn for each canvas unit, used
+     *              to pick how much detail to decode
+     */
+    public synchronized void draw(Canvas canvas, Rect src, Rect dst, float scale) {
+        if(released) {
+            return;
+        }
+
+        // Largest sample size that still has a pixel for each pixel drawn
+        float perPixel = sample * src.width() / (dst.width() * scale);
+        int tileSample = 1;
+        while(tileSample * 2 <= perPixel) {
+            tileSample *= 2;
+        }
+
+        // Part of the original image we want
+        fullRect.set(src.left * sample, src.top * sample, src.right * sample, src.bottom * sample);
+        float toDstX = (float)dst.width() / fullRect.width();
+        float toDstY = (float)dst.height() / fullRect.height();
+
+        int span = TILE_SIZE * tileSample;
+        for(int ty=fullRect.top / span; ty<=(fullRect.bottom - 1) / span; ty++) {
+            for(int tx=fullRect.left / span; tx<=(fullRect.right - 1) / span; tx++) {
+                tileRect.set(tx * span, ty * span,
+                        Math.min(fullWid, (tx + 1) * span), Math.min(fullHit, (ty + 1) * span));
+                if(!part.setIntersect(tileRect, fullRect)) {
+                    continue;
+                }
+
+                Bitmap tile = tile(tx, ty, tileSample);
+                if(tile == null) {
+                    continue;
+                }
+
+                // The decoder rounds the tile size, so map the
+                // part through the size of the bitmap we got
+                float toTileX = (float)tile.getWidth() / tileRect.width();
+                float toTileY = (float)tile.getHeight() / tileRect.height();
+                tileSrc.set((int)((part.left - tileRect.left) * toTileX),
+                        (int)((part.top - tileRect.top) * toTileY),
+                        (int)Math.ceil((part.right - tileRect.left) * toTileX),
+                        (int)Math.ceil((part.bottom - tileRect.top) * toTileY));
+                tileDst.set(dst.left + (part.left - fullRect.left) * toDstX,
+                        dst.top + (part.top - fullRect.top) * toDstY,
+                        dst.left + (part.right - fullRect.left) * toDstX,
+                        dst.top + (part.bottom - fullRect.top) * toDstY);
+                canvas.drawBitmap(tile, tileSrc, tileDst, paint);
+                if(canvas.isHardwareAccelerated()) {
+                    shown.add(tile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a tile, decoding it if it is not in the cache
+     * @param tx Tile column
+     * @param ty Tile row
+     * @param tileSample Sample size of the tile
+     * @return The tile, or null if it could not be decoded
+     */
+    private Bitmap tile(int tx, int ty, int tileSample) {
+        Long key = ((long)tileSample << 48) | ((long)ty << 24) | tx;
+        Bitmap tile = tiles.get(key);
+        if(tile == null) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = tileSample;
+            options.inMutable = true;
+
+            // The decoder draws into a reused bitmap without changing
+            // its size, so it must be exactly the size of the tile
+            options.inBitmap = takeReusable(Math.max(1, tileRect.width() / tileSample),
+                    Math.max(1, tileRect.height() / tileSample));
+            try {
+                tile = decoder.decodeRegion(tileRect, options);
+            } catch(IllegalArgumentException e) {
+                // The bitmap could not be reused after all
+                options.inBitmap = null;
+                tile = decoder.decodeRegion(tileRect, options);
+            }
+            if(tile != null) {
+                tiles.put(key, tile);
+            }
+        }
+
+        return tile;
+    }
+
+    /**
+     * Take a tile that fell out of the cache to decode into
+     * @param width Width of the tile we need in pixels
+     * @param height Height of the tile we need in pixels
+     * @return A tile of that size, or null if there is none
+     */
+    private Bitmap takeReusable(int width, int height) {
+        for(int i=0; i<reusable.size(); i++) {
+            Bitmap bitmap = reusable.get(i);
+            if(bitmap.getWidth() == width && bitmap.getHeight() == height &&
+                    bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+                reusable.remove(i);
+                return bitmap;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Free the decoder and the tiles. Drawing the image
+     * after this draws nothing.
+     */
+    public synchronized void release() {
+        released = true;
+        tiles.evictAll();
+        reusable.clear();
+        shown.clear();
+        decoder.recycle();
+    }
+}
@@ -0,0 +1,140 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock free queue of touches from the UI thread to the render thread.
+ *
+ * There must be exactly one thread adding touches and one thread taking
+ * them. Touches are stored in parallel arrays, so nothing is allocated
+ * once the queue has been created.
+ */
+public class TouchQueue {
+    /**
+     * Number of touches the queue can hold. Must be a power of two.
+     */
+    final static int CAPACITY = 256;
+
+    /**
+     * Masked index of a slot in the arrays
+     */
+    private final static int MASK = CAPACITY - 1;
+
+    /**
+     * The action of each touch, from MotionEvent.getActionMasked()
+     */
+    private final int [] actions = new int[CAPACITY];
+
+    /**
+     * The pointer id of the finger for each touch
+     */
+    private final int [] pointerIds = new int[CAPACITY];
+
+    /**
+     * The x location of each touch in view pixels
+     */
+    private final float [] xs = new float[CAPACITY];
+
+    /**
+     * The y location of each touch in view pixels
+     */
+    private final float [] ys = new float[CAPACITY];
+
+    /**
+     * The time of each touch in nanoseconds
+     */
+    private final long [] times = new long[CAPACITY];
+
+    /**
+     * Count of touches taken. Only written by the consumer.
+     */
+    private final AtomicInteger head = new AtomicInteger();
+
+    /**
+     * Count of touches added. Only written by the producer.
+     */
+    private final AtomicInteger tail = new AtomicInteger();
+
+    /**
+     * Add a touch to the queue. Called only by the producer thread.
+     * @param action The action from MotionEvent.getActionMasked()
+     * @param pointerId The pointer id of the finger
+     * @param x X location in view pixels
+     * @param y Y location in view pixels
+     * @param time Time of the touch in nanoseconds
+     * @return false if the queue is full and the touch was not added
+     */
+    public boolean offer(int action, int pointerId, float x, float y, long time) {
+        int t = tail.get();
+        if(t - head.get() == CAPACITY) {
+            return false;
+        }
+
+        int i = t & MASK;
+        actions[i] = action;
+        pointerIds[i] = pointerId;
+        xs[i] = x;
+        ys[i] = y;
+        times[i] = time;
+
+        // Publish the touch after its values are written
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Is the queue empty? Called only by the consumer thread.
+     * @return true if there is no touch to take
+     */
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * Action of the touch at the head of the queue
+     * @return action from MotionEvent.getActionMasked()
+     */
+    public int peekAction() {
+        return actions[head.get() & MASK];
+    }
+
+    /**
+     * Pointer id of the touch at the head of the queue
+     * @return pointer id of the finger
+     */
+    public int peekPointerId() {
+        return pointerIds[head.get() & MASK];
+    }
+
+    /**
+     * X location of the touch at the head of the queue
+     * @return x in view pixels
+     */
+    public float peekX() {
+        return xs[head.get() & MASK];
+    }
+
+    /**
+     * Y location of the touch at the head of the queue
+     * @return y in view pixels
+     */
+    public float peekY() {
+        return ys[head.get() & MASK];
+    }
+
+    /**
+     * Time of the touch at the head of the queue
+     * @return time in nanoseconds
+     */
+    public long peekTime() {
+        return times[head.get() & MASK];
+    }
+
+    /**
+     * Remove the touch at the head of the queue. Called only
+     * by the consumer thread after reading the touch.
+     */
+    public void remove() {
+        head.lazySet(head.get() + 1);
+    }
+}
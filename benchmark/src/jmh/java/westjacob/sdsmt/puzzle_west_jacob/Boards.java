@@ -0,0 +1,92 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+/**
+ * Makes puzzle boards for the benchmarks. The pieces are laid out on a
+ * square grid like a real puzzle, but every piece shares one round
+ * mask instead of a cut out image.
+ */
+class Boards {
+    /**
+     * Size of one grid cell in pixels
+     */
+    final static int CELL = 64;
+
+    /**
+     * Room around each cell for the tabs, in pixels
+     */
+    final static int MARGIN = 16;
+
+    /**
+     * Seed so every run measures the same layout
+     */
+    final static long SEED = 476;
+
+    /**
+     * Make a shuffled board
+     * @param count Number of pieces
+     * @return The board
+     */
+    static PuzzleBoard<PieceModel> create(int count) {
+        int columns = columns(count);
+        int puzzleWidth = columns * CELL;
+        int size = CELL + 2 * MARGIN;
+        float snapDistance = Math.min(PieceModel.SNAP_DISTANCE, 0.4f * CELL / puzzleWidth);
+
+        HitMask mask = new HitMask(size, size);
+        float radius = size / 2f;
+        for(int y=0; y<size; y++) {
+            for(int x=0; x<size; x++) {
+                float dx = x + 0.5f - radius;
+                float dy = y + 0.5f - radius;
+                if(dx * dx + dy * dy <= radius * radius) {
+                    mask.set(x, y);
+                }
+            }
+        }
+
+        int rows = (count + columns - 1) / columns;
+        PuzzleBoard<PieceModel> board = new PuzzleBoard<>(size, puzzleWidth, columns, rows);
+        for(int id=0; id<count; id++) {
+            float finalX = (id % columns + 0.5f) * CELL / puzzleWidth;
+            float finalY = (id / columns + 0.5f) * CELL / puzzleWidth;
+            board.add(new PieceModel(mask, id, finalX, finalY, snapDistance), SEED);
+        }
+
+        return board;
+    }
+
+    /**
+     * Make a board where every piece has been joined into one
+     * cluster, lying just off of its solved location
+     * @param count Number of pieces
+     * @return The board
+     */
+    static PuzzleBoard<PieceModel> createJoined(int count) {
+        PuzzleBoard<PieceModel> board = create(count);
+        board.ungroup();
+        for(PieceModel piece : board.getPieces()) {
+            piece.setX(piece.getFinalX() + 0.25f);
+            piece.setY(piece.getFinalY() + 0.25f);
+        }
+        board.restored();
+        return board;
+    }
+
+    /**
+     * Number of columns used for a puzzle
+     * @param count Number of pieces
+     * @return Number of columns
+     */
+    static int columns(int count) {
+        return (int)Math.ceil(Math.sqrt(count));
+    }
+
+    /**
+     * Size the benchmarks pretend the puzzle is drawn at
+     * @param count Number of pieces
+     * @return Size in pixels
+     */
+    static int puzzleSize(int count) {
+        return columns(count) * CELL;
+    }
+}
@@ -0,0 +1,73 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dragging a piece. Each call moves the top piece one step, so it
+ * crosses grid cells now and then like a real drag. The piece goes
+ * back and forth so it stays on the board.
+ *
+ * moveGroup drags a cluster holding every piece of the puzzle, which
+ * should take the same time whatever the number of pieces.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DragBenchmark {
+    /**
+     * Number of steps before the drag turns around
+     */
+    private final static int STEPS = 256;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int pieces;
+
+    private PuzzleBoard<PieceModel> board;
+    private PieceModel piece;
+    private PuzzleBoard<PieceModel> joined;
+    private PieceModel joinedPiece;
+    private float step;
+    private int count = 0;
+
+    @Setup
+    public void setup() {
+        board = Boards.create(pieces);
+        ArrayList<PieceModel> list = board.getPieces();
+        piece = list.get(list.size() - 1);
+        board.pickUp(piece);
+
+        joined = Boards.createJoined(pieces);
+        joinedPiece = joined.getPieces().get(0);
+        joined.pickUp(joinedPiece);
+
+        step = 1f / STEPS;
+    }
+
+    @Benchmark
+    public void move() {
+        if(count++ % STEPS == 0) {
+            step = -step;
+        }
+
+        board.move(piece, step, step / 2);
+    }
+
+    @Benchmark
+    public void moveGroup() {
+        if(count++ % STEPS == 0) {
+            step = -step;
+        }
+
+        joined.move(joinedPiece, step, step / 2);
+    }
+}
@@ -0,0 +1,58 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dropping a cluster that does not snap into place. Every piece but
+ * one is in a single cluster, and the loose piece is next to it but
+ * not lined up, so each drop looks for pieces to join and finds none.
+ * Only the open edges of the cluster are checked.
+ *
+ * The cluster is picked up again after each drop, so this also
+ * covers moving it to the top of the z order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DropBenchmark {
+    @Param({"10", "100", "1000", "5000", "10000"})
+    public int pieces;
+
+    private PuzzleBoard<PieceModel> board;
+    private PieceModel piece;
+
+    @Setup
+    public void setup() {
+        board = Boards.create(pieces);
+        board.ungroup();
+        for(PieceModel p : board.getPieces()) {
+            float offset = p.getId() == 0 ? 0.5f : 0.25f;
+            p.setX(p.getFinalX() + offset);
+            p.setY(p.getFinalY() + offset);
+        }
+        board.restored();
+
+        for(PieceModel p : board.getPieces()) {
+            if(p.getId() == 1) {
+                piece = p;
+            }
+        }
+        board.pickUp(piece);
+    }
+
+    @Benchmark
+    public boolean drop() {
+        boolean snapped = board.drop(piece);
+        board.pickUp(piece);
+        return snapped;
+    }
+}
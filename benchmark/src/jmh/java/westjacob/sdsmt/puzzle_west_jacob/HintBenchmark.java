@@ -0,0 +1,52 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ranking the loose pieces for hints on a shuffled board. A hint after
+ * one piece moves only scores the pieces around it again, while a
+ * rebuild scores every piece, like after a shuffle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HintBenchmark {
+    @Param({"100", "1000", "5000", "10000"})
+    public int pieces;
+
+    private PuzzleBoard<PieceModel> board;
+    private HintEngine<PieceModel> hints;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        board = Boards.create(pieces);
+        hints = new HintEngine<>(board);
+        hints.rebuild();
+    }
+
+    @Benchmark
+    public int moveAndHint() {
+        PieceModel piece = board.getPiece(next % pieces);
+        hints.moved(piece.getId());
+        board.place(piece, PieceShuffler.randomX(Boards.SEED, next), PieceShuffler.randomY(Boards.SEED, next), false);
+        hints.moved(piece.getId());
+        next++;
+        return hints.peek();
+    }
+
+    @Benchmark
+    public int rebuild() {
+        hints.rebuild();
+        return hints.peek();
+    }
+}
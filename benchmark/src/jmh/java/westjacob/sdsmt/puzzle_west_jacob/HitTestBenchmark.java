@@ -0,0 +1,53 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the piece under a touch
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HitTestBenchmark {
+    /**
+     * Number of touch locations we cycle through
+     */
+    private final static int TOUCHES = 1024;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int pieces;
+
+    private PuzzleBoard<PieceModel> board;
+    private int puzzleSize;
+    private final float [] xs = new float[TOUCHES];
+    private final float [] ys = new float[TOUCHES];
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        board = Boards.create(pieces);
+        puzzleSize = Boards.puzzleSize(pieces);
+
+        Random random = new Random(Boards.SEED);
+        for(int i=0; i<TOUCHES; i++) {
+            xs[i] = random.nextFloat();
+            ys[i] = random.nextFloat();
+        }
+    }
+
+    @Benchmark
+    public PieceModel pieceAt() {
+        int i = next++ & (TOUCHES - 1);
+        return board.pieceAt(xs[i], ys[i], puzzleSize, 1);
+    }
+}
@@ -0,0 +1,67 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording, undoing, redoing and replaying moves. The journal is filled with
+ * moves of single pieces to random locations on a shuffled board.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JournalBenchmark {
+    /**
+     * Number of moves in the journal
+     */
+    final static int MOVES = 1024;
+
+    @Param({"100", "1000", "10000"})
+    public int pieces;
+
+    private PuzzleBoard<PieceModel> board;
+    private MoveJournal journal;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        board = Boards.create(pieces);
+        journal = new MoveJournal(MOVES);
+        for(int i=0; i<MOVES; i++) {
+            PieceModel piece = board.getPiece(i % pieces);
+            float x = PieceShuffler.randomX(Boards.SEED + 1, i);
+            float y = PieceShuffler.randomY(Boards.SEED + 1, i);
+            journal.record(piece.getId(), piece.getX(), piece.getY(), false, x, y, false);
+            board.place(piece, x, y, false);
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        int id = next++ % pieces;
+        journal.record(id, 0.25f, 0.25f, false, 0.75f, 0.75f, false);
+    }
+
+    @Benchmark
+    public int undoRedo() {
+        journal.undo(board);
+        return journal.redo(board);
+    }
+
+    /**
+     * Make every move again from the start of the journal, as
+     * a restored session does
+     */
+    @Benchmark
+    public void replay() {
+        journal.replay(board);
+    }
+}
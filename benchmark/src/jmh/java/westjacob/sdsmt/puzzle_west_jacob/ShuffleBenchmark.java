@@ -0,0 +1,59 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shuffling a whole board, dropping the pieces anywhere or spreading
+ * them out, with the pieces placed on one thread or on a pool like
+ * the loader threads the app uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShuffleBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int pieces;
+
+    @Param({"false", "true"})
+    public boolean spread;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private PuzzleBoard<PieceModel> board;
+    private ExecutorService executor;
+    private PieceShuffler shuffler;
+    private long seed = Boards.SEED;
+
+    @Setup
+    public void setup() {
+        board = Boards.create(pieces);
+        executor = threads > 1 ? Executors.newFixedThreadPool(threads - 1) : null;
+        shuffler = new PieceShuffler(executor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public int shuffle() {
+        board.shuffle(shuffler, seed++, spread);
+        return board.getSnappedCount();
+    }
+}
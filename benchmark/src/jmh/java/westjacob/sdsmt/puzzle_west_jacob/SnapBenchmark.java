@@ -0,0 +1,51 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picking up a piece and dropping it where it snaps into place.
+ * This covers moving the piece to the top and then to the bottom
+ * of the z order and keeping the snapped count.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SnapBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int pieces;
+
+    private PuzzleBoard<PieceModel> board;
+    private PieceModel [] byId;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        board = Boards.create(pieces);
+        ArrayList<PieceModel> list = board.getPieces();
+        byId = new PieceModel[list.size()];
+        for(PieceModel piece : list) {
+            byId[piece.getId()] = piece;
+        }
+    }
+
+    @Benchmark
+    public boolean pickUpAndSnap() {
+        PieceModel piece = byId[next++ % byId.length];
+        board.pickUp(piece);
+
+        // Drop it just off of its final location
+        piece.setX(piece.getFinalX() + 0.001f);
+        piece.setY(piece.getFinalY() - 0.001f);
+        return board.drop(piece);
+    }
+}
@@ -0,0 +1,55 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and restoring the state of a puzzle
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnapshotBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int pieces;
+
+    private ArrayList<PieceModel> list;
+    private byte [] data;
+
+    @Setup
+    public void setup() {
+        PuzzleBoard<PieceModel> board = Boards.create(pieces);
+
+        // Snap every third piece so both kinds of record are written
+        ArrayList<PieceModel> added = board.getPieces();
+        for(int i=0; i<added.size(); i+=3) {
+            PieceModel piece = added.get(i);
+            board.pickUp(piece);
+            piece.snap();
+            board.drop(piece);
+        }
+
+        list = new ArrayList<>();
+        board.getOrdered(list);
+        data = PuzzleSnapshot.save(list);
+    }
+
+    @Benchmark
+    public byte[] save() {
+        return PuzzleSnapshot.save(list);
+    }
+
+    @Benchmark
+    public boolean restore() {
+        return PuzzleSnapshot.restore(data, list);
+    }
+}
@@ -0,0 +1,375 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+/**
+ * Groups of pieces that have been joined together, kept as a
+ * union-find structure over the piece ids.
+ *
+ * Pieces in a cluster are always in their solved positions relative
+ * to each other, so a cluster only needs one offset: every piece is
+ * at its final location plus the offset of its cluster. Moving a
+ * cluster just changes that one offset, however many pieces it has.
+ *
+ * Each cluster also keeps its bounding box in solved coordinates and
+ * a circular list of its pieces, so both can be found without looking
+ * at every piece. Everything is kept in primitive arrays indexed by
+ * piece id.
+ *
+ * The pieces are laid out in a grid, so the neighbour across each side
+ * of a piece is known from its id. Each cluster keeps a list of its
+ * open edges, the sides that face a piece in some other cluster. Only
+ * those edges can join anything, and for a large cluster they are far
+ * fewer than its pieces. An edge is the piece id times 4 plus the side.
+ */
+public class ClusterSet {
+    /**
+     * The sides of a piece
+     */
+    final static int LEFT = 0;
+    final static int RIGHT = 1;
+    final static int TOP = 2;
+    final static int BOTTOM = 3;
+
+    /**
+     * Number of columns of pieces
+     */
+    private final int columns;
+
+    /**
+     * Number of rows of pieces
+     */
+    private final int rows;
+
+    /**
+     * Parent of each piece in the union-find forest. A root is its
+     * own parent, and the root stands for the whole cluster.
+     */
+    private final int [] parent;
+
+    /**
+     * Number of pieces in each cluster. Only valid for roots.
+     */
+    private final int [] size;
+
+    /**
+     * Next piece in the same cluster. Following these from any
+     * piece goes around the cluster and back.
+     */
+    private final int [] next;
+
+    /**
+     * Offset of each cluster from the solved position of its
+     * pieces. Only valid for roots.
+     */
+    private final float [] offsetX;
+    private final float [] offsetY;
+
+    /**
+     * Bounding box of each cluster in solved coordinates. Only
+     * valid for roots.
+     */
+    private final float [] left;
+    private final float [] top;
+    private final float [] right;
+    private final float [] bottom;
+
+    /**
+     * Next edge in the same list of open edges. Following these from
+     * any edge in the list goes around the list and back.
+     */
+    private final int [] edgeNext;
+
+    /**
+     * An edge in the list of open edges of each cluster, or -1 if the
+     * cluster has none. Only valid for roots.
+     *
+     * Edges that have been closed by a join are not taken out right
+     * away. They are dropped the next time openEdges() goes through
+     * the list.
+     */
+    private final int [] edgeHead;
+
+    /**
+     * Constructor. Every piece starts out in a cluster of its own
+     * once reset() has been called for it.
+     * @param columns Number of columns of pieces
+     * @param rows Number of rows of pieces
+     */
+    public ClusterSet(int columns, int rows) {
+        int count = columns * rows;
+        this.columns = columns;
+        this.rows = rows;
+        parent = new int[count];
+        size = new int[count];
+        next = new int[count];
+        offsetX = new float[count];
+        offsetY = new float[count];
+        left = new float[count];
+        top = new float[count];
+        right = new float[count];
+        bottom = new float[count];
+        edgeNext = new int[count * 4];
+        edgeHead = new int[count];
+
+        // Ids with no piece are clusters of their own with no edges
+        for(int id=0; id<count; id++) {
+            parent[id] = id;
+            size[id] = 1;
+            next[id] = id;
+            edgeHead[id] = -1;
+        }
+    }
+
+    /**
+     * Put a piece in a cluster of its own. Any cluster it was in must
+     * be reset as well, so this is only for setting up all the pieces.
+     * @param id The piece id
+     * @param dx Offset of the piece from its final location
+     * @param dy Offset of the piece from its final location
+     * @param l Left edge of the piece in solved coordinates
+     * @param t Top edge of the piece in solved coordinates
+     * @param r Right edge of the piece in solved coordinates
+     * @param b Bottom edge of the piece in solved coordinates
+     */
+    public void reset(int id, float dx, float dy, float l, float t, float r, float b) {
+        parent[id] = id;
+        size[id] = 1;
+        next[id] = id;
+        offsetX[id] = dx;
+        offsetY[id] = dy;
+        left[id] = l;
+        top[id] = t;
+        right[id] = r;
+        bottom[id] = b;
+
+        // Every side with a piece across it is open
+        int col = id % columns;
+        int row = id / columns;
+        edgeHead[id] = -1;
+        if(col > 0) {
+            addEdge(id, id * 4 + LEFT);
+        }
+        if(col < columns - 1) {
+            addEdge(id, id * 4 + RIGHT);
+        }
+        if(row > 0) {
+            addEdge(id, id * 4 + TOP);
+        }
+        if(row < rows - 1) {
+            addEdge(id, id * 4 + BOTTOM);
+        }
+    }
+
+    /**
+     * Add an edge to the list of open edges of a cluster
+     * @param root The root of the cluster
+     * @param edge The edge
+     */
+    private void addEdge(int root, int edge) {
+        int head = edgeHead[root];
+        if(head < 0) {
+            edgeNext[edge] = edge;
+            edgeHead[root] = edge;
+        } else {
+            edgeNext[edge] = edgeNext[head];
+            edgeNext[head] = edge;
+        }
+    }
+
+    /**
+     * Find the cluster a piece is in. This shortens the path to the
+     * root as it goes, so later finds are faster.
+     * @param id The piece id
+     * @return The id of the root of the cluster
+     */
+    public int find(int id) {
+        while(parent[id] != id) {
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+
+        return id;
+    }
+
+    /**
+     * Join the clusters of two pieces. The joined cluster takes the
+     * offset of the cluster of b, so the pieces of a move onto it.
+     * @param a A piece in the cluster that moves
+     * @param b A piece in the cluster that stays put
+     * @return The root of the joined cluster
+     */
+    public int union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if(ra == rb) {
+            return ra;
+        }
+
+        float dx = offsetX[rb];
+        float dy = offsetY[rb];
+
+        // Hang the smaller tree under the larger one
+        int root = ra;
+        int child = rb;
+        if(size[ra] < size[rb]) {
+            root = rb;
+            child = ra;
+        }
+
+        parent[child] = root;
+        size[root] += size[child];
+        offsetX[root] = dx;
+        offsetY[root] = dy;
+        left[root] = Math.min(left[root], left[child]);
+        top[root] = Math.min(top[root], top[child]);
+        right[root] = Math.max(right[root], right[child]);
+        bottom[root] = Math.max(bottom[root], bottom[child]);
+
+        // Splice the two circular lists together
+        int t = next[root];
+        next[root] = next[child];
+        next[child] = t;
+
+        // And the two lists of open edges. Edges between the two
+        // clusters are closed now, but stay in the list for now.
+        int h = edgeHead[root];
+        int hc = edgeHead[child];
+        if(h < 0) {
+            edgeHead[root] = hc;
+        } else if(hc >= 0) {
+            t = edgeNext[h];
+            edgeNext[h] = edgeNext[hc];
+            edgeNext[hc] = t;
+        }
+        return root;
+    }
+
+    /**
+     * Number of pieces in the cluster of a piece
+     * @param id The piece id
+     * @return Number of pieces
+     */
+    public int size(int id) {
+        return size[find(id)];
+    }
+
+    /**
+     * The next piece in the same cluster
+     * @param id The piece id
+     * @return Id of the next piece, which is id again
+     * if the piece is on its own
+     */
+    public int next(int id) {
+        return next[id];
+    }
+
+    /**
+     * The piece across an edge
+     * @param edge The edge
+     * @return Id of the piece on the other side
+     */
+    public int across(int edge) {
+        int id = edge / 4;
+        switch(edge % 4) {
+            case LEFT:
+                return id - 1;
+
+            case RIGHT:
+                return id + 1;
+
+            case TOP:
+                return id - columns;
+
+            default:
+                return id + columns;
+        }
+    }
+
+    /**
+     * Get the open edges of the cluster of a piece. Edges that have
+     * been closed since the last call are dropped from the list.
+     * @param id The piece id
+     * @param out Array the edges are written to. It must have
+     *            room for 4 edges for each piece.
+     * @return Number of open edges
+     */
+    public int openEdges(int id, int [] out) {
+        int root = find(id);
+        int head = edgeHead[root];
+        if(head < 0) {
+            return 0;
+        }
+
+        int n = 0;
+        int edge = head;
+        do {
+            if(find(across(edge)) != root) {
+                out[n++] = edge;
+            }
+            edge = edgeNext[edge];
+        } while(edge != head);
+
+        // Link the edges that are still open back into a list
+        for(int i=0; i<n; i++) {
+            edgeNext[out[i]] = out[(i + 1) % n];
+        }
+        edgeHead[root] = n > 0 ? out[0] : -1;
+        return n;
+    }
+
+    /**
+     * Offset of the cluster of a piece from its solved position
+     * @param id The piece id
+     * @return x offset
+     */
+    public float getOffsetX(int id) {
+        return offsetX[find(id)];
+    }
+
+    /**
+     * Offset of the cluster of a piece from its solved position
+     * @param id The piece id
+     * @return y offset
+     */
+    public float getOffsetY(int id) {
+        return offsetY[find(id)];
+    }
+
+    /**
+     * Set the offset of the cluster of a piece. This moves every
+     * piece in the cluster.
+     * @param id The piece id
+     * @param dx x offset
+     * @param dy y offset
+     */
+    public void setOffset(int id, float dx, float dy) {
+        int root = find(id);
+        offsetX[root] = dx;
+        offsetY[root] = dy;
+    }
+
+    /**
+     * Move the cluster of a piece
+     * @param id The piece id
+     * @param dx x amount to move
+     * @param dy y amount to move
+     */
+    public void move(int id, float dx, float dy) {
+        int root = find(id);
+        offsetX[root] += dx;
+        offsetY[root] += dy;
+    }
+
+    /**
+     * Current bounding box of the cluster of a piece
+     * @param id The piece id
+     * @param out Array the left, top, right and bottom edges
+     *            are written to, relative to the puzzle
+     */
+    public void getBounds(int id, float [] out) {
+        int root = find(id);
+        out[0] = left[root] + offsetX[root];
+        out[1] = top[root] + offsetY[root];
+        out[2] = right[root] + offsetX[root];
+        out[3] = bottom[root] + offsetY[root];
+    }
+}
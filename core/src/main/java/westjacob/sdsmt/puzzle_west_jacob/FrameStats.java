@@ -0,0 +1,181 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import java.io.PrintWriter;
+
+/**
+ * Measurements of how fast the puzzle is drawn and how quickly it
+ * answers a touch.
+ *
+ * Recording a measurement only adds it to a lock free ring, so the
+ * draw and touch code never waits on anything. The samples are moved
+ * into one histogram for each metric when the numbers are read.
+ */
+public class FrameStats {
+    /**
+     * Time taken to draw a frame in nanoseconds
+     */
+    public final static int DRAW_TIME = 0;
+
+    /**
+     * Time from a touch until the frame that shows it has been
+     * drawn, in nanoseconds
+     */
+    public final static int TOUCH_LATENCY = 1;
+
+    /**
+     * Number of loose pieces drawn in a frame
+     */
+    public final static int PIECES_DRAWN = 2;
+
+    /**
+     * Number of loose pieces skipped in a frame because
+     * they could not be seen
+     */
+    public final static int PIECES_CULLED = 3;
+
+    /**
+     * Number of image tiles found in the tile cache since the last frame
+     */
+    public final static int TILE_HITS = 4;
+
+    /**
+     * Number of image tiles that had to be decoded since the last frame
+     */
+    public final static int TILE_MISSES = 5;
+
+    /**
+     * Number of metrics
+     */
+    final static int METRICS = 6;
+
+    /**
+     * Names of the metrics for reports
+     */
+    final static String [] NAMES = {"draw time (us)", "touch latency (us)", "pieces drawn", "pieces culled",
+            "tile hits", "tile misses"};
+
+    /**
+     * Is each metric a time in nanoseconds? Times are reported
+     * in microseconds.
+     */
+    final static boolean [] TIMES = {true, true, false, false, false, false};
+
+    /**
+     * Number of samples the ring holds
+     */
+    final static int CAPACITY = 4096;
+
+    /**
+     * Number of bits of a sample used for the value. The metric
+     * goes in the bits above.
+     */
+    private final static int VALUE_BITS = 56;
+
+    /**
+     * Mask of the value bits of a sample
+     */
+    private final static long VALUE_MASK = (1L << VALUE_BITS) - 1;
+
+    /**
+     * Samples not yet added to the histograms
+     */
+    private final SampleRing ring = new SampleRing(CAPACITY);
+
+    /**
+     * Histogram of each metric
+     */
+    private final Histogram [] histograms = new Histogram[METRICS];
+
+    /**
+     * The last value of each metric
+     */
+    private final long [] last = new long[METRICS];
+
+    /**
+     * Constructor
+     */
+    public FrameStats() {
+        for(int i=0; i<METRICS; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Record a measurement. Safe to call from any thread.
+     * @param metric The metric, like DRAW_TIME
+     * @param value The value. Negative values are recorded as 0.
+     */
+    public void record(int metric, long value) {
+        ring.add(((long)metric << VALUE_BITS) | (Math.max(0, value) & VALUE_MASK));
+    }
+
+    /**
+     * Move the recorded samples into the histograms
+     */
+    public synchronized void update() {
+        long sample;
+        while((sample = ring.poll()) >= 0) {
+            int metric = (int)(sample >>> VALUE_BITS);
+            long value = sample & VALUE_MASK;
+            histograms[metric].record(value);
+            last[metric] = value;
+        }
+    }
+
+    /**
+     * Value of a metric at a percentile. Call update() first.
+     * @param metric The metric
+     * @param percentile The percentile, 0 to 100
+     * @return The value, or 0 if nothing has been recorded
+     */
+    public synchronized long getValueAt(int metric, double percentile) {
+        return histograms[metric].getValueAt(percentile);
+    }
+
+    /**
+     * The last value recorded for a metric. Call update() first.
+     * @param metric The metric
+     * @return The value, or 0 if nothing has been recorded
+     */
+    public synchronized long getLast(int metric) {
+        return last[metric];
+    }
+
+    /**
+     * Number of values recorded for a metric. Call update() first.
+     * @param metric The metric
+     * @return The count
+     */
+    public synchronized long getCount(int metric) {
+        return histograms[metric].getCount();
+    }
+
+    /**
+     * Forget everything recorded so far
+     */
+    public synchronized void reset() {
+        update();
+        for(int i=0; i<METRICS; i++) {
+            histograms[i].reset();
+            last[i] = 0;
+        }
+    }
+
+    /**
+     * Write a report of every metric
+     * @param out Where to write it
+     */
+    public synchronized void write(PrintWriter out) {
+        update();
+        out.println("metric, count, min, mean, p50, p90, p99, p99.9, max");
+        for(int i=0; i<METRICS; i++) {
+            Histogram h = histograms[i];
+            double scale = TIMES[i] ? 1000 : 1;
+            out.printf("%s, %d, %.1f, %.1f, %.1f, %.1f, %.1f, %.1f, %.1f%n", NAMES[i], h.getCount(),
+                    h.getMin() / scale, h.getMean() / scale,
+                    h.getValueAt(50) / scale, h.getValueAt(90) / scale, h.getValueAt(99) / scale,
+                    h.getValueAt(99.9) / scale, h.getMax() / scale);
+        }
+        out.println("samples lost, " + ring.getLost());
+    }
+}
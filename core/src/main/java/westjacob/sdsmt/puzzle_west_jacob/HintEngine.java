@@ -0,0 +1,558 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Ranks the loose pieces of a board by how easy they are to put in
+ * place, for hints and for solving the puzzle automatically.
+ *
+ * A piece scores its distance from its final location. Each neighbour
+ * already snapped into place makes it easier, since the player can see
+ * where it goes, and a piece with another piece on top of it is harder.
+ * The lowest score is the easiest piece.
+ *
+ * The loose pieces are kept in a binary heap by score, with the place
+ * of each piece in the heap kept by id so a piece can be moved up or
+ * down when its score changes. When pieces move only they, their
+ * neighbours and the pieces under them are marked, and refresh()
+ * scores just those again. After everything moves at once, like a
+ * shuffle, rebuild() scores every piece.
+ *
+ * Pieces are scored from a copy of their locations, z values and
+ * snapped flags, so scoring every piece does not need the board.
+ * snapshot() takes the copy, and build() can then score it without
+ * the lock while the board changes. Pieces marked as moved meanwhile
+ * are scored again by the next refresh().
+ *
+ * This is not thread safe. Apart from build(), the caller must hold
+ * a lock that also keeps the board from changing. moved() may be
+ * called while build() runs, but nothing else may.
+ */
+public class HintEngine<T extends PieceModel> {
+    /**
+     * Score taken off for each neighbour that is snapped into place
+     */
+    final static float NEIGHBOUR_BONUS = 0.25f;
+
+    /**
+     * Score added if another piece is on top of the piece
+     */
+    final static float COVERED_PENALTY = 0.5f;
+
+    /**
+     * The board
+     */
+    private final PuzzleBoard<T> board;
+
+    /**
+     * The state of the pieces
+     */
+    private final PieceStore store;
+
+    /**
+     * The loose piece ids, as a heap with the lowest score at 0
+     */
+    private final int [] heap;
+
+    /**
+     * Number of pieces in the heap
+     */
+    private int size = 0;
+
+    /**
+     * Index of each piece in the heap by id, or -1 if not in it
+     */
+    private final int [] position;
+
+    /**
+     * Score of each piece in the heap by id
+     */
+    private final float [] score;
+
+    /**
+     * Does each piece need to be scored again?
+     */
+    private final boolean [] marked;
+
+    /**
+     * The pieces that need to be scored again
+     */
+    private final int [] markedIds;
+
+    /**
+     * Number of pieces in markedIds
+     */
+    private int markedCount = 0;
+
+    /**
+     * Copy of the location, z value and snapped flag of each piece
+     * by id, as of the snapshot or the last time it was marked
+     */
+    private final float [] xs;
+    private final float [] ys;
+    private final int [] zs;
+    private final boolean [] snapped;
+
+    /**
+     * Ids of every piece in the snapshot
+     */
+    private final int [] ids;
+
+    /**
+     * Number of pieces in ids
+     */
+    private int idCount = 0;
+
+    /**
+     * Number of cells along each side of the snapshot grid, which
+     * build() uses to find covering pieces in place of the board grid
+     */
+    private int cells = 0;
+
+    /**
+     * Size of one cell of the snapshot grid in relative coordinates
+     */
+    private float cellSize = 1;
+
+    /**
+     * Where the pieces of each cell start in cellIds, with one more
+     * entry at the end. Each piece is in the cell its middle is in.
+     */
+    private int [] cellStart = new int[0];
+
+    /**
+     * The pieces in the snapshot grid, cell by cell
+     */
+    private final int [] cellIds;
+
+    /**
+     * Constructor. The engine is empty until rebuild() is called.
+     * @param board The board
+     */
+    public HintEngine(PuzzleBoard<T> board) {
+        this.board = board;
+        store = board.getStore();
+
+        int count = board.getColumns() * board.getRows();
+        heap = new int[count];
+        position = new int[count];
+        score = new float[count];
+        marked = new boolean[count];
+        markedIds = new int[count];
+        xs = new float[count];
+        ys = new float[count];
+        zs = new int[count];
+        snapped = new boolean[count];
+        ids = new int[count];
+        cellIds = new int[count];
+        Arrays.fill(position, -1);
+    }
+
+    /**
+     * Score every piece again
+     */
+    public void rebuild() {
+        snapshot();
+        build();
+    }
+
+    /**
+     * Copy the state of every piece for build() and drop the pieces
+     * marked so far, since build() scores every piece
+     */
+    public void snapshot() {
+        Arrays.fill(position, -1);
+        size = 0;
+        for(int i=0; i<markedCount; i++) {
+            marked[markedIds[i]] = false;
+        }
+        markedCount = 0;
+
+        float largest = 0;
+        idCount = 0;
+        for(int id=store.getBottom(); id!=PieceStore.NONE; id=store.above(id)) {
+            copy(id);
+            ids[idCount++] = id;
+            largest = Math.max(largest, 2 * Math.max(store.getHalfWidth(id), store.getHalfHeight(id)));
+        }
+
+        // Make the cells at least the size of the largest piece, so
+        // a piece covering a point has its middle in the cell of that
+        // point or one next to it
+        int count = largest > 0 ? (int)((PieceGrid.GRID_MAX - PieceGrid.GRID_MIN) / largest) : 1;
+        count = Math.max(1, Math.min(PieceGrid.MAX_CELLS, count));
+        if(count != cells) {
+            cells = count;
+            cellSize = (PieceGrid.GRID_MAX - PieceGrid.GRID_MIN) / cells;
+            cellStart = new int[cells * cells + 1];
+        }
+    }
+
+    /**
+     * Score every piece in the last snapshot and put the loose ones
+     * in the heap. This only uses the snapshot, so it can be run
+     * without the lock.
+     */
+    public void build() {
+        // Put the pieces in the cells, counting the pieces in each
+        // cell and then placing them after the cells before it
+        Arrays.fill(cellStart, 0);
+        for(int i=0; i<idCount; i++) {
+            cellStart[cellOf(ids[i]) + 1]++;
+        }
+        for(int c=0; c<cells * cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        for(int i=0; i<idCount; i++) {
+            int c = cellOf(ids[i]);
+            cellIds[cellStart[c]++] = ids[i];
+        }
+
+        // Placing moved each start to the end of its cell
+        for(int c=cells * cells; c>0; c--) {
+            cellStart[c] = cellStart[c - 1];
+        }
+        cellStart[0] = 0;
+
+        for(int i=0; i<idCount; i++) {
+            int id = ids[i];
+            if(!snapped[id]) {
+                score[id] = score(id, isCoveredInSnapshot(id));
+                position[id] = size;
+                heap[size++] = id;
+            }
+        }
+
+        for(int i=size / 2 - 1; i>=0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Copy the state of a piece from the board
+     * @param id The piece id
+     */
+    private void copy(int id) {
+        xs[id] = store.getX(id);
+        ys[id] = store.getY(id);
+        zs[id] = store.getZ(id);
+        snapped[id] = store.isSnapped(id);
+    }
+
+    /**
+     * Mark a piece, and the cluster it is in, as moved. This is called
+     * both when a cluster is picked up and when it is dropped, so the
+     * pieces under where it was and where it is now are both marked.
+     * @param id Id of a piece in the cluster
+     */
+    public void moved(int id) {
+        int member = id;
+        do {
+            markAround(member);
+            member = board.nextInGroup(member);
+        } while(member != id);
+    }
+
+    /**
+     * Mark one piece as moved, without the rest of its cluster. Used
+     * when the pieces of a cluster may each have gone somewhere else,
+     * like when an undo splits it up.
+     * @param id The piece id
+     */
+    public void movedPiece(int id) {
+        markAround(id);
+    }
+
+    /**
+     * Mark a piece, its neighbours and the pieces under it
+     * @param id The piece id
+     */
+    private void markAround(int id) {
+        int columns = board.getColumns();
+        mark(id);
+        if(id % columns > 0) {
+            mark(id - 1);
+        }
+        if(id % columns < columns - 1) {
+            mark(id + 1);
+        }
+        if(id >= columns) {
+            mark(id - columns);
+        }
+        if(id + columns < heap.length) {
+            mark(id + columns);
+        }
+
+        ArrayList<T> candidates = board.getGrid().candidates(store.getX(id), store.getY(id));
+        for(int i=0; i<candidates.size(); i++) {
+            mark(candidates.get(i).getId());
+        }
+    }
+
+    /**
+     * Mark a piece to be scored again
+     * @param id The piece id
+     */
+    private void mark(int id) {
+        if(!marked[id]) {
+            marked[id] = true;
+            markedIds[markedCount++] = id;
+        }
+    }
+
+    /**
+     * Score the marked pieces again, adding loose pieces to the
+     * heap and taking out pieces that have snapped into place
+     */
+    public void refresh() {
+        // Bring the copy up to date first, since a score
+        // also looks at the neighbours of the piece
+        for(int i=0; i<markedCount; i++) {
+            int id = markedIds[i];
+            if(board.getPiece(id) != null) {
+                copy(id);
+            }
+        }
+
+        for(int i=0; i<markedCount; i++) {
+            int id = markedIds[i];
+            marked[id] = false;
+
+            if(board.getPiece(id) == null || snapped[id]) {
+                remove(id);
+                continue;
+            }
+
+            float old = score[id];
+            score[id] = score(id, isCovered(id));
+            if(position[id] < 0) {
+                position[id] = size;
+                heap[size++] = id;
+                siftUp(size - 1);
+            } else if(score[id] < old) {
+                siftUp(position[id]);
+            } else {
+                siftDown(position[id]);
+            }
+        }
+
+        markedCount = 0;
+    }
+
+    /**
+     * The easiest loose piece
+     * @return Piece id, or PieceStore.NONE if every piece is in place
+     */
+    public int peek() {
+        refresh();
+        return size > 0 ? heap[0] : PieceStore.NONE;
+    }
+
+    /**
+     * Take the easiest loose pieces, no two in the same cluster. The
+     * pieces taken and the rest of their clusters are left out of the
+     * ranking until they are marked as moved again.
+     * @param out Array the piece ids are put in, easiest first
+     * @param max Largest number of pieces to take
+     * @return Number of pieces taken
+     */
+    public int poll(int [] out, int max) {
+        refresh();
+
+        int n = 0;
+        while(n < max && size > 0) {
+            int id = heap[0];
+            int member = id;
+            do {
+                remove(member);
+                member = board.nextInGroup(member);
+            } while(member != id);
+
+            out[n++] = id;
+        }
+
+        return n;
+    }
+
+    /**
+     * Number of loose pieces ranked
+     * @return Number of pieces
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Score a loose piece from the copy of the piece states
+     * @param id The piece id
+     * @param covered Is the middle of the piece under another piece?
+     * @return The score, lower is easier
+     */
+    private float score(int id, boolean covered) {
+        float dx = xs[id] - store.getFinalX(id);
+        float dy = ys[id] - store.getFinalY(id);
+        float value = (float)Math.sqrt(dx * dx + dy * dy);
+
+        int columns = board.getColumns();
+        if(id % columns > 0 && snapped[id - 1]) {
+            value -= NEIGHBOUR_BONUS;
+        }
+        if(id % columns < columns - 1 && id + 1 < heap.length && snapped[id + 1]) {
+            value -= NEIGHBOUR_BONUS;
+        }
+        if(id >= columns && snapped[id - columns]) {
+            value -= NEIGHBOUR_BONUS;
+        }
+        if(id + columns < heap.length && snapped[id + columns]) {
+            value -= NEIGHBOUR_BONUS;
+        }
+
+        if(covered) {
+            value += COVERED_PENALTY;
+        }
+
+        return value;
+    }
+
+    /**
+     * Is the middle of a piece under another piece? The board grid
+     * finds the pieces, so this needs the lock.
+     * @param id The piece id
+     * @return true if a piece higher in the z order covers it
+     */
+    private boolean isCovered(int id) {
+        ArrayList<T> candidates = board.getGrid().candidates(xs[id], ys[id]);
+        for(int i=0; i<candidates.size(); i++) {
+            if(covers(candidates.get(i).getId(), id)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Is the middle of a piece under another piece in the snapshot?
+     * This only uses the snapshot grid, so it does not need the lock.
+     * @param id The piece id
+     * @return true if a piece higher in the z order covers it
+     */
+    private boolean isCoveredInSnapshot(int id) {
+        int col = cell(xs[id]);
+        int row = cell(ys[id]);
+        for(int r=Math.max(0, row - 1); r<=Math.min(cells - 1, row + 1); r++) {
+            for(int c=Math.max(0, col - 1); c<=Math.min(cells - 1, col + 1); c++) {
+                int cell = r * cells + c;
+                for(int i=cellStart[cell]; i<cellStart[cell + 1]; i++) {
+                    if(covers(cellIds[i], id)) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Does one piece cover the middle of another?
+     * @param other The piece that may be on top
+     * @param id The piece that may be covered
+     * @return true if other is higher in the z order and over the middle of id
+     */
+    private boolean covers(int other, int id) {
+        return zs[other] > zs[id] &&
+                Math.abs(xs[other] - xs[id]) < store.getHalfWidth(other) &&
+                Math.abs(ys[other] - ys[id]) < store.getHalfHeight(other);
+    }
+
+    /**
+     * The cell of the snapshot grid the middle of a piece is in
+     * @param id The piece id
+     * @return Index of the cell, row by row
+     */
+    private int cellOf(int id) {
+        return cell(ys[id]) * cells + cell(xs[id]);
+    }
+
+    /**
+     * Convert a relative coordinate to a snapshot grid column or row
+     * @param v Relative coordinate
+     * @return Cell index, clamped to the grid
+     */
+    private int cell(float v) {
+        int c = (int)Math.floor((v - PieceGrid.GRID_MIN) / cellSize);
+        return Math.max(0, Math.min(cells - 1, c));
+    }
+
+    /**
+     * Take a piece out of the heap if it is in it
+     * @param id The piece id
+     */
+    private void remove(int id) {
+        int i = position[id];
+        if(i < 0) {
+            return;
+        }
+
+        position[id] = -1;
+        size--;
+        if(i == size) {
+            return;
+        }
+
+        // Fill the hole with the last piece and put it where it belongs
+        int last = heap[size];
+        heap[i] = last;
+        position[last] = i;
+        siftUp(i);
+        siftDown(position[last]);
+    }
+
+    /**
+     * Move the piece at a heap index up until its parent is easier
+     */
+    private void siftUp(int i) {
+        int id = heap[i];
+        while(i > 0) {
+            int parent = (i - 1) / 2;
+            if(score[heap[parent]] <= score[id]) {
+                break;
+            }
+
+            heap[i] = heap[parent];
+            position[heap[i]] = i;
+            i = parent;
+        }
+
+        heap[i] = id;
+        position[id] = i;
+    }
+
+    /**
+     * Move the piece at a heap index down until its children are harder
+     */
+    private void siftDown(int i) {
+        int id = heap[i];
+        while(true) {
+            int child = 2 * i + 1;
+            if(child >= size) {
+                break;
+            }
+            if(child + 1 < size && score[heap[child + 1]] < score[heap[child]]) {
+                child++;
+            }
+            if(score[heap[child]] >= score[id]) {
+                break;
+            }
+
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+
+        heap[i] = id;
+        position[id] = i;
+    }
+}
@@ -0,0 +1,153 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+/**
+ * Histogram of values that keeps the same relative precision from the
+ * smallest value to the largest, like an HDR histogram.
+ *
+ * Every power of two range is split into SUB_BUCKETS buckets of equal
+ * width, so a value is known to within about 3% however large it is.
+ * The buckets are one fixed array, so recording never allocates.
+ */
+public class Histogram {
+    /**
+     * Number of bits of each value kept exactly
+     */
+    final static int SUB_BITS = 5;
+
+    /**
+     * Number of buckets in each power of two range
+     */
+    final static int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * Count of values in each bucket
+     */
+    private final long [] counts = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+
+    /**
+     * Number of values recorded
+     */
+    private long total = 0;
+
+    /**
+     * Sum of the values recorded
+     */
+    private long sum = 0;
+
+    /**
+     * Smallest and largest values recorded
+     */
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    /**
+     * Record a value
+     * @param value The value, which must not be negative
+     */
+    public void record(long value) {
+        counts[index(value)]++;
+        total++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Forget every value
+     */
+    public void reset() {
+        for(int i=0; i<counts.length; i++) {
+            counts[i] = 0;
+        }
+
+        total = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Number of values recorded
+     * @return The count
+     */
+    public long getCount() {
+        return total;
+    }
+
+    /**
+     * Smallest value recorded
+     * @return The value, or 0 if there are none
+     */
+    public long getMin() {
+        return total > 0 ? min : 0;
+    }
+
+    /**
+     * Largest value recorded
+     * @return The value, or 0 if there are none
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Average of the values recorded
+     * @return The average, or 0 if there are none
+     */
+    public double getMean() {
+        return total > 0 ? (double)sum / total : 0;
+    }
+
+    /**
+     * Value at a percentile. This is the largest value that falls
+     * in the same bucket as the real value, so it is never low.
+     * @param percentile The percentile, 0 to 100
+     * @return The value, or 0 if there are none
+     */
+    public long getValueAt(double percentile) {
+        if(total == 0) {
+            return 0;
+        }
+
+        long wanted = Math.max(1, (long)Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for(int i=0; i<counts.length; i++) {
+            seen += counts[i];
+            if(seen >= wanted) {
+                return Math.min(max, highest(i));
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * Find the bucket of a value
+     * @param value The value
+     * @return Index of the bucket
+     */
+    static int index(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int)value;
+        }
+
+        // Keep the top SUB_BITS + 1 bits of the value
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int)(value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * The largest value that goes in a bucket
+     * @param index Index of the bucket
+     * @return The value
+     */
+    static long highest(int index) {
+        if(index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
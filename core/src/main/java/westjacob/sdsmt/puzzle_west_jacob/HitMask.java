@@ -0,0 +1,89 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+/**
+ * A packed mask with one bit for each pixel of a puzzle piece. A bit
+ * is set where the piece image is not transparent. The mask is built
+ * once when the piece is loaded so that hit tests never have to read
+ * pixels back out of the Bitmap.
+ */
+public class HitMask {
+    /**
+     * Width of the mask in pixels
+     */
+    private final int width;
+
+    /**
+     * Height of the mask in pixels
+     */
+    private final int height;
+
+    /**
+     * Number of longs used for each row of the mask
+     */
+    private final int stride;
+
+    /**
+     * The packed bits, row by row. Bit (x & 63) of word
+     * y * stride + (x >> 6) is pixel x, y.
+     */
+    private final long[] bits;
+
+    /**
+     * Create an empty mask
+     * @param width Width of the mask in pixels
+     * @param height Height of the mask in pixels
+     */
+    public HitMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        stride = (width + 63) >> 6;
+        bits = new long[stride * height];
+    }
+
+    /**
+     * Set the bits of one row from ARGB pixels. Any pixel with a
+     * non-zero alpha is considered part of the piece.
+     * @param y Row to set
+     * @param pixels ARGB pixels for the row, at least width long
+     */
+    public void setRow(int y, int[] pixels) {
+        int base = y * stride;
+        for(int x=0; x<width; x++) {
+            if((pixels[x] & 0xff000000) != 0) {
+                bits[base + (x >> 6)] |= 1L << (x & 63);
+            }
+        }
+    }
+
+    /**
+     * Set a single pixel in the mask
+     * @param x X location in pixels
+     * @param y Y location in pixels
+     */
+    public void set(int x, int y) {
+        bits[y * stride + (x >> 6)] |= 1L << (x & 63);
+    }
+
+    /**
+     * Test a pixel in the mask. Locations outside the mask are
+     * never set.
+     * @param x X location in pixels
+     * @param y Y location in pixels
+     * @return true if the piece covers this pixel
+     */
+    public boolean isSet(int x, int y) {
+        if(x < 0 || x >= width || y < 0 || y >= height) {
+            return false;
+        }
+
+        return (bits[y * stride + (x >> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
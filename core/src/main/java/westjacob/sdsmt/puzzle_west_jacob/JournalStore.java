@@ -0,0 +1,276 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps the move journal of the puzzle in progress in a memory mapped
+ * file next to the session, so the moves survive the process being
+ * killed.
+ *
+ * The file holds the rings of a MoveJournal as they are. A move only
+ * writes its own slot, its joined clusters and the counters, so a drop
+ * never writes the whole puzzle. The session file is then only written
+ * in full at a checkpoint, and the moves since the checkpoint are made
+ * again by MoveJournal.replay() when the session is restored.
+ *
+ *   int    MAGIC
+ *   int    VERSION
+ *   int    number of move slots
+ *   int    number of ints of joined clusters
+ *   long   seed of the session the moves belong to
+ *   long   moves recorded
+ *   long   moves not undone
+ *   long   oldest move whose joined clusters are kept
+ *   long   ints of joined clusters written
+ *   long   move the session was last written in full at
+ *   for each move slot:
+ *     int    piece id
+ *     float  from x, from y, to x, to y
+ *     int    flags
+ *     int    ints of joined clusters
+ *     int    unused
+ *     long   where the joined clusters start
+ *   for each int of joined clusters:
+ *     int
+ */
+public class JournalStore {
+    /**
+     * Marks the file as a move journal
+     */
+    final static int MAGIC = 0x504a524e;
+
+    /**
+     * Version of the file layout
+     */
+    final static int VERSION = 1;
+
+    /**
+     * Size of the header in bytes
+     */
+    final static int HEADER_SIZE = 64;
+
+    /**
+     * Size of one move slot in bytes
+     */
+    final static int MOVE_SIZE = 40;
+
+    /**
+     * Offsets of the header fields
+     */
+    private final static int CAPACITY = 8;
+    private final static int JOIN_SPACE = 12;
+    private final static int SEED = 16;
+    private final static int HEAD = 24;
+    private final static int CURSOR = 32;
+    private final static int FIRST = 40;
+    private final static int JOIN_HEAD = 48;
+    private final static int BASE = 56;
+
+    /**
+     * The file, mapped into memory
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * The open file. Kept so it can be closed.
+     */
+    private final RandomAccessFile file;
+
+    /**
+     * Number of move slots
+     */
+    private final int capacity;
+
+    /**
+     * Offset of the joined clusters in the file
+     */
+    private final int joinsAt;
+
+    /**
+     * Did the file already hold moves of this session?
+     */
+    private final boolean restorable;
+
+    /**
+     * Open a journal file. If the file does not hold the moves of
+     * this session, it is started empty.
+     * @param path The journal file
+     * @param capacity Number of moves the journal keeps
+     * @param seed Seed of the session the moves belong to
+     * @throws IOException if the file can not be opened or mapped
+     */
+    public JournalStore(File path, int capacity, long seed) throws IOException {
+        this.capacity = capacity;
+        int joinSpace = capacity * MoveJournal.JOIN_SPACE;
+        joinsAt = HEADER_SIZE + capacity * MOVE_SIZE;
+        long size = joinsAt + (long)joinSpace * 4;
+
+        file = new RandomAccessFile(path, "rw");
+        try {
+            file.setLength(size);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch(IOException e) {
+            file.close();
+            throw e;
+        }
+        buffer.order(ByteOrder.nativeOrder());
+
+        restorable = buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION &&
+                buffer.getInt(CAPACITY) == capacity && buffer.getInt(JOIN_SPACE) == joinSpace &&
+                buffer.getLong(SEED) == seed;
+
+        if(!restorable) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(CAPACITY, capacity);
+            buffer.putInt(JOIN_SPACE, joinSpace);
+            buffer.putLong(SEED, seed);
+            putCounters(0, 0, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Did the file hold moves of this session when it was opened?
+     * @return true if the journal can take the moves in the file
+     */
+    public boolean isRestorable() {
+        return restorable;
+    }
+
+    /**
+     * Number of move slots
+     * @return Number of slots
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Write the counters of the journal
+     * @param head Number of moves recorded
+     * @param cursor Number of moves not undone
+     * @param first Oldest move whose joined clusters are kept
+     * @param joinHead Number of ints of joined clusters written
+     * @param base Move the session was last written in full at
+     */
+    public void putCounters(long head, long cursor, long first, long joinHead, long base) {
+        if(buffer == null) {
+            return;
+        }
+
+        buffer.putLong(HEAD, head);
+        buffer.putLong(CURSOR, cursor);
+        buffer.putLong(FIRST, first);
+        buffer.putLong(JOIN_HEAD, joinHead);
+        buffer.putLong(BASE, base);
+    }
+
+    /**
+     * Counters of the journal, as written by putCounters()
+     */
+    public long getHead() {
+        return buffer.getLong(HEAD);
+    }
+
+    public long getCursor() {
+        return buffer.getLong(CURSOR);
+    }
+
+    public long getFirst() {
+        return buffer.getLong(FIRST);
+    }
+
+    public long getJoinHead() {
+        return buffer.getLong(JOIN_HEAD);
+    }
+
+    public long getBase() {
+        return buffer.getLong(BASE);
+    }
+
+    /**
+     * Write one move slot
+     * @param slot The slot, from 0 to the capacity - 1
+     * @param id Id of the piece that was moved
+     * @param fromX x location of the piece before the move
+     * @param fromY y location of the piece before the move
+     * @param toX x location of the piece after the move
+     * @param toY y location of the piece after the move
+     * @param flags Snap flags of the move
+     * @param joinStart Where the joined clusters of the move start
+     * @param joinLength Number of ints of joined clusters
+     */
+    public void putMove(int slot, int id, float fromX, float fromY, float toX, float toY, int flags,
+                        long joinStart, int joinLength) {
+        if(buffer == null) {
+            return;
+        }
+
+        int at = HEADER_SIZE + slot * MOVE_SIZE;
+        buffer.putInt(at, id);
+        buffer.putFloat(at + 4, fromX);
+        buffer.putFloat(at + 8, fromY);
+        buffer.putFloat(at + 12, toX);
+        buffer.putFloat(at + 16, toY);
+        buffer.putInt(at + 20, flags);
+        buffer.putInt(at + 24, joinLength);
+        buffer.putLong(at + 32, joinStart);
+    }
+
+    /**
+     * Write ints of joined clusters
+     * @param joins The ring of joined clusters
+     * @param offset Index of the first int to write, in the ring and the file
+     * @param length Number of ints to write
+     */
+    public void putJoins(int [] joins, int offset, int length) {
+        if(buffer == null) {
+            return;
+        }
+
+        for(int i=offset; i<offset + length; i++) {
+            buffer.putInt(joinsAt + i * 4, joins[i]);
+        }
+    }
+
+    /**
+     * Read every move slot and the joined clusters into the
+     * arrays of a journal with the same capacity
+     */
+    public void getMoves(int [] ids, float [] fromX, float [] fromY, float [] toX, float [] toY, byte [] flags,
+                         long [] joinStart, int [] joinLength, int [] joins) {
+        for(int slot=0; slot<capacity; slot++) {
+            int at = HEADER_SIZE + slot * MOVE_SIZE;
+            ids[slot] = buffer.getInt(at);
+            fromX[slot] = buffer.getFloat(at + 4);
+            fromY[slot] = buffer.getFloat(at + 8);
+            toX[slot] = buffer.getFloat(at + 12);
+            toY[slot] = buffer.getFloat(at + 16);
+            flags[slot] = (byte)buffer.getInt(at + 20);
+            joinLength[slot] = buffer.getInt(at + 24);
+            joinStart[slot] = buffer.getLong(at + 32);
+        }
+
+        for(int i=0; i<joins.length; i++) {
+            joins[i] = buffer.getInt(joinsAt + i * 4);
+        }
+    }
+
+    /**
+     * Stop using the file. The mapping itself goes away
+     * when the buffer is garbage collected.
+     */
+    public void close() {
+        buffer = null;
+        try {
+            file.close();
+        } catch(IOException e) {
+            // Nothing we can do, the data is already in the file
+        }
+    }
+}
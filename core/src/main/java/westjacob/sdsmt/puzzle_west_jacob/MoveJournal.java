@@ -0,0 +1,442 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+/**
+ * History of the moves made on a puzzle board, so they can be undone
+ * and redone.
+ *
+ * A move is one piece being dropped: where it was picked up, where it
+ * ended up and whether it was snapped into place before and after.
+ * Moving a piece moves the cluster it is in, so undoing a move puts
+ * the whole cluster back. If the drop joined other clusters, the
+ * pieces of those clusters are written down as well, and undo splits
+ * them off again at the offsets they had before. Redo joins them again.
+ *
+ * The moves are kept in a ring of primitive arrays, and the joined
+ * pieces in a second ring of ints, so recording a move never
+ * allocates. When either ring is full the oldest moves are written
+ * over and can no longer be undone.
+ *
+ * The journal is also the log the puzzle in progress is kept with.
+ * Once attached to a JournalStore every move is written through to
+ * it, and the full state of the board is only written at a
+ * checkpoint. replay() then makes the moves since the checkpoint again
+ * on a board restored to it.
+ */
+public class MoveJournal {
+    /**
+     * Flag set if the piece was snapped into place before the move
+     */
+    final static int FLAG_WAS_SNAPPED = 1;
+
+    /**
+     * Flag set if the piece was snapped into place after the move
+     */
+    final static int FLAG_SNAPPED = 2;
+
+    /**
+     * Ints of joined pieces kept for each move the ring holds
+     */
+    final static int JOIN_SPACE = 16;
+
+    /**
+     * Masked index of a slot in the arrays
+     */
+    private final int mask;
+
+    /**
+     * Id of the piece moved in each slot
+     */
+    private final int [] ids;
+
+    /**
+     * Location of the piece before and after each move
+     */
+    private final float [] fromX;
+    private final float [] fromY;
+    private final float [] toX;
+    private final float [] toY;
+
+    /**
+     * Snap flags of each move
+     */
+    private final byte [] flags;
+
+    /**
+     * The clusters joined by the moves, as written by
+     * PuzzleBoard.writeJoins(). The ints of one move are
+     * never split across the end of the ring.
+     */
+    private final int [] joins;
+
+    /**
+     * Where the joined clusters of each move start, counting every
+     * int ever written to joins
+     */
+    private final long [] joinStart;
+
+    /**
+     * Number of ints of joined clusters of each move, 0 if
+     * the move joined nothing
+     */
+    private final int [] joinLength;
+
+    /**
+     * Number of ints written to joins
+     */
+    private long joinHead = 0;
+
+    /**
+     * Number of the oldest move whose joined clusters
+     * have not been written over
+     */
+    private long first = 0;
+
+    /**
+     * Number of moves recorded, including any that can be redone
+     */
+    private long head = 0;
+
+    /**
+     * Number of moves that have been made and not undone
+     */
+    private long cursor = 0;
+
+    /**
+     * Number of the oldest move whose joined clusters may still be
+     * in the ring. Moves before it joined nothing or were written over.
+     */
+    private long joinScan = 0;
+
+    /**
+     * Number of moves made when the board was last checkpointed,
+     * or -1 if the board can no longer be brought up to date from it
+     */
+    private long base = 0;
+
+    /**
+     * Store every change is written through to, or null
+     */
+    private JournalStore store = null;
+
+    /**
+     * Constructor
+     * @param capacity Number of moves kept. Must be a power of two.
+     */
+    public MoveJournal(int capacity) {
+        if(Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two");
+        }
+
+        mask = capacity - 1;
+        ids = new int[capacity];
+        fromX = new float[capacity];
+        fromY = new float[capacity];
+        toX = new float[capacity];
+        toY = new float[capacity];
+        flags = new byte[capacity];
+        joins = new int[capacity * JOIN_SPACE];
+        joinStart = new long[capacity];
+        joinLength = new int[capacity];
+    }
+
+    /**
+     * Record a move. Any moves that were undone can no longer be redone.
+     * @param id Id of the piece that was moved
+     * @param x x location of the piece before the move
+     * @param y y location of the piece before the move
+     * @param wasSnapped true if the piece was snapped into place before the move
+     * @param newX x location of the piece after the move
+     * @param newY y location of the piece after the move
+     * @param snapped true if the piece snapped into place
+     */
+    public void record(int id, float x, float y, boolean wasSnapped, float newX, float newY, boolean snapped) {
+        int i = (int)(cursor & mask);
+        if(cursor < head) {
+            // The moves that could be redone are gone, so
+            // their joined clusters can be written over
+            joinHead = joinStart[i];
+            joinScan = Math.min(joinScan, cursor);
+
+            // So are the moves replay() would undo to get back
+            // to the last checkpoint, if it was after this one
+            if(base > cursor) {
+                base = -1;
+            }
+        }
+
+        ids[i] = id;
+        fromX[i] = x;
+        fromY[i] = y;
+        toX[i] = newX;
+        toY[i] = newY;
+        flags[i] = (byte)((wasSnapped ? FLAG_WAS_SNAPPED : 0) | (snapped ? FLAG_SNAPPED : 0));
+        joinStart[i] = joinHead;
+        joinLength[i] = 0;
+
+        cursor++;
+        head = cursor;
+        save(i);
+    }
+
+    /**
+     * Record a drop that was just made on a board, along with
+     * any clusters it joined
+     * @param board The board the piece was dropped on
+     * @param piece The piece that was dropped
+     * @param x x location of the piece before the move
+     * @param y y location of the piece before the move
+     * @param wasSnapped true if the piece was snapped into place before the move
+     */
+    public <T extends PieceModel> void record(PuzzleBoard<T> board, T piece, float x, float y, boolean wasSnapped) {
+        int length = board.getJoinsLength();
+        if(length > joins.length) {
+            // Too many pieces to write down. The moves before
+            // this one no longer apply once it can't be undone.
+            // Nor can the board be brought up to date from the
+            // last checkpoint, so a new one is needed.
+            clear();
+            base = -1;
+            saveCounters();
+            return;
+        }
+
+        record(piece.getId(), x, y, wasSnapped, piece.getX(), piece.getY(),
+                board.getStore().isSnapped(piece.getId()));
+        if(length == 0) {
+            return;
+        }
+
+        // Start at the beginning of the ring if it does not fit at the end
+        long start = joinHead;
+        int offset = (int)(start % joins.length);
+        if(offset + length > joins.length) {
+            start += joins.length - offset;
+            offset = 0;
+        }
+        board.writeJoins(joins, offset);
+        joinHead = start + length;
+
+        int i = (int)((cursor - 1) & mask);
+        joinStart[i] = start;
+        joinLength[i] = length;
+
+        // Older moves whose joined clusters were written over can no
+        // longer be undone. The joins are in the order of the moves,
+        // so only the moves since the last one looked at are checked.
+        long kept = joinHead - joins.length;
+        joinScan = Math.max(joinScan, oldest());
+        while(joinScan < cursor - 1) {
+            int j = (int)(joinScan & mask);
+            if(joinLength[j] > 0) {
+                if(joinStart[j] >= kept) {
+                    break;
+                }
+                first = joinScan + 1;
+            }
+            joinScan++;
+        }
+
+        if(store != null) {
+            store.putJoins(joins, offset, length);
+        }
+        save(i);
+    }
+
+    /**
+     * Number of the oldest move that can still be undone
+     */
+    private long oldest() {
+        return Math.max(first, head - ids.length);
+    }
+
+    /**
+     * Is there a move that can be undone?
+     * @return true if undo() will do something
+     */
+    public boolean canUndo() {
+        return cursor > oldest();
+    }
+
+    /**
+     * The piece the next undo moves
+     * @return Piece id, or PieceStore.NONE if there is nothing to undo
+     */
+    public int getUndoId() {
+        return canUndo() ? ids[(int)((cursor - 1) & mask)] : PieceStore.NONE;
+    }
+
+    /**
+     * Is there an undone move that can be made again?
+     * @return true if redo() will do something
+     */
+    public boolean canRedo() {
+        return cursor < head;
+    }
+
+    /**
+     * The piece the next redo moves
+     * @return Piece id, or PieceStore.NONE if there is nothing to redo
+     */
+    public int getRedoId() {
+        return canRedo() ? ids[(int)(cursor & mask)] : PieceStore.NONE;
+    }
+
+    /**
+     * Undo the last move, putting the piece and the cluster it was
+     * in back where the piece was picked up. Any clusters it joined
+     * are split off and put back where they were.
+     * @param board The board the move was made on
+     * @return Id of the piece moved back, or PieceStore.NONE if there
+     *         is nothing to undo
+     */
+    public <T extends PieceModel> int undo(PuzzleBoard<T> board) {
+        if(!canUndo()) {
+            return PieceStore.NONE;
+        }
+
+        cursor--;
+        int i = (int)(cursor & mask);
+        T piece = board.getPiece(ids[i]);
+        if(joinLength[i] > 0) {
+            board.split(piece, joins, (int)(joinStart[i] % joins.length));
+        }
+        board.place(piece, fromX[i], fromY[i], (flags[i] & FLAG_WAS_SNAPPED) != 0);
+        saveCounters();
+        return ids[i];
+    }
+
+    /**
+     * Make the last undone move again, joining any clusters it joined
+     * @param board The board the move was made on
+     * @return Id of the piece moved, or PieceStore.NONE if there
+     *         is nothing to redo
+     */
+    public <T extends PieceModel> int redo(PuzzleBoard<T> board) {
+        if(!canRedo()) {
+            return PieceStore.NONE;
+        }
+
+        int i = (int)(cursor & mask);
+        cursor++;
+        T piece = board.getPiece(ids[i]);
+        if(joinLength[i] > 0) {
+            board.rejoin(piece, joins, (int)(joinStart[i] % joins.length));
+        }
+        board.place(piece, toX[i], toY[i], (flags[i] & FLAG_SNAPPED) != 0);
+        saveCounters();
+        return ids[i];
+    }
+
+    /**
+     * Bring a board from the last checkpoint up to date. The moves made
+     * since then are made again, or the moves undone past it are undone
+     * again. The board must be in the state it was in at the checkpoint,
+     * like when it is restored from the copy taken then.
+     * @param board The board
+     * @return false if the moves since the checkpoint are no longer
+     *         kept, which leaves the board as it is
+     */
+    public <T extends PieceModel> boolean replay(PuzzleBoard<T> board) {
+        if(needsCheckpoint()) {
+            return false;
+        }
+
+        long end = cursor;
+        cursor = base;
+        while(cursor > end) {
+            undo(board);
+        }
+        while(cursor < end) {
+            redo(board);
+        }
+        return true;
+    }
+
+    /**
+     * Note that the full state of the board has just been written,
+     * so replay() starts from here
+     */
+    public void checkpoint() {
+        base = cursor;
+        saveCounters();
+    }
+
+    /**
+     * Can replay() no longer bring the board up to date from the last
+     * checkpoint? That is once moves undone past it are replaced by new
+     * ones, or moves after it have been written over. Write the full
+     * state of the board and call checkpoint() then.
+     * @return true if a checkpoint is needed
+     */
+    public boolean needsCheckpoint() {
+        return base < oldest();
+    }
+
+    /**
+     * Forget every move, like after a shuffle
+     * when the moves no longer apply
+     */
+    public void clear() {
+        head = 0;
+        cursor = 0;
+        first = 0;
+        joinHead = 0;
+        joinScan = 0;
+        base = 0;
+        saveCounters();
+    }
+
+    /**
+     * Write every change to the journal through to a store from now on,
+     * so the moves survive the process being killed. The journal takes
+     * the moves the store holds, or starts empty if it holds none.
+     * @param store The store, with the same capacity as the journal
+     */
+    public void attach(JournalStore store) {
+        if(store.getCapacity() != ids.length) {
+            throw new IllegalArgumentException("The store must have the capacity of the journal");
+        }
+
+        this.store = store;
+        if(!store.isRestorable()) {
+            clear();
+            return;
+        }
+
+        store.getMoves(ids, fromX, fromY, toX, toY, flags, joinStart, joinLength, joins);
+        head = store.getHead();
+        cursor = store.getCursor();
+        first = store.getFirst();
+        joinHead = store.getJoinHead();
+        base = store.getBase();
+        joinScan = first;
+    }
+
+    /**
+     * Write a move and the counters through to the store
+     * @param i Slot of the move
+     */
+    private void save(int i) {
+        if(store != null) {
+            store.putMove(i, ids[i], fromX[i], fromY[i], toX[i], toY[i], flags[i], joinStart[i], joinLength[i]);
+            saveCounters();
+        }
+    }
+
+    /**
+     * Write the counters through to the store
+     */
+    private void saveCounters() {
+        if(store != null) {
+            store.putCounters(head, cursor, first, joinHead, base);
+        }
+    }
+
+    /**
+     * Number of moves that can be undone
+     * @return Number of moves
+     */
+    public int getUndoCount() {
+        return (int)(cursor - oldest());
+    }
+}
@@ -0,0 +1,168 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the puzzle area used to find the pieces that
+ * might be under a touch. Each cell holds the pieces whose bounding
+ * box overlaps it, so a hit test only has to look at the few pieces
+ * in one cell instead of every piece in the puzzle.
+ *
+ * Locations are the same relative 0-1 coordinates the puzzle uses.
+ * Pieces can be dragged off of the puzzle, so the grid covers a
+ * margin around it and anything further out lands in the edge cells.
+ */
+public class PieceGrid<T extends PieceModel> {
+    /**
+     * Lowest relative coordinate covered by the grid
+     */
+    final static float GRID_MIN = -0.5f;
+
+    /**
+     * Highest relative coordinate covered by the grid
+     */
+    final static float GRID_MAX = 1.5f;
+
+    /**
+     * Upper limit on the number of cells along each side
+     */
+    final static int MAX_CELLS = 256;
+
+    /**
+     * Number of cells along each side of the grid
+     */
+    private final int cells;
+
+    /**
+     * Size of one cell in relative coordinates
+     */
+    private final float cellSize;
+
+    /**
+     * Width of the completed puzzle image in pixels. Used to
+     * convert piece sizes to relative coordinates.
+     */
+    private final float puzzleWidth;
+
+    /**
+     * The pieces in each cell, row by row
+     */
+    private final ArrayList<ArrayList<T>> grid;
+
+    /**
+     * The range of cells each piece is currently in, four ints for
+     * each piece id: first column, first row, last column, last row.
+     * The first column is -1 if the piece is not in the grid.
+     */
+    private final int [] ranges;
+
+    /**
+     * Constructor. Pieces are added with update().
+     * @param maxPieceSize Largest width or height of a piece in pixels
+     * @param puzzleWidth Width of the completed puzzle image in pixels
+     * @param capacity Number of piece ids
+     */
+    public PieceGrid(int maxPieceSize, int puzzleWidth, int capacity) {
+        this.puzzleWidth = puzzleWidth;
+        ranges = new int[capacity * 4];
+        Arrays.fill(ranges, -1);
+
+        // Make the cells about the size of the largest piece,
+        // so a piece is never in more than four cells.
+        float largest = (float)maxPieceSize / puzzleWidth;
+        int count = largest > 0 ? (int)Math.ceil((GRID_MAX - GRID_MIN) / largest) : 1;
+        cells = Math.max(1, Math.min(MAX_CELLS, count));
+        cellSize = (GRID_MAX - GRID_MIN) / cells;
+
+        grid = new ArrayList<>(cells * cells);
+        for(int i=0; i<cells * cells; i++) {
+            grid.add(new ArrayList<T>());
+        }
+    }
+
+    /**
+     * Update the cells a piece is in after it has moved, or add it
+     * if it is not in the grid yet. This only touches the grid if
+     * the piece has moved into different cells.
+     * @param piece The piece that moved
+     */
+    public void update(T piece) {
+        float halfWid = piece.getWidth() / puzzleWidth / 2;
+        float halfHit = piece.getHeight() / puzzleWidth / 2;
+
+        int col0 = cell(piece.getX() - halfWid);
+        int row0 = cell(piece.getY() - halfHit);
+        int col1 = cell(piece.getX() + halfWid);
+        int row1 = cell(piece.getY() + halfHit);
+
+        int i = piece.getId() * 4;
+        if(ranges[i] == col0 && ranges[i + 1] == row0 &&
+                ranges[i + 2] == col1 && ranges[i + 3] == row1) {
+            // Still in the same cells
+            return;
+        }
+
+        if(ranges[i] >= 0) {
+            for(int r=ranges[i + 1]; r<=ranges[i + 3]; r++) {
+                for(int c=ranges[i]; c<=ranges[i + 2]; c++) {
+                    grid.get(r * cells + c).remove(piece);
+                }
+            }
+        }
+
+        for(int r=row0; r<=row1; r++) {
+            for(int c=col0; c<=col1; c++) {
+                grid.get(r * cells + c).add(piece);
+            }
+        }
+
+        ranges[i] = col0;
+        ranges[i + 1] = row0;
+        ranges[i + 2] = col1;
+        ranges[i + 3] = row1;
+    }
+
+    /**
+     * Get the pieces that might cover a location. The list is
+     * owned by the grid and must not be modified.
+     * @param x X location, relative to the puzzle
+     * @param y Y location, relative to the puzzle
+     * @return Pieces whose bounding box overlaps the cell at x, y
+     */
+    public ArrayList<T> candidates(float x, float y) {
+        return grid.get(cell(y) * cells + cell(x));
+    }
+
+    /**
+     * Add the pieces that might overlap a rectangle to a list. A
+     * piece that spans several cells is added once for each cell.
+     * @param left Left edge, relative to the puzzle
+     * @param top Top edge, relative to the puzzle
+     * @param right Right edge, relative to the puzzle
+     * @param bottom Bottom edge, relative to the puzzle
+     * @param out List the pieces are added to
+     */
+    public void query(float left, float top, float right, float bottom, ArrayList<T> out) {
+        int col1 = cell(right);
+        int row1 = cell(bottom);
+        for(int r=cell(top); r<=row1; r++) {
+            for(int c=cell(left); c<=col1; c++) {
+                ArrayList<T> cell = grid.get(r * cells + c);
+                for(int i=0; i<cell.size(); i++) {
+                    out.add(cell.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert a relative coordinate to a cell column or row
+     * @param v Relative coordinate
+     * @return Cell index, clamped to the grid
+     */
+    private int cell(float v) {
+        int c = (int)Math.floor((v - GRID_MIN) / cellSize);
+        return Math.max(0, Math.min(cells - 1, c));
+    }
+}
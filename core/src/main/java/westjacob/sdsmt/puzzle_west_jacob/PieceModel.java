@@ -0,0 +1,212 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+/**
+ * The part of a puzzle piece that does not depend on how it is drawn:
+ * where it belongs, its shape for hit testing and its id. PuzzlePiece
+ * adds the image on top of this.
+ *
+ * Once a piece is on a board, where it is, whether it is snapped and
+ * its drawing order are kept by the PieceStore of the board, and this
+ * object just looks them up by id. Its location comes from the cluster
+ * it is in, so moving the piece moves every piece joined to it. Until
+ * then the piece is at its final location.
+ */
+public class PieceModel {
+    /**
+     * Mask of the pixels in the piece image that are not transparent
+     */
+    private final HitMask mask;
+
+    /**
+     * x location when the puzzle is solved. We use relative
+     * x locations in the range 0-1 for the center of the piece.
+     */
+    private final float finalX;
+
+    /**
+     * y location when the puzzle is solved
+     */
+    private final float finalY;
+
+    /**
+     * We consider a piece to be in the right location if within
+     * this distance.
+     */
+    final static float SNAP_DISTANCE = 0.05f;
+
+    /**
+     * How close this piece must be to snap into place. Small pieces
+     * use a smaller distance than SNAP_DISTANCE.
+     */
+    private final float snapDistance;
+
+    /**
+     * The puzzle piece ID
+     */
+    private final int id;
+
+    /**
+     * Store of the board the piece is on, or null if
+     * it is not on a board yet
+     */
+    private PieceStore store = null;
+
+    /**
+     * Constructor
+     * @param mask Mask of the pixels in the piece image
+     * @param id The puzzle piece ID
+     * @param finalX x location when the puzzle is solved
+     * @param finalY y location when the puzzle is solved
+     * @param snapDistance How close the piece must be to snap into place
+     */
+    public PieceModel(HitMask mask, int id, float finalX, float finalY, float snapDistance) {
+        this.mask = mask;
+        this.id = id;
+        this.finalX = finalX;
+        this.finalY = finalY;
+        this.snapDistance = snapDistance;
+    }
+
+    public float getX() {
+        return store != null ? store.getX(id) : finalX;
+    }
+
+    /**
+     * Set the x location. The whole cluster
+     * the piece is in moves with it.
+     * @param x New x location
+     */
+    public void setX(float x) {
+        store.setLocation(id, x, getY());
+    }
+
+    public float getY() {
+        return store != null ? store.getY(id) : finalY;
+    }
+
+    /**
+     * Set the y location. The whole cluster
+     * the piece is in moves with it.
+     * @param y New y location
+     */
+    public void setY(float y) {
+        store.setLocation(id, getX(), y);
+    }
+
+    /**
+     * Put the piece on a board at a location, on top of the others
+     * @param store The store of the board
+     * @param x x location
+     * @param y y location
+     * @param puzzleWidth Width of the completed puzzle image in pixels
+     */
+    void attach(PieceStore store, float x, float y, float puzzleWidth) {
+        store.add(id, x, y, finalX, finalY, getWidth() / puzzleWidth, getHeight() / puzzleWidth, snapDistance);
+        this.store = store;
+    }
+
+    public float getFinalX() {
+        return finalX;
+    }
+
+    public float getFinalY() {
+        return finalY;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public float getSnapDistance() {
+        return snapDistance;
+    }
+
+    public int getZ() {
+        return store != null ? store.getZ(id) : 0;
+    }
+
+    /**
+     * Set the z value without moving the piece in the z order. The
+     * board puts the pieces in order when PuzzleBoard.restored() is
+     * called.
+     * @param z New z value
+     */
+    public void setZ(int z) {
+        store.setZ(id, z);
+    }
+
+    /**
+     * Width of the piece image in pixels
+     * @return width in pixels
+     */
+    public int getWidth() {
+        return mask.getWidth();
+    }
+
+    /**
+     * Height of the piece image in pixels
+     * @return height in pixels
+     */
+    public int getHeight() {
+        return mask.getHeight();
+    }
+
+    /**
+     * Test to see if we have touched a puzzle piece
+     * @param testX X location as a normalized coordinate (0 to 1)
+     * @param testY Y location as a normalized coordinate (0 to 1)
+     * @param puzzleSize the size of the puzzle in pixels
+     * @param scaleFactor the amount to scale a piece by
+     * @return true if we hit the piece
+     */
+    public boolean hit(float testX, float testY, int puzzleSize, float scaleFactor) {
+        // Make relative to the location and size to the piece size
+        int pX = (int)((testX - getX()) * puzzleSize / scaleFactor) + mask.getWidth() / 2;
+        int pY = (int)((testY - getY()) * puzzleSize / scaleFactor) + mask.getHeight() / 2;
+
+        // Are we touching actual picture? The mask
+        // is false for anything outside the piece rectangle.
+        return mask.isSet(pX, pY);
+    }
+
+    /**
+     * Move the puzzle piece by dx, dy. The whole cluster
+     * the piece is in moves with it.
+     * @param dx x amount to move
+     * @param dy y amount to move
+     */
+    public void move(float dx, float dy) {
+        store.move(id, dx, dy);
+    }
+
+    /**
+     * If we are within snapDistance of the correct
+     * answer, snap to the correct answer exactly.
+     * @return true if the piece snapped into place
+     */
+    public boolean maybeSnap() {
+        return store.maybeSnap(id);
+    }
+
+    /**
+     * Move the piece to its final location
+     */
+    public void snap() {
+        store.snap(id);
+    }
+
+    /**
+     * Mark the piece as no longer snapped in place, without moving it
+     */
+    public void unsnap() {
+        store.unsnap(id);
+    }
+
+    /**
+     * Determine if this piece is snapped in place
+     * @return true if snapped into place
+     */
+    public boolean isSnapped() {
+        return store != null && store.isSnapped(id);
+    }
+}
@@ -0,0 +1,203 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Places the pieces of a board for a shuffle.
+ *
+ * Every random number comes from the seed and the id of the piece
+ * alone, mixed the same way SplittableRandom does, so it does not
+ * matter what order the pieces are placed in or how many threads
+ * place them. The same seed always gives the same layout.
+ *
+ * Pieces are either dropped anywhere on the board, or spread out so
+ * each piece takes the spot of some other piece. Spread pieces sit
+ * one to a cell like the solved puzzle, so they hardly overlap, and
+ * no piece starts on its own spot. A puzzle of one piece has no other
+ * spot, so that piece is dropped off its own spot instead.
+ */
+public class PieceShuffler {
+    /**
+     * Number of pieces placed by each task
+     */
+    final static int CHUNK = 1024;
+
+    /**
+     * How far a spread piece may land from the middle of
+     * the spot it takes, as a fraction of its half size
+     */
+    final static float JITTER = 0.1f;
+
+    /**
+     * Step between the states of SplitMix64
+     */
+    private final static long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Runs the tasks that place the pieces, or null to
+     * place every piece on the calling thread
+     */
+    private final Executor executor;
+
+    /**
+     * Constructor
+     * @param executor Runs the tasks that place the pieces, or null
+     *                 to place every piece on the calling thread
+     */
+    public PieceShuffler(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * A random number from a seed and an index, the way the
+     * index-th number from a SplittableRandom would be made
+     * @param seed The seed
+     * @param index The index
+     * @return Number from 0 up to but not including 1
+     */
+    static float random(long seed, long index) {
+        return (mix(seed + (index + 1) * GOLDEN_GAMMA) >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * The SplitMix64 mixing function
+     * @param z Value to mix
+     * @return Mixed value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Random x location on the board for a piece
+     * @param seed The seed
+     * @param id The piece id
+     * @return x location, 0 to 1
+     */
+    static float randomX(long seed, int id) {
+        return random(seed, 2L * id);
+    }
+
+    /**
+     * Random y location on the board for a piece
+     * @param seed The seed
+     * @param id The piece id
+     * @return y location, 0 to 1
+     */
+    static float randomY(long seed, int id) {
+        return random(seed, 2L * id + 1);
+    }
+
+    /**
+     * Move every piece in a store to a new location. Every piece must
+     * be in a cluster of its own. Only the store is changed, so the
+     * caller has to bring anything else, like a grid, up to date.
+     * @param store The pieces
+     * @param seed Seed for the layout
+     * @param spread true to spread the pieces out, false
+     *               to drop them anywhere on the board
+     */
+    public void shuffle(final PieceStore store, final long seed, final boolean spread) {
+        final int count = store.getCount();
+        final int [] ids = new int[count];
+        int n = 0;
+        for(int id=store.getBottom(); id!=PieceStore.NONE; id=store.above(id)) {
+            ids[n++] = id;
+        }
+
+        if(spread) {
+            // Put the pieces in a random order by sorting on a
+            // hash of the seed and the id, kept in the high bits
+            long [] keys = new long[count];
+            for(int i=0; i<count; i++) {
+                keys[i] = (mix(seed ^ ids[i]) & 0xffffffff00000000L) | ids[i];
+            }
+            Arrays.sort(keys);
+            for(int i=0; i<count; i++) {
+                ids[i] = (int)keys[i];
+            }
+        }
+
+        final int chunks = (count + CHUNK - 1) / CHUNK;
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(chunks);
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                int chunk;
+                while((chunk = next.getAndIncrement()) < chunks) {
+                    int end = Math.min(count, (chunk + 1) * CHUNK);
+                    for(int i=chunk * CHUNK; i<end; i++) {
+                        place(store, seed, spread, ids, i);
+                    }
+                    done.countDown();
+                }
+            }
+        };
+
+        // Helpers take chunks until there are none left, and so does
+        // this thread. A helper that starts late finds nothing to do,
+        // so we never wait for one that is stuck behind other work.
+        if(executor != null) {
+            for(int h=1; h<chunks; h++) {
+                executor.execute(worker);
+            }
+        }
+        worker.run();
+
+        boolean interrupted = false;
+        while(true) {
+            try {
+                done.await();
+                break;
+            } catch(InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Place one piece
+     * @param store The pieces
+     * @param seed Seed for the layout
+     * @param spread true to spread the pieces out
+     * @param ids The pieces, in random order if they are spread
+     * @param i Index of the piece in ids
+     */
+    private static void place(PieceStore store, long seed, boolean spread, int [] ids, int i) {
+        int id = ids[i];
+        if(!spread) {
+            store.setLocation(id, randomX(seed, id), randomY(seed, id));
+            return;
+        }
+
+        if(ids.length < 2) {
+            // There is no other spot to take, so drop it anywhere
+            // at least half its size away from its own spot
+            float x = randomX(seed, id);
+            float fx = store.getFinalX(id);
+            float half = store.getHalfWidth(id);
+            if(Math.abs(x - fx) < half) {
+                x = x < fx ? fx - half : fx + half;
+            }
+            store.setLocation(id, x, randomY(seed, id));
+            return;
+        }
+
+        // Take the spot of the next piece in the random order. This
+        // goes around in one big loop, so no piece gets its own spot.
+        int spot = ids[(i + 1) % ids.length];
+        float dx = (randomX(seed, id) * 2 - 1) * JITTER * store.getHalfWidth(id);
+        float dy = (randomY(seed, id) * 2 - 1) * JITTER * store.getHalfHeight(id);
+        store.setLocation(id, store.getFinalX(spot) + dx, store.getFinalY(spot) + dy);
+    }
+}
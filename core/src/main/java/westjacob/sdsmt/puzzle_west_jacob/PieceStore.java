@@ -0,0 +1,460 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import java.util.Arrays;
+
+/**
+ * The state of every piece on a board, kept in primitive arrays
+ * indexed by piece id instead of in the piece objects. Loops over the
+ * pieces only touch the arrays they need and never allocate.
+ *
+ * The location of a piece is its final location plus the offset of
+ * the cluster it is in, so the locations themselves are kept by the
+ * ClusterSet. This keeps the rest: where each piece belongs, how big
+ * it is, whether it is snapped and its z value.
+ *
+ * The z order is a doubly linked list of piece ids from the bottom to
+ * the top, so a piece is moved to the top or bottom without shifting
+ * any others. The z values only ever grow at the top and shrink at the
+ * bottom, so comparing them still gives the drawing order.
+ */
+public class PieceStore {
+    /**
+     * Id used for no piece at the ends of the z order
+     */
+    public final static int NONE = -1;
+
+    /**
+     * The clusters, which keep the piece locations
+     */
+    private final ClusterSet clusters;
+
+    /**
+     * Location of each piece when the puzzle is solved
+     */
+    private final float [] finalX;
+    private final float [] finalY;
+
+    /**
+     * Half the width and height of each piece, relative to the puzzle
+     */
+    private final float [] halfWid;
+    private final float [] halfHit;
+
+    /**
+     * How close each piece must be to snap into place
+     */
+    private final float [] snapDistance;
+
+    /**
+     * Has each piece been added?
+     */
+    private final boolean [] added;
+
+    /**
+     * Is each piece snapped into place?
+     */
+    private final boolean [] snapped;
+
+    /**
+     * Drawing order of each piece. Pieces with a larger
+     * value are drawn on top of pieces with a smaller one.
+     */
+    private final int [] z;
+
+    /**
+     * The piece just above and below each piece in the z order
+     */
+    private final int [] above;
+    private final int [] below;
+
+    /**
+     * Pieces at the bottom and top of the z order
+     */
+    private int bottom = NONE;
+    private int top = NONE;
+
+    /**
+     * Number of pieces added
+     */
+    private int count = 0;
+
+    /**
+     * Z value of the piece on top of all the others
+     */
+    private int topZ = -1;
+
+    /**
+     * Z value of the piece below all the others
+     */
+    private int bottomZ = 0;
+
+    /**
+     * Scratch array of z values and ids, for putting
+     * pieces in z order
+     */
+    private final long [] keys;
+
+    /**
+     * Scratch arrays of locations used by ungroup()
+     */
+    private final float [] savedX;
+    private final float [] savedY;
+
+    /**
+     * Constructor
+     * @param clusters The clusters of the board
+     * @param capacity Number of piece ids
+     */
+    public PieceStore(ClusterSet clusters, int capacity) {
+        this.clusters = clusters;
+        finalX = new float[capacity];
+        finalY = new float[capacity];
+        halfWid = new float[capacity];
+        halfHit = new float[capacity];
+        snapDistance = new float[capacity];
+        added = new boolean[capacity];
+        snapped = new boolean[capacity];
+        z = new int[capacity];
+        above = new int[capacity];
+        below = new int[capacity];
+        keys = new long[capacity];
+        savedX = new float[capacity];
+        savedY = new float[capacity];
+    }
+
+    /**
+     * Add a piece on top of the others, in a cluster of its own
+     * at a location
+     * @param id The piece id
+     * @param x x location
+     * @param y y location
+     * @param fx x location when the puzzle is solved
+     * @param fy y location when the puzzle is solved
+     * @param wid Width of the piece, relative to the puzzle
+     * @param hit Height of the piece, relative to the puzzle
+     * @param distance How close the piece must be to snap into place
+     */
+    public void add(int id, float x, float y, float fx, float fy, float wid, float hit, float distance) {
+        finalX[id] = fx;
+        finalY[id] = fy;
+        halfWid[id] = wid / 2;
+        halfHit[id] = hit / 2;
+        snapDistance[id] = distance;
+        snapped[id] = false;
+        added[id] = true;
+        reset(id, x, y);
+
+        z[id] = ++topZ;
+        link(id);
+        count++;
+    }
+
+    /**
+     * Put a piece in a cluster of its own at a location
+     */
+    private void reset(int id, float x, float y) {
+        clusters.reset(id, x - finalX[id], y - finalY[id],
+                finalX[id] - halfWid[id], finalY[id] - halfHit[id],
+                finalX[id] + halfWid[id], finalY[id] + halfHit[id]);
+    }
+
+    /**
+     * Number of pieces added
+     * @return Number of pieces
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public float getX(int id) {
+        return finalX[id] + clusters.getOffsetX(id);
+    }
+
+    public float getY(int id) {
+        return finalY[id] + clusters.getOffsetY(id);
+    }
+
+    public float getFinalX(int id) {
+        return finalX[id];
+    }
+
+    public float getFinalY(int id) {
+        return finalY[id];
+    }
+
+    /**
+     * Half the width of a piece
+     * @param id The piece id
+     * @return Half width, relative to the puzzle
+     */
+    public float getHalfWidth(int id) {
+        return halfWid[id];
+    }
+
+    /**
+     * Half the height of a piece
+     * @param id The piece id
+     * @return Half height, relative to the puzzle
+     */
+    public float getHalfHeight(int id) {
+        return halfHit[id];
+    }
+
+    public float getSnapDistance(int id) {
+        return snapDistance[id];
+    }
+
+    public boolean isSnapped(int id) {
+        return snapped[id];
+    }
+
+    /**
+     * Move a piece and the cluster it is in to a location
+     * @param id The piece id
+     * @param x New x location
+     * @param y New y location
+     */
+    public void setLocation(int id, float x, float y) {
+        clusters.setOffset(id, x - finalX[id], y - finalY[id]);
+        snapped[id] = false;
+    }
+
+    /**
+     * Move a piece and the cluster it is in
+     * @param id The piece id
+     * @param dx x amount to move
+     * @param dy y amount to move
+     */
+    public void move(int id, float dx, float dy) {
+        clusters.move(id, dx, dy);
+        snapped[id] = false;
+    }
+
+    /**
+     * If a piece is within its snap distance of its final
+     * location, move it and its cluster there exactly.
+     * @param id The piece id
+     * @return true if the piece snapped into place
+     */
+    public boolean maybeSnap(int id) {
+        if(Math.abs(clusters.getOffsetX(id)) < snapDistance[id] &&
+                Math.abs(clusters.getOffsetY(id)) < snapDistance[id]) {
+            snap(id);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Move a piece and its cluster to their final location
+     * @param id The piece id
+     */
+    public void snap(int id) {
+        clusters.setOffset(id, 0, 0);
+        snapped[id] = true;
+    }
+
+    /**
+     * Mark a piece as no longer snapped in place, without moving it
+     * @param id The piece id
+     */
+    public void unsnap(int id) {
+        snapped[id] = false;
+    }
+
+    public int getZ(int id) {
+        return z[id];
+    }
+
+    /**
+     * Set the z value of a piece without moving it in the z order.
+     * Once every piece has its z value, sortByZ() puts them in order.
+     * @param id The piece id
+     * @param value New z value
+     */
+    public void setZ(int id, int value) {
+        z[id] = value;
+    }
+
+    /**
+     * The piece at the bottom of the z order
+     * @return Piece id, or NONE if there are no pieces
+     */
+    public int getBottom() {
+        return bottom;
+    }
+
+    /**
+     * The piece at the top of the z order
+     * @return Piece id, or NONE if there are no pieces
+     */
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * The piece just above a piece in the z order
+     * @param id The piece id
+     * @return Piece id, or NONE if the piece is on top
+     */
+    public int above(int id) {
+        return above[id];
+    }
+
+    /**
+     * The piece just below a piece in the z order
+     * @param id The piece id
+     * @return Piece id, or NONE if the piece is on the bottom
+     */
+    public int below(int id) {
+        return below[id];
+    }
+
+    /**
+     * Move the cluster a piece is in to the top of the z order,
+     * keeping the order of its pieces
+     * @param id The piece id
+     */
+    public void toTop(int id) {
+        int n = clusterByZ(id);
+        for(int i=0; i<n; i++) {
+            int member = (int)keys[i];
+            unlink(member);
+            z[member] = ++topZ;
+            link(member);
+        }
+    }
+
+    /**
+     * Move the cluster a piece is in to the bottom of the z order,
+     * keeping the order of its pieces
+     * @param id The piece id
+     */
+    public void toBottom(int id) {
+        int n = clusterByZ(id);
+        for(int i=n-1; i>=0; i--) {
+            int member = (int)keys[i];
+            unlink(member);
+            z[member] = --bottomZ;
+
+            above[member] = bottom;
+            below[member] = NONE;
+            if(bottom != NONE) {
+                below[bottom] = member;
+            } else {
+                top = member;
+            }
+            bottom = member;
+        }
+    }
+
+    /**
+     * Put the pieces of a cluster in keys from the bottom to the top.
+     * Each key has the z value in the high bits and the id in the low.
+     * @param id A piece in the cluster
+     * @return Number of pieces in the cluster
+     */
+    private int clusterByZ(int id) {
+        int n = 0;
+        int member = id;
+        do {
+            keys[n++] = ((long)z[member] << 32) | member;
+            member = clusters.next(member);
+        } while(member != id);
+
+        if(n > 1) {
+            Arrays.sort(keys, 0, n);
+        }
+        return n;
+    }
+
+    /**
+     * Put every piece back in order of the z values they have,
+     * after they have been set with setZ()
+     */
+    public void sortByZ() {
+        int n = 0;
+        for(int id=0; id<z.length; id++) {
+            if(added[id]) {
+                keys[n++] = ((long)z[id] << 32) | id;
+            }
+        }
+        Arrays.sort(keys, 0, n);
+
+        bottom = NONE;
+        top = NONE;
+        for(int i=0; i<n; i++) {
+            link((int)keys[i]);
+        }
+
+        if(n > 0) {
+            bottomZ = z[bottom];
+            topZ = z[top];
+        }
+    }
+
+    /**
+     * Break up every cluster, leaving the pieces where they are
+     */
+    public void ungroup() {
+        // Every location depends on the cluster offsets,
+        // so read them all before changing any
+        for(int id=bottom; id!=NONE; id=above[id]) {
+            savedX[id] = getX(id);
+            savedY[id] = getY(id);
+        }
+
+        for(int id=bottom; id!=NONE; id=above[id]) {
+            reset(id, savedX[id], savedY[id]);
+        }
+    }
+
+    /**
+     * Break up the cluster some pieces are in, leaving them where
+     * they are. Every piece of the cluster must be given.
+     * @param ids The pieces
+     * @param n Number of pieces in ids
+     */
+    public void ungroup(int [] ids, int n) {
+        for(int i=0; i<n; i++) {
+            savedX[ids[i]] = getX(ids[i]);
+            savedY[ids[i]] = getY(ids[i]);
+        }
+
+        for(int i=0; i<n; i++) {
+            reset(ids[i], savedX[ids[i]], savedY[ids[i]]);
+        }
+    }
+
+    /**
+     * Put a piece on top of the z order
+     */
+    private void link(int id) {
+        below[id] = top;
+        above[id] = NONE;
+        if(top != NONE) {
+            above[top] = id;
+        } else {
+            bottom = id;
+        }
+        top = id;
+    }
+
+    /**
+     * Take a piece out of the z order
+     */
+    private void unlink(int id) {
+        if(below[id] != NONE) {
+            above[below[id]] = above[id];
+        } else {
+            bottom = above[id];
+        }
+
+        if(above[id] != NONE) {
+            below[above[id]] = below[id];
+        } else {
+            top = below[id];
+        }
+    }
+}
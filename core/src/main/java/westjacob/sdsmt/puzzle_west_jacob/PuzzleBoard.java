@@ -0,0 +1,780 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * The pieces of a puzzle and the rules for moving them around, without
+ * anything about how they are drawn. This keeps the pieces in z order,
+ * finds the piece under a touch, snaps pieces into place and counts
+ * how many are done.
+ *
+ * The state of the pieces is kept in a PieceStore, which also keeps
+ * the z order. Pieces that snap into place go to the bottom, so the
+ * snapped pieces are always a prefix of the z order, and a piece that
+ * is picked up goes to the top.
+ *
+ * Pieces that are dropped next to a piece they belong beside join it
+ * in a cluster. A cluster is picked up, moved and dropped as a unit,
+ * and moving it only changes the one offset kept for the cluster.
+ *
+ * @param <T> The kind of piece
+ */
+public class PuzzleBoard<T extends PieceModel> {
+    /**
+     * How close two pieces must line up to be joined when a
+     * saved puzzle is restored. Saved locations are rounded,
+     * so they are not exactly equal.
+     */
+    final static float JOIN_TOLERANCE = 2f / PuzzleSnapshot.QUANTUM;
+
+    /**
+     * Collection of puzzle pieces, in the order they were added
+     */
+    private final ArrayList<T> pieces;
+
+    /**
+     * Location, snapping and z order of the pieces
+     */
+    private final PieceStore store;
+
+    /**
+     * The pieces by id
+     */
+    private final ArrayList<T> byId;
+
+    /**
+     * Grid used to find the pieces under a touch
+     */
+    private final PieceGrid<T> grid;
+
+    /**
+     * The clusters of joined pieces
+     */
+    private final ClusterSet clusters;
+
+    /**
+     * Is each piece, by id, part of a cluster being dragged?
+     */
+    private final boolean [] held;
+
+    /**
+     * Number of clusters of more than one piece being dragged
+     */
+    private int heldGroups = 0;
+
+    /**
+     * A piece in each cluster of more than one piece being dragged
+     */
+    private final int [] heldGroupIds;
+
+    /**
+     * Scratch bounding box of a cluster
+     */
+    private final float [] box = new float[4];
+
+    /**
+     * Number of columns of pieces. Used to find the neighbours of a piece.
+     */
+    private final int columns;
+
+    /**
+     * Number of rows of pieces
+     */
+    private final int rows;
+
+    /**
+     * Width of the completed puzzle image in pixels
+     */
+    private final float puzzleWidth;
+
+    /**
+     * Number of pieces snapped into place
+     */
+    private int snappedCount = 0;
+
+    /**
+     * Scratch array of the open edges of a cluster
+     */
+    private final int [] edges;
+
+    /**
+     * The clusters joined by the last drop, as they were before it.
+     * The pieces of each cluster, one cluster after another, with
+     * the dropped cluster first.
+     */
+    private final int [] joinedIds;
+
+    /**
+     * Index in joinedIds of the first piece of each joined cluster
+     */
+    private final int [] joinedStart;
+
+    /**
+     * Offset of each joined cluster before the drop
+     */
+    private final float [] joinedX;
+    private final float [] joinedY;
+
+    /**
+     * Number of clusters the last drop joined together, counting
+     * the dropped cluster, or 0 if it did not join anything
+     */
+    private int joined = 0;
+
+    /**
+     * Number of pieces in joinedIds
+     */
+    private int joinedCount = 0;
+
+    /**
+     * Scratch array of the pieces of a cluster being split
+     */
+    private final int [] splitIds;
+
+    /**
+     * Has each piece of a cluster being split gone to a part already?
+     */
+    private final boolean [] splitOff;
+
+    /**
+     * Constructor
+     * @param maxPieceSize Largest width or height of a piece in pixels
+     * @param puzzleWidth Width of the completed puzzle image in pixels
+     * @param columns Number of columns of pieces
+     * @param rows Number of rows of pieces
+     */
+    public PuzzleBoard(int maxPieceSize, int puzzleWidth, int columns, int rows) {
+        int count = columns * rows;
+        this.columns = columns;
+        this.rows = rows;
+        this.puzzleWidth = puzzleWidth;
+        pieces = new ArrayList<>(count);
+        byId = new ArrayList<>(Collections.<T>nCopies(count, null));
+        grid = new PieceGrid<>(maxPieceSize, puzzleWidth, count);
+        clusters = new ClusterSet(columns, rows);
+        store = new PieceStore(clusters, count);
+        held = new boolean[count];
+        heldGroupIds = new int[count];
+        edges = new int[count * 4];
+        joinedIds = new int[count];
+        joinedStart = new int[count];
+        joinedX = new float[count];
+        joinedY = new float[count];
+        splitIds = new int[count];
+        splitOff = new boolean[count];
+    }
+
+    /**
+     * The pieces, in the order they were added. The list is owned by
+     * the board. Use getStore() to go through them in z order.
+     * @return The pieces
+     */
+    public ArrayList<T> getPieces() {
+        return pieces;
+    }
+
+    /**
+     * Get the pieces in z order
+     * @param out List the pieces are put in, bottom to top. It is cleared first.
+     */
+    public void getOrdered(ArrayList<T> out) {
+        out.clear();
+        for(int id=store.getBottom(); id!=PieceStore.NONE; id=store.above(id)) {
+            out.add(byId.get(id));
+        }
+    }
+
+    /**
+     * Get a piece by id
+     * @param id The piece id
+     * @return The piece, or null if it has not been added
+     */
+    public T getPiece(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Number of pieces on the board
+     * @return Number of pieces
+     */
+    public int getCount() {
+        return store.getCount();
+    }
+
+    /**
+     * The state and z order of the pieces, by id
+     * @return The store
+     */
+    public PieceStore getStore() {
+        return store;
+    }
+
+    /**
+     * The grid used to find pieces by location
+     * @return The grid
+     */
+    public PieceGrid<T> getGrid() {
+        return grid;
+    }
+
+    /**
+     * Add a piece at a random location on top of the others. The
+     * location only depends on the seed and the piece id, so pieces
+     * added in any order end up in the same places.
+     * @param piece The new piece, with an id less than columns * rows
+     * @param seed Seed for the location
+     */
+    public void add(T piece, long seed) {
+        float x = PieceShuffler.randomX(seed, piece.getId());
+        float y = PieceShuffler.randomY(seed, piece.getId());
+        piece.attach(store, x, y, puzzleWidth);
+        pieces.add(piece);
+        byId.set(piece.getId(), piece);
+        grid.update(piece);
+    }
+
+    /**
+     * Find the piece in front at a location. The pieces of a held
+     * cluster are not in the grid cells they have been dragged into,
+     * so those are checked on their own.
+     * @param x X location, relative to the puzzle
+     * @param y Y location, relative to the puzzle
+     * @param puzzleSize the size of the puzzle in pixels
+     * @param scaleFactor the amount to scale a piece by
+     * @return The piece, or null if there is no piece there
+     */
+    public T pieceAt(float x, float y, int puzzleSize, float scaleFactor) {
+        // Check only the pieces that might be under the touch
+        // and keep the one in front
+        T front = null;
+        ArrayList<T> candidates = grid.candidates(x, y);
+        for(int i=0; i<candidates.size(); i++) {
+            T piece = candidates.get(i);
+            if((front == null || store.getZ(piece.getId()) > store.getZ(front.getId())) &&
+                    piece.hit(x, y, puzzleSize, scaleFactor)) {
+                front = piece;
+            }
+        }
+
+        for(int g=0; g<heldGroups; g++) {
+            int id = heldGroupIds[g];
+            clusters.getBounds(id, box);
+            if(x < box[0] || x > box[2] || y < box[1] || y > box[3]) {
+                continue;
+            }
+
+            int member = id;
+            do {
+                T piece = byId.get(member);
+                if((front == null || store.getZ(member) > store.getZ(front.getId())) &&
+                        piece.hit(x, y, puzzleSize, scaleFactor)) {
+                    front = piece;
+                }
+                member = clusters.next(member);
+            } while(member != id);
+        }
+
+        return front;
+    }
+
+    /**
+     * Pick up a piece and the cluster it is in. The cluster is moved
+     * on top of all the other pieces and is no longer snapped into place.
+     * @param piece The piece
+     * @return true if the pieces were snapped into place before
+     */
+    public boolean pickUp(T piece) {
+        boolean wasSnapped = false;
+        int id = piece.getId();
+        do {
+            held[id] = true;
+            if(store.isSnapped(id)) {
+                store.unsnap(id);
+                snappedCount--;
+                wasSnapped = true;
+            }
+            id = clusters.next(id);
+        } while(id != piece.getId());
+
+        if(clusters.size(id) > 1) {
+            heldGroupIds[heldGroups++] = piece.getId();
+        }
+
+        if(store.getTop() != id || clusters.size(id) > 1) {
+            store.toTop(id);
+        }
+
+        return wasSnapped;
+    }
+
+    /**
+     * Move a piece and the cluster it is in. A single piece is kept
+     * up to date in the grid. A cluster only has its offset changed,
+     * and its pieces are put in the grid when it is dropped.
+     * @param piece The piece
+     * @param dx x amount to move
+     * @param dy y amount to move
+     */
+    public void move(T piece, float dx, float dy) {
+        if(clusters.size(piece.getId()) > 1) {
+            clusters.move(piece.getId(), dx, dy);
+            return;
+        }
+
+        store.move(piece.getId(), dx, dy);
+        grid.update(piece);
+    }
+
+    /**
+     * Drop a piece and the cluster it is in. If it is close enough
+     * to its final location it snaps into place and goes below all
+     * of the other pieces. If not, it joins any piece it belongs
+     * beside that it was dropped close to.
+     * @param piece The piece
+     * @return true if the pieces snapped into place
+     */
+    public boolean drop(T piece) {
+        joined = 0;
+        joinedCount = 0;
+
+        int size = clusters.size(piece.getId());
+        if(size > 1 && held[piece.getId()]) {
+            // Take it out of the held clusters
+            int root = clusters.find(piece.getId());
+            for(int g=0; g<heldGroups; g++) {
+                if(clusters.find(heldGroupIds[g]) == root) {
+                    heldGroupIds[g] = heldGroupIds[--heldGroups];
+                    break;
+                }
+            }
+        }
+
+        int id = piece.getId();
+        do {
+            held[id] = false;
+            id = clusters.next(id);
+        } while(id != piece.getId());
+
+        if(store.maybeSnap(id)) {
+            // The whole cluster is now in place
+            do {
+                store.snap(id);
+                grid.update(byId.get(id));
+                id = clusters.next(id);
+            } while(id != piece.getId());
+
+            snappedCount += size;
+            store.toBottom(id);
+            return true;
+        }
+
+        join(piece);
+
+        id = piece.getId();
+        do {
+            grid.update(byId.get(id));
+            id = clusters.next(id);
+        } while(id != piece.getId());
+
+        return false;
+    }
+
+    /**
+     * Put a piece and the cluster it is in at a location, the way an
+     * undo does. Unlike a drop nothing is joined. The cluster goes to
+     * the bottom if it is snapped into place and to the top if not.
+     * The cluster must not be held.
+     * @param piece The piece
+     * @param x New x location of the piece
+     * @param y New y location of the piece
+     * @param snap true to snap the cluster into place instead
+     */
+    public void place(T piece, float x, float y, boolean snap) {
+        int id = piece.getId();
+        do {
+            if(store.isSnapped(id)) {
+                store.unsnap(id);
+                snappedCount--;
+            }
+            id = clusters.next(id);
+        } while(id != piece.getId());
+
+        if(snap) {
+            do {
+                store.snap(id);
+                id = clusters.next(id);
+            } while(id != piece.getId());
+
+            snappedCount += clusters.size(id);
+            store.toBottom(id);
+        } else {
+            store.setLocation(id, x, y);
+            store.toTop(id);
+        }
+
+        do {
+            grid.update(byId.get(id));
+            id = clusters.next(id);
+        } while(id != piece.getId());
+    }
+
+    /**
+     * Join a dropped cluster to any neighbouring loose piece that is
+     * lined up with it closely enough. Only the open edges of the
+     * cluster are checked, which for a big cluster is only the pieces
+     * around its outside.
+     * @param piece A piece in the dropped cluster
+     */
+    private void join(T piece) {
+        // Joining changes the list of open edges, so work
+        // from a copy of the edges we started with.
+        int count = clusters.openEdges(piece.getId(), edges);
+        for(int i=0; i<count; i++) {
+            tryJoin(byId.get(edges[i] / 4), clusters.across(edges[i]));
+        }
+    }
+
+    /**
+     * Join a piece to a neighbour if they are lined up
+     * @param member The piece that was dropped
+     * @param otherId Id of its neighbour
+     */
+    private void tryJoin(T member, int otherId) {
+        T other = byId.get(otherId);
+        if(other == null || store.isSnapped(otherId) || held[otherId] ||
+                clusters.find(otherId) == clusters.find(member.getId())) {
+            return;
+        }
+
+        float distance = member.getSnapDistance();
+        if(Math.abs(clusters.getOffsetX(member.getId()) - clusters.getOffsetX(otherId)) < distance &&
+                Math.abs(clusters.getOffsetY(member.getId()) - clusters.getOffsetY(otherId)) < distance) {
+            // Remember the clusters as they were, so an undo can
+            // split them apart again
+            if(joined == 0) {
+                addJoined(member.getId());
+            }
+            addJoined(otherId);
+
+            // The dropped pieces move onto the piece that was there
+            clusters.union(member.getId(), otherId);
+        }
+    }
+
+    /**
+     * Remember a cluster a drop is about to join
+     * @param id A piece in the cluster
+     */
+    private void addJoined(int id) {
+        joinedStart[joined] = joinedCount;
+        joinedX[joined] = clusters.getOffsetX(id);
+        joinedY[joined] = clusters.getOffsetY(id);
+        int member = id;
+        do {
+            joinedIds[joinedCount++] = member;
+            member = clusters.next(member);
+        } while(member != id);
+        joined++;
+    }
+
+    /**
+     * Number of pieces in a cluster the last drop joined
+     * @param g Index of the cluster, 0 for the dropped one
+     * @return Number of pieces
+     */
+    private int joinedSize(int g) {
+        return (g + 1 < joined ? joinedStart[g + 1] : joinedCount) - joinedStart[g];
+    }
+
+    /**
+     * Index of the largest cluster the last drop joined
+     */
+    private int largestJoined() {
+        int largest = 0;
+        for(int g=1; g<joined; g++) {
+            if(joinedSize(g) > joinedSize(largest)) {
+                largest = g;
+            }
+        }
+
+        return largest;
+    }
+
+    /**
+     * Number of ints writeJoins() writes for the last drop
+     * @return Number of ints, or 0 if the drop joined nothing
+     */
+    public int getJoinsLength() {
+        if(joined == 0) {
+            return 0;
+        }
+
+        return 4 + 3 * (joined - 1) + joinedCount - joinedSize(largestJoined());
+    }
+
+    /**
+     * Write down the clusters the last drop joined, as they were
+     * before it, so split() can take them apart again and rejoin()
+     * can join them again.
+     *
+     * The largest cluster is only written as one of its pieces and
+     * its offset, since it is whatever is left when the others are
+     * taken out. That is the number of other clusters, the piece and
+     * the offset. Each other cluster is then its number of pieces, its
+     * offset and its pieces. Offsets are written as float bits.
+     * @param out Array to write to
+     * @param start Index in out to start at
+     * @return Number of ints written, the same as getJoinsLength()
+     */
+    public int writeJoins(int [] out, int start) {
+        if(joined == 0) {
+            return 0;
+        }
+
+        int largest = largestJoined();
+        out[start] = joined - 1;
+        out[start + 1] = joinedIds[joinedStart[largest]];
+        out[start + 2] = Float.floatToRawIntBits(joinedX[largest]);
+        out[start + 3] = Float.floatToRawIntBits(joinedY[largest]);
+
+        int i = start + 4;
+        for(int g=0; g<joined; g++) {
+            if(g == largest) {
+                continue;
+            }
+
+            int size = joinedSize(g);
+            out[i] = size;
+            out[i + 1] = Float.floatToRawIntBits(joinedX[g]);
+            out[i + 2] = Float.floatToRawIntBits(joinedY[g]);
+            System.arraycopy(joinedIds, joinedStart[g], out, i + 3, size);
+            i += 3 + size;
+        }
+
+        return i - start;
+    }
+
+    /**
+     * Split the cluster a piece is in back into the clusters a drop
+     * joined, each at the offset it had before the drop. The pieces
+     * stay where they are in the z order. The cluster must not be held.
+     * @param piece A piece in the cluster
+     * @param joins The clusters, as written by writeJoins()
+     * @param start Index in joins they start at
+     */
+    public void split(T piece, int [] joins, int start) {
+        int id = piece.getId();
+        int n = 0;
+        do {
+            splitIds[n++] = id;
+            id = clusters.next(id);
+        } while(id != piece.getId());
+        store.ungroup(splitIds, n);
+
+        int i = start + 4;
+        for(int part=0; part<joins[start]; part++) {
+            int size = joins[i];
+            int first = joins[i + 3];
+            for(int k=0; k<size; k++) {
+                clusters.union(joins[i + 3 + k], first);
+                splitOff[joins[i + 3 + k]] = true;
+            }
+
+            clusters.setOffset(first, Float.intBitsToFloat(joins[i + 1]), Float.intBitsToFloat(joins[i + 2]));
+            i += 3 + size;
+        }
+
+        // Every other piece goes back in the largest cluster
+        int rest = joins[start + 1];
+        for(int k=0; k<n; k++) {
+            if(splitOff[splitIds[k]]) {
+                splitOff[splitIds[k]] = false;
+            } else {
+                clusters.union(splitIds[k], rest);
+            }
+        }
+        clusters.setOffset(rest, Float.intBitsToFloat(joins[start + 2]), Float.intBitsToFloat(joins[start + 3]));
+
+        for(int k=0; k<n; k++) {
+            grid.update(byId.get(splitIds[k]));
+        }
+    }
+
+    /**
+     * Join the clusters a drop joined again, after split() took them
+     * apart. The joined cluster takes the offset of the largest one,
+     * so follow this with place() to put it where the drop left it.
+     * @param piece A piece in the dropped cluster
+     * @param joins The clusters, as written by writeJoins()
+     * @param start Index in joins they start at
+     */
+    public void rejoin(T piece, int [] joins, int start) {
+        clusters.union(piece.getId(), joins[start + 1]);
+
+        int i = start + 4;
+        for(int part=0; part<joins[start]; part++) {
+            clusters.union(piece.getId(), joins[i + 3]);
+            i += 3 + joins[i];
+        }
+    }
+
+    /**
+     * Is a piece part of a cluster being dragged?
+     * @param piece The piece
+     * @return true if the piece is held
+     */
+    public boolean isHeld(T piece) {
+        return held[piece.getId()];
+    }
+
+    /**
+     * Is a cluster of more than one piece being dragged? The pieces
+     * of such a cluster are not kept up to date in the grid until it
+     * is dropped.
+     * @return true if a cluster is held
+     */
+    public boolean isGroupHeld() {
+        return heldGroups > 0;
+    }
+
+    /**
+     * Get the pieces in the same cluster as a piece
+     * @param piece The piece
+     * @param out List the pieces are put in. It is cleared first.
+     */
+    public void getGroup(T piece, ArrayList<T> out) {
+        out.clear();
+        int id = piece.getId();
+        do {
+            out.add(byId.get(id));
+            id = clusters.next(id);
+        } while(id != piece.getId());
+    }
+
+    /**
+     * The next piece in the same cluster as a piece. Following these
+     * goes around every piece in the cluster and back to the first.
+     * @param id The piece id
+     * @return Id of the next piece
+     */
+    public int nextInGroup(int id) {
+        return clusters.next(id);
+    }
+
+    /**
+     * Number of columns of pieces
+     * @return Number of columns
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Number of rows of pieces
+     * @return Number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the bounding box of the cluster a piece is in
+     * @param piece The piece
+     * @param out Array the left, top, right and bottom edges
+     *            are written to, relative to the puzzle
+     */
+    public void getGroupBounds(T piece, float [] out) {
+        clusters.getBounds(piece.getId(), out);
+    }
+
+    /**
+     * Shuffle the puzzle pieces. Every cluster is broken up.
+     * @param shuffler Places the pieces
+     * @param seed Seed for the layout. The same seed always
+     *             gives the same layout.
+     * @param spread true to spread the pieces out so they do not
+     *               sit on each other, false to drop them anywhere
+     */
+    public void shuffle(PieceShuffler shuffler, long seed, boolean spread) {
+        ungroup();
+        shuffler.shuffle(store, seed, spread);
+        for(T piece : pieces) {
+            grid.update(piece);
+        }
+
+        snappedCount = 0;
+    }
+
+    /**
+     * Break up every cluster, leaving the pieces where they are.
+     * This must be done before every piece is moved at once, like
+     * for a restore, and then followed by restored().
+     */
+    public void ungroup() {
+        store.ungroup();
+        Arrays.fill(held, false);
+        heldGroups = 0;
+    }
+
+    /**
+     * Bring everything up to date after every piece has been moved at
+     * once, like after a restore. The pieces are put in order of their
+     * z values. Loose pieces that are lined up with a neighbour are
+     * joined into clusters again.
+     */
+    public void restored() {
+        store.sortByZ();
+
+        snappedCount = 0;
+        for(int id=store.getBottom(); id!=PieceStore.NONE; id=store.above(id)) {
+            if(store.isSnapped(id)) {
+                snappedCount++;
+            } else {
+                if(id % columns < columns - 1) {
+                    regroup(id, id + 1);
+                }
+                if(id / columns < rows - 1) {
+                    regroup(id, id + columns);
+                }
+            }
+        }
+
+        for(T piece : pieces) {
+            grid.update(piece);
+        }
+    }
+
+    /**
+     * Join a loose piece with a neighbour if it is lined up with it
+     * @param id Id of the piece
+     * @param otherId Id of its neighbour
+     */
+    private void regroup(int id, int otherId) {
+        if(byId.get(otherId) == null || store.isSnapped(otherId)) {
+            return;
+        }
+
+        if(Math.abs(clusters.getOffsetX(id) - clusters.getOffsetX(otherId)) < JOIN_TOLERANCE &&
+                Math.abs(clusters.getOffsetY(id) - clusters.getOffsetY(otherId)) < JOIN_TOLERANCE) {
+            clusters.union(id, otherId);
+        }
+    }
+
+    /**
+     * Number of pieces snapped into place
+     * @return Number of pieces
+     */
+    public int getSnappedCount() {
+        return snappedCount;
+    }
+
+    /**
+     * Are all of the pieces snapped into place?
+     * @return true if the puzzle is solved
+     */
+    public boolean isSolved() {
+        return snappedCount == store.getCount();
+    }
+}
@@ -0,0 +1,196 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compact binary form of the state of a puzzle, used to save it
+ * in a Bundle.
+ *
+ * The snapshot lists the pieces from bottom to top, so it records the
+ * z order. Each piece is written as a varint holding the difference
+ * from the previous piece id and a snapped flag. A snapped piece needs
+ * nothing more, since it is at its final location. A loose piece
+ * follows with its x and y quantized to 16 bits each.
+ *
+ *   byte    VERSION
+ *   varint  number of pieces
+ *   for each piece, bottom to top:
+ *     varint  zigzag(id - previous id) << 1 | snapped
+ *     short   x * QUANTUM, if not snapped
+ *     short   y * QUANTUM, if not snapped
+ */
+public class PuzzleSnapshot {
+    /**
+     * Version of the snapshot format
+     */
+    final static byte VERSION = 1;
+
+    /**
+     * Steps per puzzle width used for piece locations. This gives
+     * locations from -8 to 8 puzzle widths at better than pixel
+     * accuracy on any screen.
+     */
+    final static float QUANTUM = 4096f;
+
+    /**
+     * Write the state of the pieces
+     * @param pieces The pieces, bottom to top
+     * @return The snapshot
+     */
+    public static byte[] save(ArrayList<? extends PieceModel> pieces) {
+        // Largest possible size: a five byte varint for the count
+        // and for each id, plus four bytes of location each
+        byte [] data = new byte[1 + 5 + pieces.size() * 9];
+        int pos = 0;
+
+        data[pos++] = VERSION;
+        pos = writeVarint(data, pos, pieces.size());
+
+        int prevId = 0;
+        for(PieceModel piece : pieces) {
+            boolean snapped = piece.isSnapped();
+            int delta = piece.getId() - prevId;
+            prevId = piece.getId();
+
+            pos = writeVarint(data, pos, (zigzag(delta) << 1) | (snapped ? 1 : 0));
+            if(!snapped) {
+                pos = writeShort(data, pos, quantize(piece.getX()));
+                pos = writeShort(data, pos, quantize(piece.getY()));
+            }
+        }
+
+        return Arrays.copyOf(data, pos);
+    }
+
+    /**
+     * Restore the state of the pieces. Every piece is moved to its saved
+     * location and given a z value from its place in the saved order.
+     * PuzzleBoard.restored() then puts the pieces back in that order.
+     * @param data The snapshot
+     * @param pieces The pieces of the puzzle, in any order. The ids of
+     *               the pieces must run from 0 to the number of pieces - 1.
+     * @return false if the snapshot is not for this puzzle, in
+     * which case the pieces are not changed.
+     */
+    public static <T extends PieceModel> boolean restore(byte[] data, ArrayList<T> pieces) {
+        if(data == null || data.length < 2 || data[0] != VERSION) {
+            return false;
+        }
+
+        int [] pos = {1};
+        int count = readVarint(data, pos);
+        if(count != pieces.size()) {
+            return false;
+        }
+
+        // Find pieces by id without searching. This holds the index
+        // of each piece in the list plus one, so 0 means not found.
+        int [] byId = new int[count];
+        for(int i=0; i<count; i++) {
+            int id = pieces.get(i).getId();
+            if(id < 0 || id >= count) {
+                return false;
+            }
+            byId[id] = i + 1;
+        }
+
+        // Read everything before changing anything
+        int [] order = new int[count];
+        float [] locations = new float[count * 2];
+        boolean [] snapped = new boolean[count];
+        int id = 0;
+        for(int i=0; i<count; i++) {
+            int value = readVarint(data, pos);
+            id += unzigzag(value >>> 1);
+            if(id < 0 || id >= count || pos[0] > data.length) {
+                return false;
+            }
+
+            if(byId[id] == 0) {
+                // Each piece can only be listed once
+                return false;
+            }
+
+            order[i] = byId[id] - 1;
+            byId[id] = 0;
+            snapped[i] = (value & 1) != 0;
+            if(!snapped[i]) {
+                if(pos[0] + 4 > data.length) {
+                    return false;
+                }
+
+                locations[i*2] = readShort(data, pos[0]) / QUANTUM;
+                locations[i*2+1] = readShort(data, pos[0] + 2) / QUANTUM;
+                pos[0] += 4;
+            }
+        }
+
+        for(int i=0; i<count; i++) {
+            T piece = pieces.get(order[i]);
+            if(snapped[i]) {
+                piece.snap();
+            } else {
+                piece.setX(locations[i*2]);
+                piece.setY(locations[i*2+1]);
+            }
+
+            piece.setZ(i);
+        }
+
+        return true;
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static short quantize(float v) {
+        int q = Math.round(v * QUANTUM);
+        return (short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, q));
+    }
+
+    private static int writeVarint(byte [] data, int pos, int v) {
+        while((v & ~0x7f) != 0) {
+            data[pos++] = (byte)((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+
+        data[pos++] = (byte)v;
+        return pos;
+    }
+
+    /**
+     * Read a varint
+     * @param data The snapshot
+     * @param pos One element array holding the read position,
+     *            which is advanced past the varint
+     * @return The value
+     */
+    private static int readVarint(byte [] data, int [] pos) {
+        int v = 0;
+        for(int shift=0; shift<35 && pos[0]<data.length; shift+=7) {
+            byte b = data[pos[0]++];
+            v |= (b & 0x7f) << shift;
+            if((b & 0x80) == 0) {
+                break;
+            }
+        }
+
+        return v;
+    }
+
+    private static int writeShort(byte [] data, int pos, short v) {
+        data[pos] = (byte)(v >> 8);
+        data[pos+1] = (byte)v;
+        return pos + 2;
+    }
+
+    private static short readShort(byte [] data, int pos) {
+        return (short)((data[pos] << 8) | (data[pos+1] & 0xff));
+    }
+}
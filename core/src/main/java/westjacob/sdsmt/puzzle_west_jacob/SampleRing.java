@@ -0,0 +1,114 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free ring of measurement samples.
+ *
+ * Any number of threads may add samples and one thread at a time takes
+ * them. Adding never waits: if the reader falls behind, the oldest
+ * samples are written over and counted as lost. Each slot has a
+ * sequence number that is cleared before its value is written and
+ * published after, so the reader can tell a finished slot from one
+ * still being written.
+ */
+public class SampleRing {
+    /**
+     * Masked index of a slot in the arrays
+     */
+    private final int mask;
+
+    /**
+     * The sample in each slot
+     */
+    private final AtomicLongArray values;
+
+    /**
+     * Number of the sample in each slot plus one, 0 if the slot
+     * has never been written or -1 while it is being written
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * Number of samples added
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Number of the next sample to take. Only used by the reader.
+     */
+    private long tail = 0;
+
+    /**
+     * Number of samples written over before they were taken
+     */
+    private long lost = 0;
+
+    /**
+     * Constructor
+     * @param capacity Number of samples the ring holds. Must be a power of two.
+     */
+    public SampleRing(int capacity) {
+        if(Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two");
+        }
+
+        mask = capacity - 1;
+        values = new AtomicLongArray(capacity);
+        published = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * Add a sample. Safe to call from any thread.
+     * @param value The sample, which must not be negative
+     */
+    public void add(long value) {
+        long n = head.getAndIncrement();
+        int i = (int)(n & mask);
+        published.set(i, -1);
+        values.lazySet(i, value);
+
+        // Publish the sample after its value is written
+        published.lazySet(i, n + 1);
+    }
+
+    /**
+     * Take the oldest sample. Only one thread may take samples at a time.
+     * @return The sample, or -1 if there are none ready
+     */
+    public long poll() {
+        while(true) {
+            int i = (int)(tail & mask);
+            long seq = published.get(i);
+            if(seq < tail + 1) {
+                // Not written yet
+                return -1;
+            }
+
+            // If the sequence number is the same after we read the
+            // value, nothing wrote to the slot while we read it
+            long value = values.get(i);
+            if(seq == tail + 1 && published.get(i) == seq) {
+                tail++;
+                return value;
+            }
+
+            // A writer went all the way around the ring,
+            // so skip to the oldest sample still there
+            long oldest = head.get() - values.length();
+            if(oldest > tail) {
+                lost += oldest - tail;
+                tail = oldest;
+            }
+        }
+    }
+
+    /**
+     * Number of samples written over before they could be taken
+     * @return Number of samples lost
+     */
+    public long getLost() {
+        return lost;
+    }
+}
@@ -0,0 +1,215 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Keeps the puzzle in progress in a memory mapped file so it
+ * survives the process being killed.
+ *
+ * The file has a fixed size slot for every piece, indexed by piece id.
+ * When a piece is dropped only its slot is written, and the operating
+ * system writes the page back to the file for us.
+ *
+ *   int    MAGIC
+ *   int    VERSION
+ *   int    columns
+ *   int    rows
+ *   long   seed used to cut the pieces
+ *   int    number of pieces
+ *   int    1 once every slot has been written
+ *   for each piece id:
+ *     float  x
+ *     float  y
+ *     int    z
+ *     int    flags
+ */
+public class SessionStore {
+    /**
+     * Marks the file as a puzzle session
+     */
+    final static int MAGIC = 0x505a534e;
+
+    /**
+     * Version of the file layout
+     */
+    final static int VERSION = 1;
+
+    /**
+     * Size of the header in bytes
+     */
+    final static int HEADER_SIZE = 32;
+
+    /**
+     * Size of one piece slot in bytes
+     */
+    final static int SLOT_SIZE = 16;
+
+    /**
+     * Flag set in a slot if the piece is snapped into place
+     */
+    final static int FLAG_SNAPPED = 1;
+
+    /**
+     * Offsets of the header fields
+     */
+    private final static int SEED = 16;
+    private final static int COUNT = 24;
+    private final static int VALID = 28;
+
+    /**
+     * The file, mapped into memory
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * The open file. Kept so it can be closed.
+     */
+    private final RandomAccessFile file;
+
+    /**
+     * Seed used to cut the pieces of this puzzle
+     */
+    private final long seed;
+
+    /**
+     * Did the file already hold a puzzle we can restore?
+     */
+    private final boolean restorable;
+
+    /**
+     * Open a session file. If the file does not hold a session for a
+     * puzzle of this size, a new empty session is started.
+     * @param path The session file
+     * @param columns Number of columns of pieces
+     * @param rows Number of rows of pieces
+     * @param newSeed Seed to use if a new session is started
+     * @throws IOException if the file can not be opened or mapped
+     */
+    public SessionStore(File path, int columns, int rows, long newSeed) throws IOException {
+        int count = columns * rows;
+        long size = HEADER_SIZE + (long)count * SLOT_SIZE;
+
+        file = new RandomAccessFile(path, "rw");
+        try {
+            file.setLength(size);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch(IOException e) {
+            file.close();
+            throw e;
+        }
+        buffer.order(ByteOrder.nativeOrder());
+
+        restorable = buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION &&
+                buffer.getInt(8) == columns && buffer.getInt(12) == rows &&
+                buffer.getInt(COUNT) == count && buffer.getInt(VALID) == 1;
+
+        if(restorable) {
+            seed = buffer.getLong(SEED);
+        } else {
+            seed = newSeed;
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, columns);
+            buffer.putInt(12, rows);
+            buffer.putLong(SEED, seed);
+            buffer.putInt(COUNT, count);
+            buffer.putInt(VALID, 0);
+        }
+    }
+
+    /**
+     * Seed used to cut the pieces. A restored session must
+     * be cut with the same seed so the pieces have the same shapes.
+     * @return The seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Did the file hold a complete session when it was opened?
+     * @return true if restore() can be used
+     */
+    public boolean isRestorable() {
+        return restorable;
+    }
+
+    /**
+     * Write the state of one piece to its slot
+     * @param piece The piece
+     */
+    public void write(PieceModel piece) {
+        if(buffer == null) {
+            return;
+        }
+
+        int slot = HEADER_SIZE + piece.getId() * SLOT_SIZE;
+        buffer.putFloat(slot, piece.getX());
+        buffer.putFloat(slot + 4, piece.getY());
+        buffer.putInt(slot + 8, piece.getZ());
+        buffer.putInt(slot + 12, piece.isSnapped() ? FLAG_SNAPPED : 0);
+    }
+
+    /**
+     * Write the state of every piece. After this the
+     * session can be restored.
+     * @param pieces The pieces
+     */
+    public void writeAll(ArrayList<? extends PieceModel> pieces) {
+        if(buffer == null) {
+            return;
+        }
+
+        for(PieceModel piece : pieces) {
+            write(piece);
+        }
+
+        buffer.putInt(VALID, 1);
+    }
+
+    /**
+     * Restore the pieces from the session. Every piece gets its saved
+     * location and z. PuzzleBoard.restored() then puts the pieces
+     * back in z order.
+     * @param pieces The pieces, with ids from 0 to the number of pieces - 1
+     * @return false if the session could not be restored
+     */
+    public <T extends PieceModel> boolean restore(ArrayList<T> pieces) {
+        if(buffer == null || !restorable || pieces.size() != buffer.getInt(COUNT)) {
+            return false;
+        }
+
+        for(T piece : pieces) {
+            int slot = HEADER_SIZE + piece.getId() * SLOT_SIZE;
+            if((buffer.getInt(slot + 12) & FLAG_SNAPPED) != 0) {
+                piece.snap();
+            } else {
+                piece.setX(buffer.getFloat(slot));
+                piece.setY(buffer.getFloat(slot + 4));
+            }
+
+            piece.setZ(buffer.getInt(slot + 8));
+        }
+
+        return true;
+    }
+
+    /**
+     * Stop using the file. The mapping itself goes away
+     * when the buffer is garbage collected.
+     */
+    public void close() {
+        buffer = null;
+        try {
+            file.close();
+        } catch(IOException e) {
+            // Nothing we can do, the data is already in the file
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Tests of the union-find clusters of joined pieces
+ */
+public class ClusterSetTest {
+    /**
+     * A 3 x 3 set where each piece is a unit square in solved
+     * coordinates, with piece 4 in the middle
+     */
+    private ClusterSet clusters;
+
+    @Before
+    public void setUp() {
+        clusters = new ClusterSet(3, 3);
+        for(int id=0; id<9; id++) {
+            float l = id % 3;
+            float t = id / 3;
+            clusters.reset(id, id, -id, l, t, l + 1, t + 1);
+        }
+    }
+
+    /**
+     * The pieces in a cluster, by following next()
+     */
+    private HashSet<Integer> members(int id) {
+        HashSet<Integer> out = new HashSet<>();
+        int member = id;
+        do {
+            assertTrue("repeated piece " + member, out.add(member));
+            member = clusters.next(member);
+        } while(member != id);
+        return out;
+    }
+
+    @Test
+    public void startsWithEveryPieceAlone() {
+        for(int id=0; id<9; id++) {
+            assertEquals(id, clusters.find(id));
+            assertEquals(1, clusters.size(id));
+            assertEquals(id, clusters.next(id));
+            assertEquals(id, clusters.getOffsetX(id), 0);
+        }
+    }
+
+    @Test
+    public void unionTakesTheOffsetOfTheSecondCluster() {
+        clusters.union(4, 5);
+        assertEquals(clusters.find(4), clusters.find(5));
+        assertEquals(2, clusters.size(4));
+        assertEquals(5, clusters.getOffsetX(4), 0);
+        assertEquals(-5, clusters.getOffsetY(4), 0);
+        assertEquals(new HashSet<>(Arrays.asList(4, 5)), members(4));
+
+        // Joining again changes nothing
+        clusters.union(5, 4);
+        assertEquals(2, clusters.size(5));
+        assertEquals(5, clusters.getOffsetX(4), 0);
+    }
+
+    @Test
+    public void moveAndBoundsApplyToTheWholeCluster() {
+        clusters.union(0, 1);
+        clusters.union(3, 0);
+        clusters.setOffset(3, 0, 0);
+        clusters.move(1, 0.5f, 2);
+
+        for(int id : new int[] {0, 1, 3}) {
+            assertEquals(0.5f, clusters.getOffsetX(id), 0);
+            assertEquals(2, clusters.getOffsetY(id), 0);
+        }
+        assertEquals(4, clusters.getOffsetX(4), 0);
+
+        float [] bounds = new float[4];
+        clusters.getBounds(3, bounds);
+        assertEquals(0.5f, bounds[0], 0);
+        assertEquals(2, bounds[1], 0);
+        assertEquals(2.5f, bounds[2], 0);
+        assertEquals(4, bounds[3], 0);
+    }
+
+    @Test
+    public void openEdgesOnlyFaceOtherClusters() {
+        int [] edges = new int[36];
+        assertEquals(4, clusters.openEdges(4, edges));
+        assertEquals(2, clusters.openEdges(0, edges));
+
+        // The middle row: only the top and bottom sides stay open
+        clusters.union(3, 4);
+        clusters.union(5, 4);
+        int n = clusters.openEdges(4, edges);
+        assertEquals(6, n);
+        for(int i=0; i<n; i++) {
+            int side = edges[i] % 4;
+            assertTrue(side == ClusterSet.TOP || side == ClusterSet.BOTTOM);
+            int across = clusters.across(edges[i]);
+            assertTrue(clusters.find(across) != clusters.find(4));
+        }
+
+        // Everything in one cluster has no open edges
+        for(int id=0; id<9; id++) {
+            clusters.union(id, 4);
+        }
+        assertEquals(0, clusters.openEdges(0, edges));
+        assertEquals(9, members(8).size());
+    }
+
+    @Test
+    public void acrossFindsTheNeighbour() {
+        assertEquals(3, clusters.across(4 * 4 + ClusterSet.LEFT));
+        assertEquals(5, clusters.across(4 * 4 + ClusterSet.RIGHT));
+        assertEquals(1, clusters.across(4 * 4 + ClusterSet.TOP));
+        assertEquals(7, clusters.across(4 * 4 + ClusterSet.BOTTOM));
+    }
+}
@@ -0,0 +1,66 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Tests of recording and reporting the frame stats
+ */
+public class FrameStatsTest {
+    @Test
+    public void samplesGoToTheirOwnMetric() {
+        FrameStats stats = new FrameStats();
+        stats.record(FrameStats.DRAW_TIME, 2000000);
+        stats.record(FrameStats.TILE_HITS, 12);
+        stats.record(FrameStats.TILE_MISSES, 3);
+        stats.record(FrameStats.TILE_MISSES, 0);
+        stats.update();
+
+        assertEquals(1, stats.getCount(FrameStats.DRAW_TIME));
+        assertEquals(0, stats.getCount(FrameStats.PIECES_DRAWN));
+        assertEquals(12, stats.getLast(FrameStats.TILE_HITS));
+        assertEquals(2, stats.getCount(FrameStats.TILE_MISSES));
+        assertEquals(0, stats.getLast(FrameStats.TILE_MISSES));
+        assertEquals(3, stats.getValueAt(FrameStats.TILE_MISSES, 100));
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        FrameStats stats = new FrameStats();
+        stats.record(FrameStats.PIECES_CULLED, -5);
+        stats.update();
+        assertEquals(0, stats.getLast(FrameStats.PIECES_CULLED));
+        assertEquals(1, stats.getCount(FrameStats.PIECES_CULLED));
+    }
+
+    @Test
+    public void reportHasALineForEveryMetric() {
+        FrameStats stats = new FrameStats();
+        stats.record(FrameStats.TILE_HITS, 4);
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        stats.write(out);
+        out.flush();
+
+        String [] lines = text.toString().split("\n");
+        assertEquals(FrameStats.METRICS + 2, lines.length);
+        for(int i=0; i<FrameStats.METRICS; i++) {
+            assertTrue(lines[i + 1].startsWith(FrameStats.NAMES[i] + ","));
+        }
+        assertTrue(lines[1 + FrameStats.TILE_HITS].startsWith("tile hits, 1, 4.0"));
+    }
+
+    @Test
+    public void resetClearsEveryMetric() {
+        FrameStats stats = new FrameStats();
+        stats.record(FrameStats.TOUCH_LATENCY, 1000);
+        stats.reset();
+        assertEquals(0, stats.getCount(FrameStats.TOUCH_LATENCY));
+        assertEquals(0, stats.getLast(FrameStats.TOUCH_LATENCY));
+    }
+}
@@ -0,0 +1,175 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+
+/**
+ * Tests of ranking the loose pieces for hints
+ */
+public class HintEngineTest {
+    /**
+     * Put every piece of a board to the right of home, each one
+     * further away than the one before and far enough apart that
+     * none covers another, and score them
+     */
+    private static HintEngine<PieceModel> spreadOut(PuzzleBoard<PieceModel> board) {
+        for(int id=0; id<board.getCount(); id++) {
+            PieceModel piece = board.getPiece(id);
+            board.place(piece, piece.getFinalX() + 2 + id, piece.getFinalY(), false);
+        }
+
+        HintEngine<PieceModel> hints = new HintEngine<>(board);
+        hints.rebuild();
+        return hints;
+    }
+
+    /**
+     * Take every piece out of the engine one at a time
+     */
+    private static int [] drain(HintEngine<PieceModel> hints, int count) {
+        int [] out = new int[count];
+        int [] one = new int[1];
+        for(int i=0; i<count; i++) {
+            assertEquals(1, hints.poll(one, 1));
+            out[i] = one[0];
+        }
+        assertEquals(0, hints.poll(one, 1));
+        return out;
+    }
+
+    @Test
+    public void closestPieceComesFirst() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 3);
+        HintEngine<PieceModel> hints = spreadOut(board);
+        assertEquals(9, hints.getSize());
+        assertEquals(0, hints.peek());
+
+        // Move the last piece near home and it goes to the front
+        PieceModel piece = board.getPiece(8);
+        hints.moved(8);
+        board.place(piece, piece.getFinalX() + 0.2f, piece.getFinalY(), false);
+        hints.moved(8);
+        assertEquals(8, hints.peek());
+    }
+
+    @Test
+    public void piecesComeOutInScoreOrder() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(4, 4);
+        HintEngine<PieceModel> hints = spreadOut(board);
+        int [] order = drain(hints, 16);
+        for(int i=0; i<16; i++) {
+            assertEquals(i, order[i]);
+        }
+    }
+
+    @Test
+    public void snappedNeighboursMakeAPieceEasier() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 3);
+        PieceStore store = board.getStore();
+
+        // Pieces 1 and 3 are the same distance from home
+        PieceModel p1 = board.getPiece(1);
+        PieceModel p3 = board.getPiece(3);
+        HintEngine<PieceModel> hints = spreadOut(board);
+        board.place(p1, p1.getFinalX() + 1, p1.getFinalY(), false);
+        board.place(p3, p3.getFinalX() + 1, p3.getFinalY(), false);
+        hints.moved(1);
+        hints.moved(3);
+
+        // Snapping piece 6 helps piece 3, which is next to it
+        hints.moved(6);
+        board.place(board.getPiece(6), 0, 0, true);
+        hints.moved(6);
+        assertTrue(store.isSnapped(6));
+        assertEquals(3, hints.peek());
+        assertEquals(8, hints.getSize());
+    }
+
+    @Test
+    public void snappedPiecesLeaveTheRanking() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 3);
+        HintEngine<PieceModel> hints = spreadOut(board);
+        for(int id=0; id<9; id++) {
+            hints.moved(id);
+            board.place(board.getPiece(id), 0, 0, true);
+            hints.moved(id);
+        }
+
+        assertEquals(PieceStore.NONE, hints.peek());
+        assertEquals(0, hints.getSize());
+    }
+
+    @Test
+    public void pollTakesOnePieceFromEachCluster() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 1);
+        HintEngine<PieceModel> hints = spreadOut(board);
+
+        // Join pieces 0 and 1 next to each other
+        PieceModel p0 = board.getPiece(0);
+        PieceModel p1 = board.getPiece(1);
+        board.pickUp(p1);
+        board.move(p1, p0.getX() + (p1.getFinalX() - p0.getFinalX()) - p1.getX(), p0.getY() - p1.getY());
+        board.drop(p1);
+        hints.moved(1);
+        assertEquals(0, board.nextInGroup(1));
+
+        int [] out = new int[3];
+        assertEquals(2, hints.poll(out, 3));
+        HashSet<Integer> clusters = new HashSet<>();
+        for(int i=0; i<2; i++) {
+            clusters.add(out[i] == 2 ? 2 : 0);
+        }
+        assertEquals(2, clusters.size());
+    }
+
+    @Test
+    public void incrementalScoresMatchARebuild() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(6, 6);
+        HintEngine<PieceModel> hints = new HintEngine<>(board);
+        hints.rebuild();
+
+        // Move pieces around, keeping the engine up to date
+        for(int i=0; i<200; i++) {
+            PieceModel piece = board.getPiece((i * 7) % 36);
+            hints.moved(piece.getId());
+            float x = PieceShuffler.randomX(TestBoards.SEED, i);
+            float y = PieceShuffler.randomY(TestBoards.SEED, i);
+            board.place(piece, x, y, i % 11 == 0);
+            hints.moved(piece.getId());
+        }
+
+        HintEngine<PieceModel> fresh = new HintEngine<>(board);
+        fresh.rebuild();
+        assertEquals(fresh.peek(), hints.peek());
+        assertEquals(fresh.getSize(), hints.getSize());
+    }
+
+    @Test
+    public void movesWhileBuildingAreScoredAtTheNextRefresh() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(6, 6);
+        HintEngine<PieceModel> hints = new HintEngine<>(board);
+        hints.snapshot();
+
+        // Move pieces between the snapshot and the build, the way
+        // touches do while a loader thread builds without the lock
+        for(int i=0; i<50; i++) {
+            PieceModel piece = board.getPiece((i * 5) % 36);
+            hints.moved(piece.getId());
+            float x = PieceShuffler.randomX(TestBoards.SEED, i);
+            float y = PieceShuffler.randomY(TestBoards.SEED, i);
+            board.place(piece, x, y, i % 7 == 0);
+            hints.moved(piece.getId());
+        }
+        hints.build();
+
+        HintEngine<PieceModel> fresh = new HintEngine<>(board);
+        fresh.rebuild();
+        int count = fresh.getSize();
+        assertArrayEquals(drain(fresh, count), drain(hints, count));
+    }
+}
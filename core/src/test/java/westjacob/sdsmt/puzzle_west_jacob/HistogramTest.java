@@ -0,0 +1,78 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the histogram buckets and percentiles
+ */
+public class HistogramTest {
+    @Test
+    public void emptyHistogramReportsZero() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMin());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getMean(), 0);
+        assertEquals(0, h.getValueAt(50));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        for(int v=0; v<Histogram.SUB_BUCKETS; v++) {
+            assertEquals(v, Histogram.index(v));
+            assertEquals(v, Histogram.highest(v));
+        }
+    }
+
+    @Test
+    public void everyValueIsInsideItsBucket() {
+        long [] values = {31, 32, 33, 63, 64, 65, 1000, 123456789L, 1L << 40, Long.MAX_VALUE};
+        for(long v : values) {
+            int i = Histogram.index(v);
+            assertTrue(v + " above its bucket", v <= Histogram.highest(i));
+            if(i > 0) {
+                assertTrue(v + " below its bucket", v > Histogram.highest(i - 1));
+            }
+        }
+    }
+
+    @Test
+    public void largestValueFitsTheBuckets() {
+        Histogram h = new Histogram();
+        h.record(Long.MAX_VALUE);
+        h.record(0);
+        assertEquals(Long.MAX_VALUE, h.getMax());
+        assertEquals(0, h.getMin());
+        assertEquals(Long.MAX_VALUE, h.getValueAt(100));
+    }
+
+    @Test
+    public void percentilesAreWithinPrecision() {
+        Histogram h = new Histogram();
+        for(int v=1; v<=10000; v++) {
+            h.record(v);
+        }
+
+        // A bucket is at most 1/32 of its value wide
+        assertEquals(5000, h.getValueAt(50), 5000 / 32.0);
+        assertEquals(9900, h.getValueAt(99), 9900 / 32.0);
+        assertTrue(h.getValueAt(50) >= 5000);
+        assertEquals(10000, h.getValueAt(100));
+        assertEquals(1, h.getMin());
+        assertEquals(5000.5, h.getMean(), 1e-9);
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        Histogram h = new Histogram();
+        h.record(5);
+        h.record(500);
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getValueAt(99));
+    }
+}
@@ -0,0 +1,71 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the packed hit mask
+ */
+public class HitMaskTest {
+    @Test
+    public void newMaskIsEmpty() {
+        HitMask mask = new HitMask(70, 3);
+        assertEquals(70, mask.getWidth());
+        assertEquals(3, mask.getHeight());
+        for(int y=0; y<3; y++) {
+            for(int x=0; x<70; x++) {
+                assertFalse(mask.isSet(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void setRowUsesAlphaOnly() {
+        // Wide enough that the row takes two longs
+        int width = 130;
+        int [] pixels = new int[width];
+        pixels[0] = 0xff000000;
+        pixels[1] = 0x00ffffff;
+        pixels[63] = 0x01000000;
+        pixels[64] = 0x80123456;
+        pixels[129] = 0xff000000;
+
+        HitMask mask = new HitMask(width, 2);
+        mask.setRow(1, pixels);
+        for(int x=0; x<width; x++) {
+            boolean expected = x == 0 || x == 63 || x == 64 || x == 129;
+            assertEquals("pixel " + x, expected, mask.isSet(x, 1));
+            assertFalse(mask.isSet(x, 0));
+        }
+    }
+
+    @Test
+    public void setSingleBits() {
+        HitMask mask = new HitMask(65, 65);
+        mask.set(64, 64);
+        mask.set(0, 1);
+        assertTrue(mask.isSet(64, 64));
+        assertTrue(mask.isSet(0, 1));
+        assertFalse(mask.isSet(63, 64));
+        assertFalse(mask.isSet(1, 0));
+    }
+
+    @Test
+    public void outsideIsNeverSet() {
+        HitMask mask = new HitMask(8, 8);
+        for(int y=0; y<8; y++) {
+            for(int x=0; x<8; x++) {
+                mask.set(x, y);
+            }
+        }
+
+        assertFalse(mask.isSet(-1, 0));
+        assertFalse(mask.isSet(0, -1));
+        assertFalse(mask.isSet(8, 0));
+        assertFalse(mask.isSet(0, 8));
+        assertTrue(mask.isSet(7, 7));
+    }
+}
@@ -0,0 +1,96 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests of keeping the move journal in a memory mapped file
+ */
+public class JournalStoreTest {
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("journal", ".bin");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void newJournalIsEmpty() throws IOException {
+        JournalStore store = new JournalStore(file, 8, 99);
+        assertFalse(store.isRestorable());
+
+        MoveJournal journal = new MoveJournal(8);
+        journal.record(1, 0, 0, false, 0.5f, 0.5f, false);
+        journal.attach(store);
+        assertFalse(journal.canUndo());
+        store.close();
+    }
+
+    @Test
+    public void writtenMovesAreRestored() throws IOException {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 1);
+        JournalStore store = new JournalStore(file, 8, 99);
+        MoveJournal journal = new MoveJournal(8);
+        journal.attach(store);
+        MoveJournalTest.playMoves(board, journal);
+        store.close();
+
+        JournalStore reopened = new JournalStore(file, 8, 99);
+        assertTrue(reopened.isRestorable());
+        MoveJournal restored = new MoveJournal(8);
+        restored.attach(reopened);
+        assertEquals(journal.getUndoCount(), restored.getUndoCount());
+        assertTrue(restored.canRedo());
+
+        // Replay brings a board at the checkpoint up to date
+        PuzzleBoard<PieceModel> copy = TestBoards.create(3, 1);
+        assertTrue(restored.replay(copy));
+        MoveJournalTest.assertSameBoard(board, copy);
+
+        // And the moves can still be undone, joined pieces and all
+        while(restored.canUndo()) {
+            restored.undo(copy);
+        }
+        MoveJournalTest.assertSameBoard(TestBoards.create(3, 1), copy);
+        reopened.close();
+    }
+
+    @Test
+    public void journalOfAnotherSessionStartsOver() throws IOException {
+        JournalStore store = new JournalStore(file, 8, 99);
+        MoveJournal journal = new MoveJournal(8);
+        journal.attach(store);
+        journal.record(1, 0, 0, false, 0.5f, 0.5f, false);
+        store.close();
+
+        JournalStore other = new JournalStore(file, 8, 100);
+        assertFalse(other.isRestorable());
+        MoveJournal restored = new MoveJournal(8);
+        restored.attach(other);
+        assertFalse(restored.canUndo());
+        other.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void storeMustMatchTheJournal() throws IOException {
+        JournalStore store = new JournalStore(file, 8, 99);
+        try {
+            new MoveJournal(4).attach(store);
+        } finally {
+            store.close();
+        }
+    }
+}
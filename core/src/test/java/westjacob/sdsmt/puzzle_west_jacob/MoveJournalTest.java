@@ -0,0 +1,309 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of undoing and redoing moves, including moves that joined
+ * clusters
+ */
+public class MoveJournalTest {
+    /**
+     * Space between the final locations of neighbours on a 3 column board
+     */
+    private final static float STEP = 1 / 3f;
+
+    /**
+     * Drag a piece to a location and record the move
+     */
+    private static void moveTo(PuzzleBoard<PieceModel> board, MoveJournal journal, PieceModel piece,
+                               float x, float y) {
+        float fromX = piece.getX();
+        float fromY = piece.getY();
+        boolean wasSnapped = board.pickUp(piece);
+        board.move(piece, x - piece.getX(), y - piece.getY());
+        board.drop(piece);
+        journal.record(board, piece, fromX, fromY, wasSnapped);
+    }
+
+    private static void assertAt(PieceModel piece, float x, float y) {
+        assertEquals(x, piece.getX(), 1e-5);
+        assertEquals(y, piece.getY(), 1e-5);
+    }
+
+    private static int size(PuzzleBoard<PieceModel> board, PieceModel piece) {
+        int n = 0;
+        int id = piece.getId();
+        do {
+            n++;
+            id = board.nextInGroup(id);
+        } while(id != piece.getId());
+        return n;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBeAPowerOfTwo() {
+        new MoveJournal(1000);
+    }
+
+    @Test
+    public void undoAndRedoASingleMove() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 3);
+        MoveJournal journal = new MoveJournal(4);
+        PieceModel piece = board.getPiece(4);
+        float x = piece.getX();
+        float y = piece.getY();
+        assertFalse(journal.canUndo());
+
+        moveTo(board, journal, piece, piece.getFinalX(), piece.getFinalY());
+        assertEquals(1, board.getSnappedCount());
+        assertEquals(4, journal.getUndoId());
+
+        assertEquals(4, journal.undo(board));
+        assertAt(piece, x, y);
+        assertEquals(0, board.getSnappedCount());
+        assertEquals(PieceStore.NONE, journal.undo(board));
+
+        assertEquals(4, journal.getRedoId());
+        assertEquals(4, journal.redo(board));
+        assertAt(piece, piece.getFinalX(), piece.getFinalY());
+        assertEquals(1, board.getSnappedCount());
+        assertFalse(journal.canRedo());
+    }
+
+    @Test
+    public void newMoveDropsTheRedoMoves() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 3);
+        MoveJournal journal = new MoveJournal(4);
+        moveTo(board, journal, board.getPiece(0), 0.9f, 0.9f);
+        moveTo(board, journal, board.getPiece(1), 0.1f, 0.9f);
+        journal.undo(board);
+        moveTo(board, journal, board.getPiece(2), 0.5f, 0.9f);
+
+        assertFalse(journal.canRedo());
+        assertEquals(2, journal.getUndoCount());
+        assertEquals(2, journal.getUndoId());
+    }
+
+    @Test
+    public void oldestMovesFallOffTheRing() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 3);
+        MoveJournal journal = new MoveJournal(2);
+        for(int i=0; i<5; i++) {
+            moveTo(board, journal, board.getPiece(i), 0.1f * i, 0.9f);
+        }
+
+        assertEquals(2, journal.getUndoCount());
+        journal.undo(board);
+        journal.undo(board);
+        assertFalse(journal.canUndo());
+    }
+
+    @Test
+    public void undoSplitsOffAPieceThatJoined() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 1);
+        MoveJournal journal = new MoveJournal(8);
+        PieceModel p0 = board.getPiece(0);
+        PieceModel p1 = board.getPiece(1);
+        PieceModel p2 = board.getPiece(2);
+
+        moveTo(board, journal, p2, 0.825f, 0.725f);
+        moveTo(board, journal, p0, 0.425f, 0.425f);
+        moveTo(board, journal, p1, 0.425f + STEP, 0.425f);
+        assertEquals(2, size(board, p0));
+
+        // Piece 2 joins the pair
+        moveTo(board, journal, p2, 0.425f + 2 * STEP + 0.002f, 0.425f);
+        assertEquals(3, size(board, p0));
+
+        journal.undo(board);
+        assertAt(p0, 0.425f, 0.425f);
+        assertAt(p1, 0.425f + STEP, 0.425f);
+        assertAt(p2, 0.825f, 0.725f);
+        assertEquals(2, size(board, p0));
+        assertEquals(1, size(board, p2));
+        assertTrue(board.pieceAt(0.825f, 0.725f, TestBoards.puzzleSize(3), 1) == p2);
+
+        // Redo joins it again where the drop left it
+        journal.redo(board);
+        assertEquals(3, size(board, p2));
+        assertAt(p0, 0.425f, 0.425f);
+        assertAt(p2, 0.425f + 2 * STEP, 0.425f);
+
+        // And undoing everything takes the pair apart as well
+        journal.undo(board);
+        journal.undo(board);
+        assertEquals(1, size(board, p0));
+        assertEquals(1, size(board, p1));
+        assertAt(p0, 0.425f, 0.425f);
+        assertAt(p2, 0.825f, 0.725f);
+    }
+
+    @Test
+    public void undoPutsBackTheClusterThatWasDropped() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 1);
+        MoveJournal journal = new MoveJournal(8);
+        PieceModel p0 = board.getPiece(0);
+        PieceModel p1 = board.getPiece(1);
+        PieceModel p2 = board.getPiece(2);
+
+        moveTo(board, journal, p0, 0.2f, 0.8f);
+        moveTo(board, journal, p1, 0.2f + STEP, 0.8f);
+        moveTo(board, journal, p2, 0.9f, 0.3f);
+
+        // The pair is bigger than what it joins
+        moveTo(board, journal, p0, 0.9f - 2 * STEP - 0.003f, 0.3f);
+        assertEquals(3, size(board, p0));
+        assertAt(p0, 0.9f - 2 * STEP, 0.3f);
+
+        journal.undo(board);
+        assertEquals(2, size(board, p0));
+        assertEquals(1, size(board, p2));
+        assertAt(p0, 0.2f, 0.8f);
+        assertAt(p1, 0.2f + STEP, 0.8f);
+        assertAt(p2, 0.9f, 0.3f);
+    }
+
+    @Test
+    public void undoSplitsEveryClusterADropJoined() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 1);
+        MoveJournal journal = new MoveJournal(8);
+        PieceModel p0 = board.getPiece(0);
+        PieceModel p1 = board.getPiece(1);
+        PieceModel p2 = board.getPiece(2);
+
+        moveTo(board, journal, p0, 0.3f, 0.5f);
+        moveTo(board, journal, p2, 0.3f + 2 * STEP + 0.001f, 0.5f);
+        float p2x = p2.getX();
+        float p1x = p1.getX();
+        float p1y = p1.getY();
+
+        // Piece 1 goes between them and joins both
+        moveTo(board, journal, p1, 0.3f + STEP, 0.5f);
+        assertEquals(3, size(board, p1));
+
+        journal.undo(board);
+        assertEquals(1, size(board, p0));
+        assertEquals(1, size(board, p1));
+        assertEquals(1, size(board, p2));
+        assertAt(p0, 0.3f, 0.5f);
+        assertAt(p1, p1x, p1y);
+        assertAt(p2, p2x, 0.5f);
+
+        journal.redo(board);
+        assertEquals(3, size(board, p0));
+    }
+
+    @Test
+    public void joinTooBigToKeepClearsTheJournal() {
+        // Two rows of 10 lined up with themselves but not each other
+        PuzzleBoard<PieceModel> board = TestBoards.create(10, 2);
+        PieceStore store = board.getStore();
+        board.ungroup();
+        for(int id=0; id<20; id++) {
+            store.setLocation(id, store.getFinalX(id) + 0.2f, store.getFinalY(id) + (id < 10 ? 0.2f : 0.5f));
+        }
+        board.restored();
+
+        MoveJournal journal = new MoveJournal(1);
+        PieceModel piece = board.getPiece(10);
+        moveTo(board, journal, piece, piece.getFinalX() + 0.2f, piece.getFinalY() + 0.2f);
+        assertEquals(20, size(board, piece));
+        assertFalse(journal.canUndo());
+    }
+
+    /**
+     * Make a few moves on a 3 by 1 board, one of them joining a
+     * pair, and undo the last one
+     */
+    static void playMoves(PuzzleBoard<PieceModel> board, MoveJournal journal) {
+        PieceModel p0 = board.getPiece(0);
+        PieceModel p1 = board.getPiece(1);
+        PieceModel p2 = board.getPiece(2);
+        moveTo(board, journal, p0, 0.425f, 0.425f);
+        moveTo(board, journal, p1, 0.425f + STEP + 0.002f, 0.425f);
+        moveTo(board, journal, p2, 0.825f, 0.725f);
+        moveTo(board, journal, p0, 0.3f, 0.6f);
+        journal.undo(board);
+    }
+
+    /**
+     * Check two boards have every piece in the same place
+     * and in the same size of cluster
+     */
+    static void assertSameBoard(PuzzleBoard<PieceModel> expected, PuzzleBoard<PieceModel> actual) {
+        for(PieceModel piece : expected.getPieces()) {
+            PieceModel other = actual.getPiece(piece.getId());
+            assertAt(other, piece.getX(), piece.getY());
+            assertEquals(piece.isSnapped(), other.isSnapped());
+            assertEquals(size(expected, piece), size(actual, other));
+        }
+    }
+
+    @Test
+    public void replayMakesTheMovesSinceTheCheckpoint() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 1);
+        MoveJournal journal = new MoveJournal(8);
+        playMoves(board, journal);
+        assertEquals(2, size(board, board.getPiece(0)));
+
+        // A board in the state of the checkpoint, which is the start
+        PuzzleBoard<PieceModel> copy = TestBoards.create(3, 1);
+        assertTrue(journal.replay(copy));
+        assertSameBoard(board, copy);
+        assertEquals(3, journal.getUndoCount());
+        assertTrue(journal.canRedo());
+    }
+
+    @Test
+    public void replayUndoesMovesUndonePastTheCheckpoint() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 1);
+        MoveJournal journal = new MoveJournal(8);
+        playMoves(board, journal);
+        PuzzleBoard<PieceModel> copy = TestBoards.create(3, 1);
+        assertTrue(journal.replay(copy));
+        journal.checkpoint();
+
+        // Undo back past the join
+        journal.undo(board);
+        journal.undo(board);
+        assertFalse(journal.needsCheckpoint());
+        assertEquals(1, size(board, board.getPiece(0)));
+
+        assertTrue(journal.replay(copy));
+        assertSameBoard(board, copy);
+        assertEquals(1, journal.getUndoCount());
+    }
+
+    @Test
+    public void newMoveAfterUndoingPastTheCheckpointNeedsANewOne() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 1);
+        MoveJournal journal = new MoveJournal(8);
+        playMoves(board, journal);
+        journal.checkpoint();
+
+        journal.undo(board);
+        moveTo(board, journal, board.getPiece(2), 0.1f, 0.1f);
+        assertTrue(journal.needsCheckpoint());
+        assertFalse(journal.replay(TestBoards.create(3, 1)));
+        journal.checkpoint();
+        assertFalse(journal.needsCheckpoint());
+    }
+
+    @Test
+    public void movesWrittenOverNeedANewCheckpoint() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 3);
+        MoveJournal journal = new MoveJournal(4);
+        PieceModel piece = board.getPiece(4);
+        for(int i=0; i<4; i++) {
+            journal.record(4, piece.getX(), piece.getY(), false, 0.1f * i, 0.5f, false);
+        }
+        assertFalse(journal.needsCheckpoint());
+
+        journal.record(4, piece.getX(), piece.getY(), false, 0.9f, 0.5f, false);
+        assertTrue(journal.needsCheckpoint());
+    }
+}
@@ -0,0 +1,83 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+/**
+ * Tests of finding pieces through the grid
+ */
+public class PieceGridTest {
+    @Test
+    public void pieceIsInTheCellsUnderIt() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(4, 4);
+        PieceGrid<PieceModel> grid = board.getGrid();
+        PieceModel piece = board.getPiece(6);
+        piece.setX(0.3f);
+        piece.setY(0.7f);
+        grid.update(piece);
+
+        assertTrue(grid.candidates(0.3f, 0.7f).contains(piece));
+        assertFalse(grid.candidates(0.9f, 0.1f).contains(piece));
+    }
+
+    @Test
+    public void movedPieceLeavesItsOldCells() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(4, 4);
+        PieceGrid<PieceModel> grid = board.getGrid();
+        PieceModel piece = board.getPiece(0);
+        piece.setX(0.1f);
+        piece.setY(0.1f);
+        grid.update(piece);
+        piece.setX(0.9f);
+        piece.setY(0.9f);
+        grid.update(piece);
+
+        assertFalse(grid.candidates(0.1f, 0.1f).contains(piece));
+        assertTrue(grid.candidates(0.9f, 0.9f).contains(piece));
+
+        // Updating again without a move must not add it twice
+        grid.update(piece);
+        int count = 0;
+        for(PieceModel p : grid.candidates(0.9f, 0.9f)) {
+            if(p == piece) {
+                count++;
+            }
+        }
+        assertEquals(1, count);
+    }
+
+    @Test
+    public void farAwayPiecesLandInTheEdgeCells() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(4, 4);
+        PieceGrid<PieceModel> grid = board.getGrid();
+        PieceModel piece = board.getPiece(3);
+        piece.setX(5f);
+        piece.setY(-5f);
+        grid.update(piece);
+
+        assertTrue(grid.candidates(PieceGrid.GRID_MAX + 1, PieceGrid.GRID_MIN - 1).contains(piece));
+    }
+
+    @Test
+    public void queryFindsEveryPieceInARectangle() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(4, 4);
+        PieceGrid<PieceModel> grid = board.getGrid();
+        for(PieceModel piece : board.getPieces()) {
+            piece.snap();
+            grid.update(piece);
+        }
+
+        // The left column of the solved puzzle
+        ArrayList<PieceModel> out = new ArrayList<>();
+        grid.query(0.05f, 0.05f, 0.2f, 0.95f, out);
+        for(int row=0; row<4; row++) {
+            assertTrue(out.contains(board.getPiece(row * 4)));
+        }
+        assertFalse(out.contains(board.getPiece(3)));
+    }
+}
@@ -0,0 +1,58 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of where a piece is, hitting it and snapping it into place
+ */
+public class PieceModelTest {
+    @Test
+    public void detachedPieceIsAtItsFinalLocation() {
+        PuzzleBoard<PieceModel> board = TestBoards.createEmpty(2, 2);
+        PieceModel piece = TestBoards.piece(board, 3);
+        assertEquals(piece.getFinalX(), piece.getX(), 0);
+        assertEquals(piece.getFinalY(), piece.getY(), 0);
+        assertFalse(piece.isSnapped());
+        assertEquals(0, piece.getZ());
+    }
+
+    @Test
+    public void hitUsesTheMask() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(4, 4);
+        PieceModel piece = board.getPiece(5);
+        piece.setX(0.5f);
+        piece.setY(0.5f);
+
+        int size = TestBoards.puzzleSize(4);
+        float half = (float)piece.getWidth() / 2 / size;
+        assertTrue(piece.hit(0.5f, 0.5f, size, 1));
+        assertTrue(piece.hit(0.5f + half * 0.9f, 0.5f, size, 1));
+        assertFalse(piece.hit(0.5f + half * 1.1f, 0.5f, size, 1));
+        assertFalse(piece.hit(0.5f, 0.5f - half * 1.1f, size, 1));
+    }
+
+    @Test
+    public void snapsOnlyWithinSnapDistance() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(4, 4);
+        PieceModel piece = board.getPiece(0);
+        float distance = piece.getSnapDistance();
+
+        piece.setX(piece.getFinalX() + distance * 2);
+        piece.setY(piece.getFinalY());
+        assertFalse(piece.maybeSnap());
+        assertFalse(piece.isSnapped());
+
+        piece.move(-distance * 1.5f, distance / 2);
+        assertTrue(piece.maybeSnap());
+        assertTrue(piece.isSnapped());
+        assertEquals(piece.getFinalX(), piece.getX(), 0);
+        assertEquals(piece.getFinalY(), piece.getY(), 0);
+
+        piece.unsnap();
+        assertFalse(piece.isSnapped());
+    }
+}
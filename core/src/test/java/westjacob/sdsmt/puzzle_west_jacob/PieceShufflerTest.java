@@ -0,0 +1,110 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests of shuffling the pieces of a store
+ */
+public class PieceShufflerTest {
+    /**
+     * Make a store of a grid of square pieces, all at the middle
+     */
+    private static PieceStore store(int columns, int rows) {
+        PieceStore store = new PieceStore(new ClusterSet(columns, rows), columns * rows);
+        for(int id=0; id<columns * rows; id++) {
+            float fx = (id % columns + 0.5f) / columns;
+            float fy = (id / columns + 0.5f) / columns;
+            store.add(id, 0.5f, 0.5f, fx, fy, 1f / columns, 1f / columns, 0.1f / columns);
+        }
+        return store;
+    }
+
+    /**
+     * The locations of every piece, x and y by id
+     */
+    private static float [] locations(PieceStore store) {
+        float [] out = new float[store.getCount() * 2];
+        for(int id=0; id<store.getCount(); id++) {
+            out[id * 2] = store.getX(id);
+            out[id * 2 + 1] = store.getY(id);
+        }
+        return out;
+    }
+
+    @Test
+    public void sameSeedGivesSameLayout() {
+        for(boolean spread : new boolean[] {false, true}) {
+            PieceStore a = store(10, 10);
+            PieceStore b = store(10, 10);
+            new PieceShuffler(null).shuffle(a, 99, spread);
+            new PieceShuffler(null).shuffle(b, 99, spread);
+            assertArrayEquals(locations(a), locations(b), 0);
+
+            PieceStore c = store(10, 10);
+            new PieceShuffler(null).shuffle(c, 100, spread);
+            assertFalse(Arrays.equals(locations(a), locations(c)));
+        }
+    }
+
+    @Test
+    public void threadsGiveTheSameLayout() throws Exception {
+        // More than one chunk, so the helpers get work
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for(boolean spread : new boolean[] {false, true}) {
+                PieceStore a = store(60, 60);
+                PieceStore b = store(60, 60);
+                new PieceShuffler(null).shuffle(a, 7, spread);
+                new PieceShuffler(executor).shuffle(b, 7, spread);
+                assertArrayEquals(locations(a), locations(b), 0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void droppedPiecesStayOnTheBoard() {
+        PieceStore store = store(10, 10);
+        new PieceShuffler(null).shuffle(store, 3, false);
+        for(int id=0; id<100; id++) {
+            assertTrue(store.getX(id) >= 0 && store.getX(id) < 1);
+            assertTrue(store.getY(id) >= 0 && store.getY(id) < 1);
+        }
+    }
+
+    @Test
+    public void spreadPiecesEachTakeAnotherSpot() {
+        int columns = 10;
+        PieceStore store = store(columns, columns);
+        new PieceShuffler(null).shuffle(store, 5, true);
+
+        boolean [] taken = new boolean[columns * columns];
+        for(int id=0; id<columns * columns; id++) {
+            // The spot a piece is in, allowing for the jitter
+            int col = (int)(store.getX(id) * columns);
+            int row = (int)(store.getY(id) * columns);
+            int spot = row * columns + col;
+            assertTrue("piece " + id + " is on its own spot", spot != id);
+            assertFalse("spot " + spot + " taken twice", taken[spot]);
+            taken[spot] = true;
+        }
+    }
+
+    @Test
+    public void onlyPieceIsSpreadOffItsSpot() {
+        for(long seed=0; seed<50; seed++) {
+            PieceStore store = store(1, 1);
+            new PieceShuffler(null).shuffle(store, seed, true);
+            assertTrue(Math.abs(store.getX(0) - store.getFinalX(0)) >= store.getHalfWidth(0));
+        }
+    }
+}
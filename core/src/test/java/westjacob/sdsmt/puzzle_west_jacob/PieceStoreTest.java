@@ -0,0 +1,144 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+/**
+ * Tests of the piece arrays and the linked z order
+ */
+public class PieceStoreTest {
+    /**
+     * Clusters of a 3 x 3 puzzle
+     */
+    private ClusterSet clusters;
+
+    /**
+     * The store, with the pieces added in id order
+     */
+    private PieceStore store;
+
+    @Before
+    public void setUp() {
+        clusters = new ClusterSet(3, 3);
+        store = new PieceStore(clusters, 9);
+        for(int id=0; id<9; id++) {
+            float fx = (id % 3 + 0.5f) / 3;
+            float fy = (id / 3 + 0.5f) / 3;
+            store.add(id, 0.5f, 0.5f, fx, fy, 1 / 3f, 1 / 3f, 0.02f);
+        }
+    }
+
+    /**
+     * The piece ids from the bottom to the top, checking that
+     * the links agree in both directions
+     */
+    private ArrayList<Integer> order() {
+        ArrayList<Integer> ids = new ArrayList<>();
+        int prev = PieceStore.NONE;
+        for(int id=store.getBottom(); id!=PieceStore.NONE; id=store.above(id)) {
+            assertEquals(prev, store.below(id));
+            if(prev != PieceStore.NONE) {
+                assertTrue(store.getZ(prev) < store.getZ(id));
+            }
+            ids.add(id);
+            prev = id;
+        }
+        assertEquals(prev, store.getTop());
+        return ids;
+    }
+
+    private static ArrayList<Integer> list(int... ids) {
+        ArrayList<Integer> out = new ArrayList<>();
+        for(int id : ids) {
+            out.add(id);
+        }
+        return out;
+    }
+
+    @Test
+    public void addedPiecesStackUp() {
+        assertEquals(9, store.getCount());
+        assertEquals(list(0, 1, 2, 3, 4, 5, 6, 7, 8), order());
+        assertEquals(0.5f, store.getX(4), 0);
+        assertEquals(0.5f, store.getY(4), 0);
+    }
+
+    @Test
+    public void toTopAndBottomMoveOnePiece() {
+        store.toTop(0);
+        assertEquals(list(1, 2, 3, 4, 5, 6, 7, 8, 0), order());
+
+        store.toBottom(8);
+        assertEquals(list(8, 1, 2, 3, 4, 5, 6, 7, 0), order());
+
+        // Moving the top to the top changes nothing
+        store.toTop(0);
+        assertEquals(list(8, 1, 2, 3, 4, 5, 6, 7, 0), order());
+    }
+
+    @Test
+    public void clusterMovesTogetherInItsOwnOrder() {
+        clusters.union(6, 2);
+        clusters.union(4, 2);
+
+        store.toTop(2);
+        assertEquals(list(0, 1, 3, 5, 7, 8, 2, 4, 6), order());
+
+        store.toBottom(4);
+        assertEquals(list(2, 4, 6, 0, 1, 3, 5, 7, 8), order());
+    }
+
+    @Test
+    public void sortByZUsesTheGivenValues() {
+        for(int id=0; id<9; id++) {
+            store.setZ(id, (id * 5) % 9 - 4);
+        }
+        store.sortByZ();
+        assertEquals(list(0, 2, 4, 6, 8, 1, 3, 5, 7), order());
+
+        // New z values keep growing from the sorted ones
+        store.toTop(0);
+        store.toBottom(7);
+        assertEquals(list(7, 2, 4, 6, 8, 1, 3, 5, 0), order());
+    }
+
+    @Test
+    public void snapMovesTheClusterHome() {
+        clusters.union(0, 1);
+        store.setLocation(1, 0.3f, 0.2f);
+        assertFalse(store.maybeSnap(1));
+
+        store.move(1, store.getFinalX(1) - 0.3f + 0.01f, store.getFinalY(1) - 0.2f);
+        assertTrue(store.maybeSnap(1));
+        assertTrue(store.isSnapped(1));
+        assertEquals(store.getFinalX(0), store.getX(0), 0);
+        assertEquals(store.getFinalY(0), store.getY(0), 0);
+
+        store.move(0, 0.1f, 0);
+        assertFalse(store.isSnapped(0));
+    }
+
+    @Test
+    public void ungroupLeavesPiecesWhereTheyAre() {
+        clusters.union(0, 1);
+        clusters.union(3, 1);
+        store.setLocation(1, 0.7f, 0.6f);
+        float x0 = store.getX(0);
+        float y3 = store.getY(3);
+
+        store.ungroup();
+        for(int id=0; id<9; id++) {
+            assertEquals(1, clusters.size(id));
+        }
+        assertEquals(x0, store.getX(0), 1e-6);
+        assertEquals(0.7f, store.getX(1), 1e-6);
+        assertEquals(y3, store.getY(3), 1e-6);
+        assertEquals(list(0, 1, 2, 3, 4, 5, 6, 7, 8), order());
+    }
+}
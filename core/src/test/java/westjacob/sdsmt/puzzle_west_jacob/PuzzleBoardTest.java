@@ -0,0 +1,98 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the rules for moving pieces on a board
+ */
+public class PuzzleBoardTest {
+    /**
+     * Drag a piece to a location and drop it
+     * @return true if it snapped into place
+     */
+    static boolean dragTo(PuzzleBoard<PieceModel> board, PieceModel piece, float x, float y) {
+        board.pickUp(piece);
+        board.move(piece, x - piece.getX(), y - piece.getY());
+        return board.drop(piece);
+    }
+
+    @Test
+    public void snappedCountFollowsDropsAndPickUps() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 3);
+        assertEquals(0, board.getSnappedCount());
+        assertFalse(board.isSolved());
+
+        PieceModel piece = board.getPiece(4);
+        assertTrue(dragTo(board, piece, piece.getFinalX(), piece.getFinalY()));
+        assertEquals(1, board.getSnappedCount());
+        assertEquals(4, board.getStore().getBottom());
+
+        // Picking it up again takes it out of the count
+        assertTrue(board.pickUp(piece));
+        assertEquals(0, board.getSnappedCount());
+        assertEquals(4, board.getStore().getTop());
+        board.drop(piece);
+        assertEquals(1, board.getSnappedCount());
+    }
+
+    @Test
+    public void solvedWhenEveryPieceSnaps() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 3);
+        for(PieceModel piece : board.getPieces()) {
+            dragTo(board, piece, piece.getFinalX(), piece.getFinalY());
+        }
+
+        assertEquals(9, board.getSnappedCount());
+        assertTrue(board.isSolved());
+    }
+
+    @Test
+    public void droppedPieceJoinsALinedUpNeighbour() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 3);
+        PieceModel a = board.getPiece(0);
+        PieceModel b = board.getPiece(1);
+        dragTo(board, a, 0.5f, 0.5f);
+
+        // Drop b just off of where it belongs beside a
+        float dx = b.getFinalX() - a.getFinalX();
+        float dy = b.getFinalY() - a.getFinalY();
+        assertFalse(dragTo(board, b, 0.5f + dx + 0.001f, 0.5f + dy));
+
+        // b moved onto a, and they now move together
+        assertEquals(0.5f + dx, b.getX(), 1e-6f);
+        board.pickUp(b);
+        board.move(b, 0.1f, 0);
+        board.drop(b);
+        assertEquals(0.6f, a.getX(), 1e-6f);
+    }
+
+    @Test
+    public void pieceAtFindsAHeldClusterWhereItWasDragged() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 3);
+        PieceModel a = board.getPiece(0);
+        PieceModel b = board.getPiece(1);
+        float dx = b.getFinalX() - a.getFinalX();
+        dragTo(board, a, 0.3f, 0.3f);
+        dragTo(board, b, 0.3f + dx, 0.3f);
+        PieceModel under = board.getPiece(8);
+        dragTo(board, under, 1.2f, 1.2f);
+
+        // Drag the pair over the other piece and keep holding it
+        board.pickUp(a);
+        board.move(a, 0.9f, 0.9f);
+        assertTrue(board.isGroupHeld());
+
+        int size = TestBoards.puzzleSize(3);
+        assertEquals(a, board.pieceAt(1.2f, 1.2f, size, 1));
+        assertEquals(b, board.pieceAt(1.2f + dx, 1.2f, size, 1));
+
+        // Once dropped the grid is up to date again
+        board.drop(a);
+        assertFalse(board.isGroupHeld());
+        assertEquals(a, board.pieceAt(1.2f, 1.2f, size, 1));
+    }
+}
@@ -0,0 +1,128 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests of saving and restoring the puzzle as a snapshot
+ */
+public class PuzzleSnapshotTest {
+    /**
+     * Make a board with a few pieces snapped and the rest
+     * picked up in a mixed up order
+     */
+    private static PuzzleBoard<PieceModel> played() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(5, 4);
+        for(int id : new int[] {7, 3, 12}) {
+            PieceModel piece = board.getPiece(id);
+            board.pickUp(piece);
+            board.move(piece, piece.getFinalX() - piece.getX(), piece.getFinalY() - piece.getY());
+            assertTrue(board.drop(piece));
+        }
+
+        for(int id : new int[] {19, 0, 8, 15}) {
+            board.pickUp(board.getPiece(id));
+            board.drop(board.getPiece(id));
+        }
+
+        return board;
+    }
+
+    /**
+     * Save a board
+     */
+    private static byte[] save(PuzzleBoard<PieceModel> board) {
+        ArrayList<PieceModel> ordered = new ArrayList<>();
+        board.getOrdered(ordered);
+        return PuzzleSnapshot.save(ordered);
+    }
+
+    @Test
+    public void roundTripKeepsOrderLocationsAndSnapping() {
+        PuzzleBoard<PieceModel> board = played();
+        byte [] data = save(board);
+
+        PuzzleBoard<PieceModel> copy = TestBoards.create(5, 4);
+        copy.ungroup();
+        assertTrue(PuzzleSnapshot.restore(data, copy.getPieces()));
+        copy.restored();
+
+        ArrayList<PieceModel> expected = new ArrayList<>();
+        ArrayList<PieceModel> actual = new ArrayList<>();
+        board.getOrdered(expected);
+        copy.getOrdered(actual);
+        assertEquals(expected.size(), actual.size());
+        for(int i=0; i<expected.size(); i++) {
+            PieceModel a = expected.get(i);
+            PieceModel b = actual.get(i);
+            assertEquals(a.getId(), b.getId());
+            assertEquals(a.isSnapped(), b.isSnapped());
+            assertEquals(a.getX(), b.getX(), 1 / PuzzleSnapshot.QUANTUM);
+            assertEquals(a.getY(), b.getY(), 1 / PuzzleSnapshot.QUANTUM);
+        }
+        assertEquals(board.getSnappedCount(), copy.getSnappedCount());
+
+        // Saving the restored board gives the same bytes
+        assertTrue(Arrays.equals(data, save(copy)));
+    }
+
+    @Test
+    public void rejectsBadHeaders() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(5, 4);
+        byte [] data = save(played());
+
+        assertFalse(PuzzleSnapshot.restore(null, board.getPieces()));
+        assertFalse(PuzzleSnapshot.restore(new byte[0], board.getPieces()));
+
+        byte [] version = data.clone();
+        version[0] = PuzzleSnapshot.VERSION + 1;
+        assertFalse(PuzzleSnapshot.restore(version, board.getPieces()));
+
+        // A snapshot for a puzzle of another size
+        PuzzleBoard<PieceModel> other = TestBoards.create(4, 4);
+        assertFalse(PuzzleSnapshot.restore(data, other.getPieces()));
+    }
+
+    @Test
+    public void rejectsARepeatedPiece() {
+        // Two pieces, both listed as piece 0 and snapped
+        PuzzleBoard<PieceModel> board = TestBoards.create(2, 1);
+        byte [] data = {PuzzleSnapshot.VERSION, 2, 1, 1};
+        assertFalse(PuzzleSnapshot.restore(data, board.getPieces()));
+    }
+
+    @Test
+    public void truncatedSnapshotsAreRejected() {
+        byte [] data = save(played());
+        PuzzleBoard<PieceModel> board = TestBoards.create(5, 4);
+        float x = board.getPiece(0).getX();
+        for(int length=0; length<data.length; length++) {
+            assertFalse("length " + length,
+                    PuzzleSnapshot.restore(Arrays.copyOf(data, length), board.getPieces()));
+        }
+
+        // Nothing was changed by the failed restores
+        assertEquals(x, board.getPiece(0).getX(), 0);
+    }
+
+    @Test
+    public void garbageNeverThrows() {
+        PuzzleBoard<PieceModel> board = TestBoards.create(5, 4);
+        long seed = 1;
+        for(int n=0; n<1000; n++) {
+            byte [] data = new byte[1 + n % 40];
+            for(int i=0; i<data.length; i++) {
+                seed = seed * 6364136223846793005L + 1442695040888963407L;
+                data[i] = (byte)(seed >>> 56);
+            }
+            data[0] = PuzzleSnapshot.VERSION;
+            PuzzleSnapshot.restore(data, board.getPieces());
+        }
+    }
+}
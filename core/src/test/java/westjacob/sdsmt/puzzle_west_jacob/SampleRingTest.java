@@ -0,0 +1,58 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of the lock free sample ring
+ */
+public class SampleRingTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBeAPowerOfTwo() {
+        new SampleRing(100);
+    }
+
+    @Test
+    public void samplesComeOutInOrder() {
+        SampleRing ring = new SampleRing(8);
+        assertEquals(-1, ring.poll());
+        for(int i=0; i<5; i++) {
+            ring.add(i * 10);
+        }
+        for(int i=0; i<5; i++) {
+            assertEquals(i * 10, ring.poll());
+        }
+        assertEquals(-1, ring.poll());
+        assertEquals(0, ring.getLost());
+    }
+
+    @Test
+    public void fullRingKeepsEverySample() {
+        SampleRing ring = new SampleRing(8);
+        for(int round=0; round<3; round++) {
+            for(int i=0; i<8; i++) {
+                ring.add(round * 8 + i);
+            }
+            for(int i=0; i<8; i++) {
+                assertEquals(round * 8 + i, ring.poll());
+            }
+        }
+        assertEquals(0, ring.getLost());
+    }
+
+    @Test
+    public void overrunDropsTheOldestSamples() {
+        SampleRing ring = new SampleRing(8);
+        for(int i=0; i<20; i++) {
+            ring.add(i);
+        }
+
+        // Only the newest 8 are still there
+        for(int i=12; i<20; i++) {
+            assertEquals(i, ring.poll());
+        }
+        assertEquals(-1, ring.poll());
+        assertEquals(12, ring.getLost());
+    }
+}
@@ -0,0 +1,89 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests of keeping the puzzle in a memory mapped session file
+ */
+public class SessionStoreTest {
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("session", ".bin");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void newSessionIsNotRestorable() throws IOException {
+        SessionStore session = new SessionStore(file, 3, 2, 99);
+        assertFalse(session.isRestorable());
+        assertEquals(99, session.getSeed());
+        session.close();
+    }
+
+    @Test
+    public void writtenSessionIsRestored() throws IOException {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 2);
+        PieceModel snapped = board.getPiece(4);
+        board.pickUp(snapped);
+        board.move(snapped, snapped.getFinalX() - snapped.getX(), snapped.getFinalY() - snapped.getY());
+        assertTrue(board.drop(snapped));
+
+        SessionStore session = new SessionStore(file, 3, 2, 99);
+        session.writeAll(board.getPieces());
+
+        // A later drop only writes its own slot
+        PieceModel moved = board.getPiece(1);
+        board.pickUp(moved);
+        board.move(moved, 0.125f, 0);
+        board.drop(moved);
+        session.write(moved);
+        session.close();
+
+        SessionStore reopened = new SessionStore(file, 3, 2, 5);
+        assertTrue(reopened.isRestorable());
+        assertEquals(99, reopened.getSeed());
+
+        PuzzleBoard<PieceModel> copy = TestBoards.create(3, 2);
+        copy.ungroup();
+        assertTrue(reopened.restore(copy.getPieces()));
+        copy.restored();
+        reopened.close();
+
+        for(PieceModel piece : board.getPieces()) {
+            PieceModel other = copy.getPiece(piece.getId());
+            assertEquals(piece.isSnapped(), other.isSnapped());
+            assertEquals(piece.getX(), other.getX(), 0);
+            assertEquals(piece.getY(), other.getY(), 0);
+        }
+        assertEquals(board.getStore().getTop(), copy.getStore().getTop());
+        assertEquals(1, copy.getSnappedCount());
+    }
+
+    @Test
+    public void sessionForAnotherSizeStartsOver() throws IOException {
+        PuzzleBoard<PieceModel> board = TestBoards.create(3, 2);
+        SessionStore session = new SessionStore(file, 3, 2, 99);
+        session.writeAll(board.getPieces());
+        session.close();
+
+        SessionStore other = new SessionStore(file, 2, 3, 7);
+        assertFalse(other.isRestorable());
+        assertEquals(7, other.getSeed());
+        other.close();
+    }
+}
@@ -0,0 +1,99 @@
+package westjacob.sdsmt.puzzle_west_jacob;
+
+/**
+ * Makes small puzzle boards for the tests. The pieces are laid out on
+ * a square grid like a real puzzle, and every piece shares one square
+ * mask a little bigger than its cell so neighbours overlap at the edges
+ * like tabs would.
+ */
+class TestBoards {
+    /**
+     * Size of one grid cell in pixels
+     */
+    final static int CELL = 64;
+
+    /**
+     * Room around each cell for the tabs, in pixels
+     */
+    final static int MARGIN = 16;
+
+    /**
+     * Seed so every test gets the same layout
+     */
+    final static long SEED = 476;
+
+    /**
+     * Make a board with every piece added
+     * @param columns Number of columns of pieces
+     * @param rows Number of rows of pieces
+     * @return The board
+     */
+    static PuzzleBoard<PieceModel> create(int columns, int rows) {
+        PuzzleBoard<PieceModel> board = createEmpty(columns, rows);
+        for(int id=0; id<columns * rows; id++) {
+            board.add(piece(board, id), SEED);
+        }
+
+        return board;
+    }
+
+    /**
+     * Make a board with no pieces added
+     * @param columns Number of columns of pieces
+     * @param rows Number of rows of pieces
+     * @return The board
+     */
+    static PuzzleBoard<PieceModel> createEmpty(int columns, int rows) {
+        return new PuzzleBoard<>(CELL + 2 * MARGIN, puzzleWidth(columns), columns, rows);
+    }
+
+    /**
+     * Make a piece for a board
+     * @param board The board
+     * @param id The piece id
+     * @return The piece, not added yet
+     */
+    static PieceModel piece(PuzzleBoard<PieceModel> board, int id) {
+        int columns = board.getColumns();
+        int puzzleWidth = puzzleWidth(columns);
+        int size = CELL + 2 * MARGIN;
+        HitMask mask = new HitMask(size, size);
+        for(int y=0; y<size; y++) {
+            for(int x=0; x<size; x++) {
+                mask.set(x, y);
+            }
+        }
+
+        float finalX = (id % columns + 0.5f) * CELL / puzzleWidth;
+        float finalY = (id / columns + 0.5f) * CELL / puzzleWidth;
+        return new PieceModel(mask, id, finalX, finalY, snapDistance(columns));
+    }
+
+    /**
+     * Width of the puzzle image in pixels
+     * @param columns Number of columns of pieces
+     * @return Width in pixels
+     */
+    static int puzzleWidth(int columns) {
+        return columns * CELL;
+    }
+
+    /**
+     * How close a piece must be to snap into place
+     * @param columns Number of columns of pieces
+     * @return Distance, relative to the puzzle
+     */
+    static float snapDistance(int columns) {
+        return Math.min(PieceModel.SNAP_DISTANCE, 0.4f * CELL / puzzleWidth(columns));
+    }
+
+    /**
+     * Size the tests pretend the puzzle is drawn at, so one
+     * image pixel is one screen pixel
+     * @param columns Number of columns of pieces
+     * @return Size in pixels
+     */
+    static int puzzleSize(int columns) {
+        return puzzleWidth(columns);
+    }
+}